@@ -3,9 +3,11 @@ package at.technikum.paperlessrest;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @EnableJpaRepositories(basePackages = "at.technikum.paperlessrest.repository")
 @SpringBootApplication
+@EnableScheduling
 public class PaperlessRestApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,32 @@
+package at.technikum.paperlessrest.config;
+
+import io.micrometer.observation.ObservationPredicate;
+import io.opentelemetry.exporter.logging.otlp.OtlpJsonLoggingSpanExporter;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.observation.ServerRequestObservationContext;
+
+@Configuration
+public class TracingConfig {
+
+    /**
+     * Writes finished spans as OTLP JSON to the log category {@code io.opentelemetry.exporter.logging.otlp},
+     * which can be routed to a file of its own and loaded into any OTLP-compatible trace viewer.
+     */
+    @Bean
+    public SpanExporter otlpJsonLoggingSpanExporter() {
+        return OtlpJsonLoggingSpanExporter.create();
+    }
+
+    /**
+     * Drops the observations of requests to the actuator endpoints. Prometheus scrapes them every few
+     * seconds, and each scrape would otherwise be a trace of its own next to the OCR jobs.
+     */
+    @Bean
+    public ObservationPredicate ignoreActuatorRequests(@Value("${management.endpoints.web.base-path:/actuator}") String actuatorPath) {
+        return (name, context) -> !(context instanceof ServerRequestObservationContext request
+                && request.getCarrier().getRequestURI().startsWith(actuatorPath));
+    }
+}
@@ -1,15 +1,22 @@
 package at.technikum.paperlessrest.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.time.Duration;
+
 @Configuration
 public class WebConfig {
 
     @Bean
-    public WebMvcConfigurer corsConfigurer() {
+    public WebMvcConfigurer corsConfigurer(@Value("${paperless.streaming.timeout:1h}") Duration streamingTimeout,
+                                           @Value("${paperless.streaming.threads:200}") int streamingThreads) {
+        ThreadPoolTaskExecutor streamingExecutor = streamingExecutor(streamingThreads);
         return new WebMvcConfigurer() {
             @Override
             public void addCorsMappings(CorsRegistry registry) {
@@ -19,6 +26,31 @@ public class WebConfig {
                         .allowedHeaders("*")
                         .allowCredentials(true);
             }
+
+            // Downloads and search exports are written asynchronously (StreamingResponseBody). Without
+            // a timeout of our own, the container's default of 30 seconds cuts off large files, and
+            // without an executor of our own they share the 8 threads of the application task executor.
+            @Override
+            public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                configurer.setDefaultTimeout(streamingTimeout.toMillis());
+                configurer.setTaskExecutor(streamingExecutor);
+            }
         };
     }
+
+    /**
+     * Threads writing streamed responses, as many as Tomcat has request threads by default so that
+     * as many downloads run at once as before they were streamed. Idle threads are released.
+     */
+    private static ThreadPoolTaskExecutor streamingExecutor(int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("streaming-");
+        // Shutdown does not wait for downloads still running
+        executor.setDaemon(true);
+        executor.initialize();
+        return executor;
+    }
 }
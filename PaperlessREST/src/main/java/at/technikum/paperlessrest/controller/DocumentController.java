@@ -1,7 +1,10 @@
 package at.technikum.paperlessrest.controller;
 
+import at.technikum.paperlessrest.customExceptions.InvalidFileUploadException;
 import at.technikum.paperlessrest.dto.DocumentDTO;
-import at.technikum.paperlessrest.dto.DocumentWithFileDTO;
+import at.technikum.paperlessrest.dto.DocumentPageDTO;
+import at.technikum.paperlessrest.dto.DocumentPageRequestDTO;
+import at.technikum.paperlessrest.dto.SearchResultPageDTO;
 import at.technikum.paperlessrest.elastic.ElasticsearchSearcher;
 import at.technikum.paperlessrest.entities.Document;
 import at.technikum.paperlessrest.service.DocumentService;
@@ -11,12 +14,19 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import lombok.extern.slf4j.Slf4j;
+import org.springdoc.core.annotations.ParameterObject;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @Slf4j
@@ -34,6 +44,7 @@ public class DocumentController {
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201", description = "Document uploaded successfully", content = @Content(schema = @Schema(implementation = Document.class))),
             @ApiResponse(responseCode = "400", description = "Invalid file format or bad request"),
+            @ApiResponse(responseCode = "413", description = "File exceeds the maximum upload size"),
             @ApiResponse(responseCode = "500", description = "Internal server error")
     })
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -44,6 +55,33 @@ public class DocumentController {
         } catch (IllegalArgumentException e) {
             log.error("Invalid file format: {}", e.getMessage());
             return ResponseEntity.badRequest().build();
+        } catch (InvalidFileUploadException e) {
+            log.error("Rejected upload: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (Exception e) {
+            log.error("Error uploading document: {}", e.getMessage(), e);
+            return ResponseEntity.status(500).build();
+        }
+    }
+
+    @Operation(summary = "Uploads a document by streaming the raw PDF request body")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Document uploaded successfully", content = @Content(schema = @Schema(implementation = DocumentDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid file format or bad request"),
+            @ApiResponse(responseCode = "413", description = "File exceeds the maximum upload size"),
+            @ApiResponse(responseCode = "500", description = "Internal server error")
+    })
+    @PostMapping(consumes = MediaType.APPLICATION_PDF_VALUE)
+    public ResponseEntity<DocumentDTO> uploadFileStream(@RequestParam("filename") String filename, InputStream body) {
+        try {
+            DocumentDTO document = documentService.uploadFile(filename, MediaType.APPLICATION_PDF_VALUE, body);
+            return ResponseEntity.status(201).body(document);
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid file format: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (InvalidFileUploadException e) {
+            log.error("Rejected upload: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
         } catch (Exception e) {
             log.error("Error uploading document: {}", e.getMessage(), e);
             return ResponseEntity.status(500).build();
@@ -70,28 +108,66 @@ public class DocumentController {
         }
     }
 
-    @Operation(summary = "Fetches a document by ID")
+    @Operation(summary = "Streams a document's file, supporting Range requests and If-None-Match revalidation")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200", description = "Document retrieved successfully", content = @Content(schema = @Schema(implementation = Document.class))),
+            @ApiResponse(responseCode = "200", description = "Document retrieved successfully", content = @Content(mediaType = MediaType.APPLICATION_PDF_VALUE)),
+            @ApiResponse(responseCode = "206", description = "Requested byte range retrieved successfully", content = @Content(mediaType = MediaType.APPLICATION_PDF_VALUE)),
+            @ApiResponse(responseCode = "304", description = "Document not modified"),
             @ApiResponse(responseCode = "404", description = "Document not found"),
+            @ApiResponse(responseCode = "416", description = "Requested range not satisfiable"),
             @ApiResponse(responseCode = "500", description = "Internal server error")
     })
     @GetMapping("/{id}/download")
-    public ResponseEntity<byte[]> getDocumentById(@PathVariable String id) {
+    public ResponseEntity<StreamingResponseBody> getDocumentById(@PathVariable String id,
+                                                                 @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+                                                                 @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                                 @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange) {
         try {
-            byte[] pdfFile = documentService.getDocumentFileById(id);
+            // Metadata first, so unknown IDs are answered without touching MinIO
             DocumentDTO document = documentService.getDocumentById(id);
-            if (document == null || pdfFile == null) {
+            if (document == null) {
                 return ResponseEntity.notFound().build();
             }
 
+            // Stored objects are immutable, so the document ID identifies the content
+            String etag = "\"" + document.getId() + "\"";
             HttpHeaders headers = new HttpHeaders();
+            headers.setETag(etag);
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+            if (etagMatches(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+            }
+
             headers.setContentType(MediaType.APPLICATION_PDF);
-            headers.setContentDispositionFormData("attachment", document.getFilename());
+            headers.setContentDisposition(ContentDisposition.attachment()
+                    .filename(document.getFilename(), StandardCharsets.UTF_8)
+                    .build());
+
+            long filesize = document.getFilesize();
+            List<HttpRange> ranges = range == null || (ifRange != null && !ifRange.equals(etag))
+                    ? List.of()
+                    : parseRanges(range);
+            // Multiple ranges are not supported; the full document is an acceptable answer to those
+            if (ranges.size() == 1) {
+                long start = ranges.get(0).getRangeStart(filesize);
+                long end = ranges.get(0).getRangeEnd(filesize);
+                if (start >= filesize || start > end) {
+                    headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + filesize);
+                    return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(headers).build();
+                }
+                long length = end - start + 1;
+                InputStream stream = documentService.getDocumentFileStream(id, start, length);
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + filesize);
+                headers.setContentLength(length);
+                return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).body(streamBody(stream));
+            }
 
+            InputStream stream = documentService.getDocumentFileStream(id);
+            headers.setContentLength(filesize);
             return ResponseEntity.ok()
                     .headers(headers)
-                    .body(pdfFile);
+                    .body(streamBody(stream));
         } catch (IllegalArgumentException e) {
             log.error("Document not found: {}", e.getMessage());
             return ResponseEntity.notFound().build();
@@ -101,32 +177,69 @@ public class DocumentController {
         }
     }
 
-    @Operation(summary = "Fetches all documents")
+    private static StreamingResponseBody streamBody(InputStream stream) {
+        return outputStream -> {
+            try (stream) {
+                stream.transferTo(outputStream);
+            }
+        };
+    }
+
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // A malformed Range header is ignored and the full document is served
+    private static List<HttpRange> parseRanges(String range) {
+        try {
+            return HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring invalid Range header '{}': {}", range, e.getMessage());
+            return List.of();
+        }
+    }
+
+    @Operation(summary = "Fetches a page of documents, optionally filtered and sorted")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200", description = "Documents retrieved successfully", content = @Content(schema = @Schema(implementation = DocumentDTO.class))),
+            @ApiResponse(responseCode = "200", description = "Documents retrieved successfully", content = @Content(schema = @Schema(implementation = DocumentPageDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid paging, sorting or filter parameter"),
             @ApiResponse(responseCode = "500", description = "Internal server error")
     })
     @GetMapping
-    public ResponseEntity<List<DocumentDTO>> getAllDocuments() {
+    public ResponseEntity<DocumentPageDTO> getDocuments(@ParameterObject DocumentPageRequestDTO request) {
         try {
-            List<DocumentDTO> documents = documentService.getAllDocuments();
-            log.error("Found {} documents", documents.size());
-            return ResponseEntity.ok(documents);
+            DocumentPageDTO page = documentService.getDocuments(request);
+            log.info("Found {} documents", page.getDocuments().size());
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid document listing request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             log.error("Error retrieving documents: {}", e.getMessage(), e);
             return ResponseEntity.status(500).build();
         }
     }
 
-    @Operation(summary = "Searches documents by query and fetches additional data")
+    @Operation(summary = "Searches documents by query, one page at a time")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Documents retrieved successfully",
-                    content = @Content(schema = @Schema(implementation = DocumentWithFileDTO.class))),
-            @ApiResponse(responseCode = "400", description = "Invalid query parameter"),
+                    content = @Content(schema = @Schema(implementation = SearchResultPageDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid query, limit or cursor"),
             @ApiResponse(responseCode = "500", description = "Internal server error")
     })
     @GetMapping("/search")
-    public ResponseEntity<List<DocumentDTO>> searchDocuments(@RequestParam String query) {
+    public ResponseEntity<SearchResultPageDTO> searchDocuments(@RequestParam String query,
+                                                           @RequestParam(required = false) String cursor,
+                                                           @RequestParam(defaultValue = "50") int limit) {
         try {
             if (query == null || query.trim().isEmpty()) {
                 log.error("Invalid query parameter: query cannot be null or empty");
@@ -134,12 +247,35 @@ public class DocumentController {
             }
 
             log.info("Searching documents with query: {}", query);
-            List<DocumentDTO> results = documentService.searchDocuments(query);
+            SearchResultPageDTO results = documentService.searchDocuments(query, cursor, limit);
             return ResponseEntity.ok(results);
 
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid search request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             log.error("Error occurred while searching documents: {}", e.getMessage(), e);
             return ResponseEntity.status(500).build();
         }
     }
+
+    @Operation(summary = "Streams the IDs of all documents matching a query as newline-delimited JSON")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Document IDs streamed successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid query parameter")
+    })
+    @GetMapping(value = "/search/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportSearchResults(@RequestParam String query) {
+        if (query == null || query.trim().isEmpty()) {
+            log.error("Invalid query parameter: query cannot be null or empty");
+            return ResponseEntity.badRequest().build();
+        }
+
+        log.info("Exporting search results for query: {}", query);
+        // Errors past this point abort the stream, the status has already been sent
+        StreamingResponseBody body = out -> documentService.exportSearchResultIds(query, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
 }
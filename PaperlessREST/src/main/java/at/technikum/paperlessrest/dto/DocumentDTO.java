@@ -17,5 +17,12 @@ public class DocumentDTO {
     private String filetype;
     private LocalDateTime uploadDate;
     private boolean ocrJobDone;
+    // OCR progress of a running job, null until the worker reported its first pages
+    private Integer ocrPagesDone;
+    private Integer ocrPageCount;
+
+    public DocumentDTO(String id, String filename, long filesize, String filetype, LocalDateTime uploadDate, boolean ocrJobDone) {
+        this(id, filename, filesize, filetype, uploadDate, ocrJobDone, null, null);
+    }
 }
 
@@ -0,0 +1,18 @@
+package at.technikum.paperlessrest.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Setter
+@Getter
+public class DocumentPageDTO {
+    private List<DocumentDTO> documents;
+    // Opaque cursor for the next page, null on the last page
+    private String nextCursor;
+}
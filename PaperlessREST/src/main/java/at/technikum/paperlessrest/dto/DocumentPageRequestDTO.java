@@ -0,0 +1,25 @@
+package at.technikum.paperlessrest.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentPageRequestDTO {
+    private String cursor;
+    @Builder.Default
+    private int limit = 50;
+    @Builder.Default
+    private String sort = "uploadDate";
+    @Builder.Default
+    private String direction = "desc";
+
+    private Boolean ocrJobDone;
+    private String filetype;
+    private Long minFilesize;
+    private Long maxFilesize;
+}
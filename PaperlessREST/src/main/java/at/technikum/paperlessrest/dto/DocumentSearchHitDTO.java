@@ -0,0 +1,22 @@
+package at.technikum.paperlessrest.dto;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@NoArgsConstructor
+@Setter
+@Getter
+public class DocumentSearchHitDTO extends DocumentDTO {
+    // HTML-escaped OCR text fragments around the matches, with matches wrapped in <mark>
+    private List<String> snippets;
+
+    public DocumentSearchHitDTO(String id, String filename, long filesize, String filetype, LocalDateTime uploadDate,
+                                boolean ocrJobDone, Integer ocrPagesDone, Integer ocrPageCount, List<String> snippets) {
+        super(id, filename, filesize, filetype, uploadDate, ocrJobDone, ocrPagesDone, ocrPageCount);
+        this.snippets = snippets;
+    }
+}
@@ -1,17 +1,20 @@
 package at.technikum.paperlessrest.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class DocumentSearchResultDTO {
     private String documentId;
+    // Excluded from search responses, see ElasticsearchSearcher
     private String ocrText;
     private String filename;
     private String filetype;
@@ -21,4 +24,12 @@ public class DocumentSearchResultDTO {
 
     @JsonProperty("@timestamp") // mapping the Elasticsearch-Field "@timestamp" to "timestamp"
     private String timestamp;
+
+    // Highlighted ocrText fragments, filled from the hit rather than from _source
+    @JsonIgnore
+    private List<String> snippets;
+
+    // Written by the worker while OCR is running, the ocrText then holds the pages done so far
+    private Integer ocrPagesDone;
+    private Integer ocrPageCount;
 }
@@ -0,0 +1,152 @@
+package at.technikum.paperlessrest.elastic;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.indices.ElasticsearchIndicesClient;
+import co.elastic.clients.elasticsearch.tasks.GetTasksResponse;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * Owns the mapping of the {@code documents} index. The mapping lives in an index template, and
+ * {@code documents} is an alias for a versioned index created from it, so a later mapping change only
+ * needs a new version and a reindex behind the alias.
+ * <p>
+ * An index that Elasticsearch created with dynamic mappings under the plain name {@code documents}
+ * is copied into the versioned index and replaced by the alias in one atomic step. Writes to the old
+ * index are blocked before the copy, so an OCR result indexed meanwhile fails and is retried by the
+ * worker against the alias instead of being lost with the old index.
+ * <p>
+ * The migration runs when PaperlessREST starts and has to finish before any worker indexes results:
+ * start the workers after PaperlessREST logged that the alias points to the versioned index. Startup
+ * waits up to {@code paperless.elasticsearch.init-timeout} for Elasticsearch and fails after that, since
+ * the first write would otherwise create a dynamically mapped {@code documents} index without the
+ * filename n-grams. The copy runs as an Elasticsearch task that is polled, so it is not bound to the
+ * client's socket timeout however large the index is.
+ */
+@Slf4j
+@Component
+@Order(0)
+public class DocumentIndexInitializer implements ApplicationRunner {
+
+    static final String ALIAS = "documents";
+    static final String TEMPLATE = "documents";
+    static final String INDEX = "documents-v1";
+    private static final String TEMPLATE_RESOURCE = "elasticsearch/documents-template.json";
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final Duration timeout;
+    private final Duration retryInterval;
+    private final Duration pollInterval;
+
+    public DocumentIndexInitializer(ElasticsearchClient elasticsearchClient,
+                                    @Value("${paperless.elasticsearch.init-timeout:5m}") Duration timeout,
+                                    @Value("${paperless.elasticsearch.init-retry-interval:5s}") Duration retryInterval,
+                                    @Value("${paperless.elasticsearch.reindex-poll-interval:2s}") Duration pollInterval) {
+        this.elasticsearchClient = elasticsearchClient;
+        this.timeout = timeout;
+        this.retryInterval = retryInterval;
+        this.pollInterval = pollInterval;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (true) {
+            try {
+                initialize();
+                return;
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                if (System.nanoTime() - deadline >= 0) {
+                    throw new IllegalStateException("Could not set up the Elasticsearch index '" + ALIAS + "' within " + timeout, e);
+                }
+                log.warn("Could not set up the Elasticsearch index '{}', retrying in {}: {}", ALIAS, retryInterval, e.getMessage());
+                Thread.sleep(retryInterval.toMillis());
+            }
+        }
+    }
+
+    void initialize() throws IOException, InterruptedException {
+        ElasticsearchIndicesClient indices = elasticsearchClient.indices();
+
+        String template = new ClassPathResource(TEMPLATE_RESOURCE).getContentAsString(StandardCharsets.UTF_8);
+        indices.putIndexTemplate(t -> t.name(TEMPLATE).withJson(new StringReader(template)));
+        log.info("Installed index template '{}'", TEMPLATE);
+
+        if (indices.existsAlias(a -> a.name(ALIAS)).value()) {
+            log.info("Index alias '{}' already exists", ALIAS);
+            return;
+        }
+
+        if (!indices.exists(e -> e.index(INDEX)).value()) {
+            indices.create(c -> c.index(INDEX));
+            log.info("Created index '{}'", INDEX);
+        }
+
+        if (indices.exists(e -> e.index(ALIAS)).value()) {
+            log.info("Moving dynamically mapped index '{}' to '{}'", ALIAS, INDEX);
+            blockWrites(indices, true);
+            long copied;
+            try {
+                copied = reindex();
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                // Keep the old index writable so the service goes on working without the new mapping
+                blockWrites(indices, false);
+                throw e;
+            }
+            log.info("Copied {} documents into '{}'", copied, INDEX);
+
+            indices.updateAliases(u -> u
+                    .actions(a -> a.removeIndex(r -> r.index(ALIAS)))
+                    .actions(a -> a.add(add -> add.index(INDEX).alias(ALIAS).isWriteIndex(true))));
+        } else {
+            indices.updateAliases(u -> u
+                    .actions(a -> a.add(add -> add.index(INDEX).alias(ALIAS).isWriteIndex(true))));
+        }
+        log.info("Index alias '{}' now points to '{}'", ALIAS, INDEX);
+    }
+
+    // Starts the copy as a task and waits for it, returns the number of documents copied
+    private long reindex() throws IOException, InterruptedException {
+        String task = elasticsearchClient.reindex(r -> r
+                .source(s -> s.index(ALIAS))
+                .dest(d -> d.index(INDEX))
+                .waitForCompletion(false)
+                .refresh(true)).task();
+        log.info("Reindex running as task {}", task);
+        while (true) {
+            GetTasksResponse status = elasticsearchClient.tasks().get(t -> t.taskId(task));
+            if (status.completed()) {
+                if (status.error() != null) {
+                    throw new IOException("Reindex task " + task + " failed: " + status.error().reason());
+                }
+                JsonObject response = status.response().toJson().asJsonObject();
+                JsonArray failures = response.getJsonArray("failures");
+                if (failures != null && !failures.isEmpty()) {
+                    throw new IOException("Reindex task " + task + " failed for " + failures.size() + " documents: " + failures.get(0));
+                }
+                return response.getJsonNumber("total").longValue();
+            }
+            Thread.sleep(pollInterval.toMillis());
+        }
+    }
+
+    private void blockWrites(ElasticsearchIndicesClient indices, boolean blocked) throws IOException {
+        indices.putSettings(p -> p
+                .index(ALIAS)
+                .settings(s -> s.blocks(b -> b.write(blocked))));
+    }
+}
@@ -3,6 +3,10 @@ package at.technikum.paperlessrest.elastic;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.transport.rest_client.RestClientTransport;
 import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.apache.http.HttpHost;
 import org.elasticsearch.client.RestClient;
 import org.springframework.context.annotation.Bean;
@@ -17,9 +21,13 @@ public class ElasticsearchConfig {
                 new HttpHost("elasticsearch", 9200, "http")
         ).build();
 
-        // Create the transport with a Jackson mapper
+        // Create the transport with a Jackson mapper that reads the ISO dates stored in the index
+        ObjectMapper objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
         RestClientTransport transport = new RestClientTransport(
-                restClient, new JacksonJsonpMapper()
+                restClient, new JacksonJsonpMapper(objectMapper)
         );
 
         // Create the API client
@@ -0,0 +1,100 @@
+package at.technikum.paperlessrest.elastic;
+
+import at.technikum.paperlessrest.dto.DocumentDTO;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.GetResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the REST service's side of the {@code documents} index. Every search hit carries the same
+ * metadata as {@link DocumentDTO}, so searches can be answered from Elasticsearch alone.
+ */
+@Slf4j
+@Service
+public class ElasticsearchIndexer {
+
+    private static final String INDEX = "documents";
+
+    private final ElasticsearchClient elasticsearchClient;
+
+    public ElasticsearchIndexer(ElasticsearchClient elasticsearchClient) {
+        this.elasticsearchClient = elasticsearchClient;
+    }
+
+    /**
+     * Creates or updates the metadata fields of a document, leaving any OCR text in place.
+     */
+    public void indexMetadata(DocumentDTO document) throws IOException {
+        Map<String, Object> fields = metadataOf(document);
+        elasticsearchClient.update(u -> u.index(INDEX).id(document.getId()).doc(fields).docAsUpsert(true), Map.class);
+        log.info("Indexed metadata of document {}", document.getId());
+    }
+
+    /**
+     * Upserts the metadata of many documents in one bulk request.
+     *
+     * @return the number of documents Elasticsearch rejected
+     */
+    public int bulkIndexMetadata(List<DocumentDTO> documents) throws IOException {
+        if (documents.isEmpty()) {
+            return 0;
+        }
+        List<BulkOperation> operations = documents.stream()
+                .map(document -> BulkOperation.of(b -> b.update(u -> u
+                        .index(INDEX)
+                        .id(document.getId())
+                        .action(a -> a.doc(metadataOf(document)).docAsUpsert(true)))))
+                .toList();
+        BulkResponse response = elasticsearchClient.bulk(b -> b.operations(operations));
+        int failures = (int) response.items().stream().filter(item -> item.error() != null).count();
+        if (failures > 0) {
+            log.warn("{} of {} metadata updates were rejected by Elasticsearch", failures, documents.size());
+        }
+        return failures;
+    }
+
+    /**
+     * Indexes {@code document} with the OCR text already extracted for {@code sourceDocumentId},
+     * so a duplicate upload becomes searchable without another OCR run.
+     */
+    @SuppressWarnings("unchecked")
+    public void copyOcrText(String sourceDocumentId, DocumentDTO document) throws IOException {
+        GetResponse<Map> source = elasticsearchClient.get(g -> g.index(INDEX).id(sourceDocumentId), Map.class);
+        if (!source.found() || source.source() == null) {
+            throw new IllegalStateException("No indexed OCR text found for document ID: " + sourceDocumentId);
+        }
+
+        Map<String, Object> fields = new HashMap<>(source.source());
+        fields.putAll(metadataOf(document));
+        fields.put("ocrJobDone", true);
+
+        elasticsearchClient.index(i -> i.index(INDEX).id(document.getId()).document(fields));
+        log.info("Copied OCR text of document {} to document {}", sourceDocumentId, document.getId());
+    }
+
+    public void deleteDocument(String documentId) throws IOException {
+        elasticsearchClient.delete(d -> d.index(INDEX).id(documentId));
+        log.info("Removed document {} from the search index", documentId);
+    }
+
+    private static Map<String, Object> metadataOf(DocumentDTO document) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("documentId", document.getId());
+        fields.put("filename", document.getFilename());
+        fields.put("filesize", document.getFilesize());
+        fields.put("filetype", document.getFiletype());
+        fields.put("uploadDate", document.getUploadDate() != null ? document.getUploadDate().toString() : null);
+        fields.put("ocrJobDone", document.isOcrJobDone());
+        fields.put("@timestamp", Instant.now().toString());
+        return fields;
+    }
+}
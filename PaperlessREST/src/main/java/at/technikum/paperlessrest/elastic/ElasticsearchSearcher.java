@@ -1,56 +1,220 @@
 package at.technikum.paperlessrest.elastic;
 
 import at.technikum.paperlessrest.dto.DocumentSearchResultDTO;
+import at.technikum.paperlessrest.metrics.DependencyTimer;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SortOptions;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.query_dsl.Operator;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
 import co.elastic.clients.elasticsearch.core.SearchRequest;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.HighlighterEncoder;
 import co.elastic.clients.elasticsearch.core.search.Hit;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.util.List;
-import java.util.Objects;
+import java.util.Locale;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+/**
+ * Pages through search results with a point in time (PIT) and {@code search_after}, so deep pages cost
+ * the same as the first one and stay consistent while documents are indexed concurrently.
+ * <p>
+ * A PIT is closed when a search fits on its first page, and when an export finishes. Once a cursor has
+ * been handed out it may be followed again by any client sharing the search result cache, even after the
+ * cache evicted the page it leads to, so such PITs are left to expire after {@code paperless.search.pit-keep-alive}.
+ */
 @Slf4j
 @Service
 public class ElasticsearchSearcher {
 
+    private static final String INDEX = "documents";
+    private static final int EXPORT_BATCH_SIZE = 1000;
+    private static final String OCR_TEXT = "ocrText";
+    private static final int SNIPPETS_PER_HIT = 3;
+    private static final int SNIPPET_LENGTH = 150;
+    // Length of the n-grams in the filename.ngram subfield, see elasticsearch/documents-template.json
+    private static final int MIN_NGRAM_QUERY_LENGTH = 3;
+
+    // _shard_doc is the cheapest unique tiebreaker and is only available together with a PIT
+    private static final SortOptions SCORE_DESC = SortOptions.of(s -> s.score(sc -> sc.order(SortOrder.Desc)));
+    private static final SortOptions SHARD_DOC_ASC = SortOptions.of(s -> s.field(f -> f.field("_shard_doc").order(SortOrder.Asc)));
+
     @Autowired
     ElasticsearchClient elasticsearchClient;
 
-    public List<DocumentSearchResultDTO> searchDocuments(String query) {
+    @Autowired
+    DependencyTimer dependencyTimer;
+
+    @Value("${paperless.search.pit-keep-alive:2m}")
+    String pitKeepAlive = "2m";
+
+    /**
+     * Returns up to {@code size} hits after {@code after}, or the first hits of a new point in time
+     * when {@code after} is null.
+     */
+    public SearchPage searchDocuments(String query, int size, SearchCursor after) {
+        String pitId = null;
+        boolean done = false;
         try {
-            // Create Elasticsearch search request that searches for ocrText, filename, and documentId
-            SearchRequest searchRequest = SearchRequest.of(s -> s
-                    .index("documents")
-                    .query(q -> q
-                            .bool(b -> b
-                                    .should(s1 -> s1.match(m -> m.field("ocrText").query(query)))  // Suche im OCR-Text
-                                    .should(s2 -> s2.wildcard(w -> w.field("filename").value("*" + query + "*"))) // Wildcard-Suche für Teilstring im filename
-                                    .should(s3 -> s3.match(m -> m.field("documentId").query(query))) // Suche in der Dokument-ID
-                            )
-                    )
-            );
+            pitId = after != null ? after.pitId() : openPointInTime();
+            String currentPit = pitId;
+
+            // Fetching one extra hit tells whether another page follows
+            SearchRequest searchRequest = SearchRequest.of(s -> {
+                s.query(buildQuery(query))
+                        .pit(p -> p.id(currentPit).keepAlive(t -> t.time(pitKeepAlive)))
+                        .sort(SCORE_DESC, SHARD_DOC_ASC)
+                        // The OCR text can be megabytes per document, only the highlighted fragments are returned
+                        .source(src -> src.filter(f -> f.excludes(OCR_TEXT)))
+                        .highlight(h -> h
+                                .encoder(HighlighterEncoder.Html)
+                                .preTags("<mark>")
+                                .postTags("</mark>")
+                                .fields(OCR_TEXT, f -> f
+                                        .fragmentSize(SNIPPET_LENGTH)
+                                        .numberOfFragments(SNIPPETS_PER_HIT)
+                                        .noMatchSize(0)))
+                        .size(size + 1);
+                if (after != null) {
+                    s.searchAfter(FieldValue.of(after.score()), FieldValue.of(after.shardDoc()));
+                }
+                return s;
+            });
 
             // Execute Elasticsearch search
-            SearchResponse<DocumentSearchResultDTO> searchResponse = elasticsearchClient.search(searchRequest, DocumentSearchResultDTO.class);
+            SearchResponse<DocumentSearchResultDTO> searchResponse = dependencyTimer.record(DependencyTimer.ELASTICSEARCH, "search",
+                    () -> elasticsearchClient.search(searchRequest, DocumentSearchResultDTO.class));
+            List<Hit<DocumentSearchResultDTO>> hits = searchResponse.hits().hits();
+            log.info("Elasticsearch returned {} results for query: {}", hits.size(), query);
 
-            log.info("Elasticsearch returned {} results for query: {}", searchResponse.hits().hits().size(), query);
+            // Elasticsearch may hand out a new PIT ID with every response
+            if (searchResponse.pitId() != null) {
+                pitId = searchResponse.pitId();
+            }
+
+            boolean hasMore = hits.size() > size;
+            List<Hit<DocumentSearchResultDTO>> page = hasMore ? hits.subList(0, size) : hits;
+            SearchCursor next = null;
+            if (hasMore) {
+                List<FieldValue> sort = page.get(page.size() - 1).sort();
+                next = new SearchCursor(pitId, number(sort.get(0)), (long) number(sort.get(1)));
+            } else {
+                // Only a PIT that never handed out a cursor is certain not to be searched again
+                done = after == null;
+            }
 
             // Map results and filter null sources
-            return searchResponse.hits().hits().stream()
-                    .map(Hit::source)
-                    .filter(Objects::nonNull)
+            List<DocumentSearchResultDTO> results = page.stream()
+                    .filter(hit -> hit.source() != null)
+                    .map(hit -> {
+                        DocumentSearchResultDTO result = hit.source();
+                        result.setSnippets(hit.highlight().getOrDefault(OCR_TEXT, List.of()));
+                        return result;
+                    })
                     .collect(Collectors.toList());
+            return new SearchPage(results, next);
 
+        } catch (ElasticsearchException e) {
+            if (after != null && e.status() == 404) {
+                throw new IllegalArgumentException("Search cursor has expired", e);
+            }
+            // A PIT opened for a failed first page is of no use to anyone
+            done |= after == null;
+            log.error("Error searching documents in Elasticsearch: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to search documents", e);
         } catch (Exception e) {
+            done |= after == null;
             log.error("Error searching documents in Elasticsearch: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to search documents", e);
+        } finally {
+            if (done && pitId != null) {
+                closePointInTime(pitId);
+            }
         }
     }
 
-}
+    /**
+     * Hands the ID of every document matching {@code query} to {@code consumer}, one batch at a time.
+     * Only IDs are fetched and nothing is accumulated, so the size of the result set does not matter.
+     */
+    public void forEachMatchingId(String query, Consumer<String> consumer) throws IOException {
+        String pitId = openPointInTime();
+        try {
+            Long lastShardDoc = null;
+            while (true) {
+                String currentPit = pitId;
+                Long after = lastShardDoc;
+                SearchResponse<Void> response = dependencyTimer.record(DependencyTimer.ELASTICSEARCH, "exportBatch", () -> elasticsearchClient.search(s -> {
+                    s.query(buildQuery(query))
+                            .pit(p -> p.id(currentPit).keepAlive(t -> t.time(pitKeepAlive)))
+                            .sort(SHARD_DOC_ASC)
+                            .source(src -> src.fetch(false))
+                            .trackTotalHits(t -> t.enabled(false))
+                            .size(EXPORT_BATCH_SIZE);
+                    if (after != null) {
+                        s.searchAfter(FieldValue.of(after));
+                    }
+                    return s;
+                }, Void.class));
+
+                if (response.pitId() != null) {
+                    pitId = response.pitId();
+                }
+                List<Hit<Void>> hits = response.hits().hits();
+                hits.forEach(hit -> consumer.accept(hit.id()));
+                if (hits.size() < EXPORT_BATCH_SIZE) {
+                    return;
+                }
+                lastShardDoc = hits.get(hits.size() - 1).sort().get(0).longValue();
+            }
+        } finally {
+            closePointInTime(pitId);
+        }
+    }
+
+    // Searches the OCR text and filename, and matches the document ID. Filename substrings are found
+    // through the trigram subfield, so no query has to scan the term dictionary.
+    static Query buildQuery(String query) {
+        return Query.of(q -> q
+                .bool(b -> {
+                    b.should(s1 -> s1.match(m -> m.field(OCR_TEXT).query(query)))
+                            .should(s2 -> s2.term(t -> t.field("documentId").value(query)));
+                    if (query.length() >= MIN_NGRAM_QUERY_LENGTH) {
+                        b.should(s3 -> s3.match(m -> m.field("filename.ngram").query(query).operator(Operator.And)));
+                    } else {
+                        // Too short to produce a trigram, a prefix on the keyword is still cheap
+                        b.should(s3 -> s3.prefix(p -> p.field("filename.keyword").value(query.toLowerCase(Locale.ROOT))));
+                    }
+                    return b;
+                })
+        );
+    }
+
+    private String openPointInTime() throws IOException {
+        return dependencyTimer.record(DependencyTimer.ELASTICSEARCH, "openPointInTime",
+                () -> elasticsearchClient.openPointInTime(o -> o.index(INDEX).keepAlive(t -> t.time(pitKeepAlive))).id());
+    }
 
+    // A PIT that cannot be closed expires on its own after the keep-alive
+    private void closePointInTime(String pitId) {
+        try {
+            dependencyTimer.record(DependencyTimer.ELASTICSEARCH, "closePointInTime",
+                    () -> elasticsearchClient.closePointInTime(c -> c.id(pitId)));
+        } catch (Exception e) {
+            log.warn("Could not close point in time: {}", e.getMessage());
+        }
+    }
 
+    private static double number(FieldValue value) {
+        return value.isDouble() ? value.doubleValue() : value.longValue();
+    }
+}
@@ -0,0 +1,8 @@
+package at.technikum.paperlessrest.elastic;
+
+/**
+ * Position in a point-in-time search: the PIT to keep reading from and the sort values
+ * ({@code _score}, {@code _shard_doc}) of the last hit returned.
+ */
+public record SearchCursor(String pitId, double score, long shardDoc) {
+}
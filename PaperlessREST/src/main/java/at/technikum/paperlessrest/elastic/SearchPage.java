@@ -0,0 +1,11 @@
+package at.technikum.paperlessrest.elastic;
+
+import at.technikum.paperlessrest.dto.DocumentSearchResultDTO;
+
+import java.util.List;
+
+/**
+ * One page of search hits. {@code next} is null once the point in time is exhausted and closed.
+ */
+public record SearchPage(List<DocumentSearchResultDTO> results, SearchCursor next) {
+}
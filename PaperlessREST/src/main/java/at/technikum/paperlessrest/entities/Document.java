@@ -9,7 +9,14 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "files")
+@Table(name = "files", indexes = {
+        @Index(name = "idx_files_content_hash", columnList = "contentHash"),
+        // Keyset pagination: every listing order is (sort key, id)
+        @Index(name = "idx_files_upload_date_id", columnList = "uploadDate, id"),
+        @Index(name = "idx_files_filename_id", columnList = "filename, id"),
+        @Index(name = "idx_files_filesize_id", columnList = "filesize, id"),
+        @Index(name = "idx_files_ocr_job_done_upload_date_id", columnList = "ocrJobDone, uploadDate, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -23,7 +30,15 @@ public class Document {
     private String filetype;
     private LocalDateTime uploadDate;
     private boolean ocrJobDone;
-    private byte[] file;
+    // Pages recognized so far and in total, reported by the worker while OCR is running
+    private Integer ocrPagesDone;
+    private Integer ocrPageCount;
+
+    // SHA-256 of the file; documents with equal digests share one MinIO object
+    @Column(length = 64)
+    private String contentHash;
+    // MinIO object holding the file; null for documents stored under their own ID
+    private String objectKey;
 
     public Document(String documentId, String filename) {
         this.id = documentId;
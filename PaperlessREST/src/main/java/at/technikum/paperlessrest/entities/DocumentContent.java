@@ -0,0 +1,25 @@
+package at.technikum.paperlessrest.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One stored MinIO object, shared by every document whose content has the same SHA-256 digest.
+ * The reference count tracks how many documents still point at the object.
+ */
+@Entity
+@Table(name = "file_contents")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentContent {
+
+    @Id
+    @Column(length = 64)
+    private String contentHash;
+
+    private String objectKey;
+    private long referenceCount;
+}
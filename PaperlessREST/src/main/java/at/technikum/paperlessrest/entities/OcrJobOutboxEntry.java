@@ -0,0 +1,49 @@
+package at.technikum.paperlessrest.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * An OCR job that still has to be published. It is written in the transaction that saves its
+ * {@link Document} and deleted once the broker has confirmed the message.
+ */
+@Entity
+@Table(name = "ocr_job_outbox")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OcrJobOutboxEntry {
+
+    // Increasing IDs keep jobs in upload order
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String documentId;
+    private String filename;
+    private String objectKey;
+    // SHA-256 of the file, the worker looks up earlier OCR results of the same content with it
+    @Column(length = 64)
+    private String contentHash;
+    // Size and page count (0 if unknown) let the worker schedule the job by its expected duration
+    private long filesize;
+    private int pageCount;
+    private LocalDateTime createdAt;
+    // Trace of the upload as propagation fields in JSON, continued when the job is published
+    @Column(length = 512)
+    private String traceContext;
+
+    public OcrJobOutboxEntry(String documentId, String filename, String objectKey, String contentHash, long filesize, int pageCount) {
+        this.documentId = documentId;
+        this.filename = filename;
+        this.objectKey = objectKey;
+        this.contentHash = contentHash;
+        this.filesize = filesize;
+        this.pageCount = pageCount;
+        this.createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,78 @@
+package at.technikum.paperlessrest.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times calls to the services the REST service depends on. Every call is recorded in the
+ * {@code paperless.dependency} timer, tagged with the dependency, the operation and the outcome, and
+ * added to the {@code Server-Timing} breakdown of the request running on the current thread, if any.
+ */
+@Component
+public class DependencyTimer {
+
+    public static final String POSTGRES = "postgres";
+    public static final String MINIO = "minio";
+    public static final String ELASTICSEARCH = "elasticsearch";
+    public static final String RABBITMQ = "rabbitmq";
+
+    private static final ThreadLocal<ServerTiming> CURRENT_REQUEST = new ThreadLocal<>();
+
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    @FunctionalInterface
+    public interface Action<E extends Exception> {
+        void run() throws E;
+    }
+
+    private final MeterRegistry meterRegistry;
+
+    public DependencyTimer(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T, E extends Exception> T record(String dependency, String operation, Call<T, E> call) throws E {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = call.call();
+            success = true;
+            return result;
+        } finally {
+            long duration = System.nanoTime() - start;
+            Timer.builder("paperless.dependency")
+                    .description("Calls from the REST service to Postgres, MinIO, Elasticsearch and RabbitMQ")
+                    .tag("dependency", dependency)
+                    .tag("operation", operation)
+                    .tag("outcome", success ? "success" : "failure")
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(duration, TimeUnit.NANOSECONDS);
+            ServerTiming timing = CURRENT_REQUEST.get();
+            if (timing != null) {
+                timing.add(dependency, duration);
+            }
+        }
+    }
+
+    public <E extends Exception> void run(String dependency, String operation, Action<E> action) throws E {
+        record(dependency, operation, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    static void bind(ServerTiming timing) {
+        CURRENT_REQUEST.set(timing);
+    }
+
+    static void unbind() {
+        CURRENT_REQUEST.remove();
+    }
+}
@@ -0,0 +1,38 @@
+package at.technikum.paperlessrest.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Time one request spent in each dependency, rendered as a {@code Server-Timing} header value such as
+ * {@code postgres;dur=3.1;desc="2 calls", elasticsearch;dur=18.4;desc="1 call", total;dur=24.0}.
+ */
+class ServerTiming {
+
+    private final long start;
+    private final Map<String, long[]> dependencies = new LinkedHashMap<>();
+
+    ServerTiming(long start) {
+        this.start = start;
+    }
+
+    synchronized void add(String dependency, long nanos) {
+        long[] entry = dependencies.computeIfAbsent(dependency, d -> new long[2]);
+        entry[0] += nanos;
+        entry[1]++;
+    }
+
+    synchronized String header(long now) {
+        StringBuilder header = new StringBuilder();
+        dependencies.forEach((dependency, entry) -> header
+                .append(dependency)
+                .append(";dur=").append(millis(entry[0]))
+                .append(";desc=\"").append(entry[1]).append(entry[1] == 1 ? " call" : " calls").append("\", "));
+        return header.append("total;dur=").append(millis(now - start)).toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,113 @@
+package at.technikum.paperlessrest.metrics;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Adds a {@code Server-Timing} header with the time the request spent in each dependency, so a slow
+ * request can be broken down in the browser's developer tools. The header goes out with the first
+ * byte of the body, or when the request completes without one; time spent while a streamed body is
+ * written is not included.
+ */
+@Component
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    static final String SERVER_TIMING = "Server-Timing";
+    // Lets the page read the timings of cross-origin API calls through the Resource Timing API
+    static final String TIMING_ALLOW_ORIGIN = "Timing-Allow-Origin";
+
+    private final boolean enabled;
+    private final String allowOrigin;
+
+    public ServerTimingFilter(@Value("${paperless.server-timing.enabled:true}") boolean enabled,
+                              @Value("${paperless.server-timing.allow-origin:http://localhost}") String allowOrigin) {
+        this.enabled = enabled;
+        this.allowOrigin = allowOrigin;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        TimedResponse timedResponse = new TimedResponse(response, new ServerTiming(System.nanoTime()));
+        DependencyTimer.bind(timedResponse.timing);
+        try {
+            chain.doFilter(request, timedResponse);
+        } finally {
+            DependencyTimer.unbind();
+            timedResponse.addTimingHeaders();
+        }
+    }
+
+    private class TimedResponse extends HttpServletResponseWrapper {
+
+        private final ServerTiming timing;
+        private boolean headersAdded;
+
+        TimedResponse(HttpServletResponse response, ServerTiming timing) {
+            super(response);
+            this.timing = timing;
+        }
+
+        synchronized void addTimingHeaders() {
+            if (headersAdded || isCommitted()) {
+                return;
+            }
+            headersAdded = true;
+            setHeader(SERVER_TIMING, timing.header(System.nanoTime()));
+            if (allowOrigin != null && !allowOrigin.isBlank()) {
+                setHeader(TIMING_ALLOW_ORIGIN, allowOrigin);
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            addTimingHeaders();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            addTimingHeaders();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            addTimingHeaders();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            addTimingHeaders();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            addTimingHeaders();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            addTimingHeaders();
+            super.sendRedirect(location);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package at.technikum.paperlessrest.migration;
+
+import io.minio.*;
+import io.minio.errors.ErrorResponseException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * One-off migration for databases created while {@code Document} still mapped a {@code file} column.
+ * Any bytes left in that column are copied to MinIO under the document ID, after which the column is
+ * dropped so metadata rows stay narrow. Does nothing once the column is gone. The table is paged
+ * through by ID and every file is read on its own, so the blobs are never loaded all at once.
+ */
+@Slf4j
+@Component
+public class FileColumnMigration implements ApplicationRunner {
+
+    private static final long PART_SIZE = 5L * 1024 * 1024;
+    private static final int PAGE_SIZE = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MinioClient minioClient;
+    private final TransactionTemplate transactionTemplate;
+    private final String bucketName = "documents";
+
+    public FileColumnMigration(JdbcTemplate jdbcTemplate, MinioClient minioClient, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.minioClient = minioClient;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!fileColumnExists()) {
+            return;
+        }
+
+        log.info("Legacy 'file' column found on table 'files'. Moving stored files to MinIO.");
+        try {
+            if (!minioClient.bucketExists(BucketExistsArgs.builder().bucket(bucketName).build())) {
+                minioClient.makeBucket(MakeBucketArgs.builder().bucket(bucketName).build());
+            }
+
+            int moved = 0;
+            String lastId = "";
+            List<String> ids;
+            // Pages through the IDs only, each file is read on its own so at most one is held in memory
+            while (!(ids = jdbcTemplate.queryForList(
+                    "select id from files where file is not null and id > ? order by id limit " + PAGE_SIZE,
+                    String.class, lastId)).isEmpty()) {
+                for (String id : ids) {
+                    if (!objectExists(id)) {
+                        moveFile(id);
+                        moved++;
+                    }
+                }
+                lastId = ids.get(ids.size() - 1);
+            }
+            log.info("Moved {} files from the database to MinIO", moved);
+
+            jdbcTemplate.execute("alter table files drop column file");
+            log.info("Dropped legacy 'file' column from table 'files'");
+        } catch (Exception e) {
+            // Keep the column, and with it the data, so the migration can be retried on the next start
+            log.error("Migration of the legacy 'file' column failed: {}", e.getMessage(), e);
+        }
+    }
+
+    // Large objects (oid columns) can only be read inside a transaction
+    private void moveFile(String id) {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query("select file from files where id = ?", rs -> {
+            try (InputStream stream = rs.getBinaryStream("file")) {
+                minioClient.putObject(PutObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(id)
+                        .stream(stream, -1, PART_SIZE)
+                        .contentType("application/pdf")
+                        .build());
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to move file of document " + id + " to MinIO", e);
+            }
+        }, id));
+    }
+
+    private boolean fileColumnExists() {
+        Integer count = jdbcTemplate.queryForObject(
+                "select count(*) from information_schema.columns where lower(table_name) = 'files' and lower(column_name) = 'file'",
+                Integer.class);
+        return count != null && count > 0;
+    }
+
+    private boolean objectExists(String id) throws Exception {
+        try {
+            minioClient.statObject(StatObjectArgs.builder().bucket(bucketName).object(id).build());
+            return true;
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                return false;
+            }
+            throw e;
+        }
+    }
+}
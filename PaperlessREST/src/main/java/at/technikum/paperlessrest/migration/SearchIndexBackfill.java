@@ -0,0 +1,61 @@
+package at.technikum.paperlessrest.migration;
+
+import at.technikum.paperlessrest.dto.DocumentDTO;
+import at.technikum.paperlessrest.elastic.ElasticsearchIndexer;
+import at.technikum.paperlessrest.entities.Document;
+import at.technikum.paperlessrest.repository.DocumentRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+/**
+ * Copies the metadata of every stored document into the search index. Documents indexed before
+ * searches were served from Elasticsearch alone only carry their OCR text, so this is run once per
+ * installation by starting with {@code paperless.search.backfill-metadata=true}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "paperless.search.backfill-metadata", havingValue = "true")
+public class SearchIndexBackfill implements ApplicationRunner {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final DocumentRepository documentRepository;
+    private final ElasticsearchIndexer elasticsearchIndexer;
+
+    public SearchIndexBackfill(DocumentRepository documentRepository, ElasticsearchIndexer elasticsearchIndexer) {
+        this.documentRepository = documentRepository;
+        this.elasticsearchIndexer = elasticsearchIndexer;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        log.info("Backfilling document metadata into the search index");
+        int indexed = 0;
+        int failed = 0;
+        try {
+            Page<Document> page = documentRepository.findAll(PageRequest.of(0, BATCH_SIZE, Sort.by("id")));
+            while (true) {
+                failed += elasticsearchIndexer.bulkIndexMetadata(page.map(SearchIndexBackfill::toDTO).getContent());
+                indexed += page.getNumberOfElements();
+                if (!page.hasNext()) {
+                    break;
+                }
+                page = documentRepository.findAll(page.nextPageable());
+            }
+            log.info("Backfilled metadata of {} documents ({} rejected)", indexed, failed);
+        } catch (Exception e) {
+            log.error("Backfilling the search index stopped after {} documents: {}", indexed, e.getMessage(), e);
+        }
+    }
+
+    private static DocumentDTO toDTO(Document document) {
+        return new DocumentDTO(document.getId(), document.getFilename(), document.getFilesize(),
+                document.getFiletype(), document.getUploadDate(), document.isOcrJobDone());
+    }
+}
@@ -0,0 +1,88 @@
+package at.technikum.paperlessrest.rabbitmq;
+
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
+import org.json.JSONObject;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Carries the trace of an upload to the worker and back: the context of the upload request is stored
+ * with the outbox entry, travels in the headers of the job message, and returns in the headers of the
+ * result. Contexts are written in the configured propagation format, W3C {@code traceparent} by default.
+ */
+@Component
+public class AmqpTracing {
+
+    private final Tracer tracer;
+    private final Propagator propagator;
+
+    public AmqpTracing(Tracer tracer, Propagator propagator) {
+        this.tracer = tracer;
+        this.propagator = propagator;
+    }
+
+    /**
+     * The propagation fields of the current span as a JSON object, for storing with an outbox entry.
+     * Null if no span is active.
+     */
+    public String currentContext() {
+        Span span = tracer.currentSpan();
+        if (span == null) {
+            return null;
+        }
+        JSONObject fields = new JSONObject();
+        propagator.inject(span.context(), fields, (carrier, key, value) -> carrier.put(key, value));
+        return fields.length() == 0 ? null : fields.toString();
+    }
+
+    /**
+     * Records the time a job spent in the outbox and starts the span of publishing it, both as children
+     * of the stored context.
+     */
+    Span startPublishSpan(String storedContext, LocalDateTime queuedAt, String documentId) {
+        long queued = queuedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        childOf(storedContext)
+                .name("ocr-job outbox")
+                .tag("document.id", documentId)
+                .startTimestamp(queued, TimeUnit.MILLISECONDS)
+                .start()
+                .end();
+        return childOf(storedContext)
+                .name("ocr-job publish")
+                .kind(Span.Kind.PRODUCER)
+                .tag("document.id", documentId)
+                .start();
+    }
+
+    void inject(Span span, MessageProperties properties) {
+        propagator.inject(span.context(), properties, MessageProperties::setHeader);
+    }
+
+    /**
+     * Starts a span continuing the trace the message was sent in, or a new trace if it carries none.
+     */
+    Span startConsumerSpan(String name, Message message) {
+        return propagator.extract(message.getMessageProperties(), (properties, key) -> {
+                    Object value = properties.getHeader(key);
+                    return value != null ? value.toString() : null;
+                })
+                .name(name)
+                .kind(Span.Kind.CONSUMER)
+                .start();
+    }
+
+    private Span.Builder childOf(String storedContext) {
+        if (storedContext == null) {
+            return tracer.spanBuilder();
+        }
+        JSONObject fields = new JSONObject(storedContext);
+        return propagator.extract(fields, (carrier, key) -> carrier.optString(key, null));
+    }
+}
@@ -0,0 +1,66 @@
+package at.technikum.paperlessrest.rabbitmq;
+
+import at.technikum.paperlessrest.entities.OcrJobOutboxEntry;
+import at.technikum.paperlessrest.repository.OcrJobOutboxRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Publishes queued OCR jobs from the outbox table. Each batch is locked, published with publisher
+ * confirms and deleted in one transaction. If the broker does not confirm, the transaction rolls back
+ * and the batch is published again on the next run, so a job may be delivered twice but is never lost.
+ */
+@Slf4j
+@Component
+public class OcrJobOutboxRelay {
+
+    private final OcrJobOutboxRepository ocrJobOutboxRepository;
+    private final RabbitMQSender rabbitMQSender;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Duration confirmTimeout;
+
+    public OcrJobOutboxRelay(OcrJobOutboxRepository ocrJobOutboxRepository, RabbitMQSender rabbitMQSender,
+                             TransactionTemplate transactionTemplate,
+                             @Value("${paperless.outbox.batch-size:100}") int batchSize,
+                             @Value("${paperless.outbox.confirm-timeout:5s}") Duration confirmTimeout) {
+        this.ocrJobOutboxRepository = ocrJobOutboxRepository;
+        this.rabbitMQSender = rabbitMQSender;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.confirmTimeout = confirmTimeout;
+    }
+
+    // Drains the outbox, full batches are followed by the next one right away
+    @Scheduled(fixedDelayString = "${paperless.outbox.poll-interval-ms:500}")
+    public void relay() {
+        try {
+            int published;
+            do {
+                published = publishBatch();
+            } while (published == batchSize);
+        } catch (Exception e) {
+            log.warn("Publishing OCR jobs failed, retrying on the next run: {}", e.getMessage());
+        }
+    }
+
+    int publishBatch() {
+        Integer published = transactionTemplate.execute(status -> {
+            List<OcrJobOutboxEntry> batch = ocrJobOutboxRepository.findBatchForUpdate(PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            rabbitMQSender.sendOCRJobMessages(batch, confirmTimeout);
+            ocrJobOutboxRepository.deleteAllInBatch(batch);
+            return batch.size();
+        });
+        return published != null ? published : 0;
+    }
+}
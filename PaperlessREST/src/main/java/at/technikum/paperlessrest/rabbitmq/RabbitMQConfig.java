@@ -1,9 +1,15 @@
 package at.technikum.paperlessrest.rabbitmq;
 
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 @Configuration
 public class RabbitMQConfig {
 
@@ -11,6 +17,10 @@ public class RabbitMQConfig {
     public static final String EXCHANGE = "document_exchange";
     public static final String ROUTING_KEY = "document_routing_key";
 
+    // Documents expected to take long are processed in their own lane, see RabbitMQSender#routingKeyOf
+    public static final String LARGE_QUEUE = "document_processing_queue_large";
+    public static final String LARGE_ROUTING_KEY = "document_routing_key.large";
+
     public static final String RESULT_QUEUE = "document_result_queue";
 
     @Bean
@@ -18,6 +28,11 @@ public class RabbitMQConfig {
         return new Queue(QUEUE, true);
     }
 
+    @Bean
+    public Queue largeQueue() {
+        return new Queue(LARGE_QUEUE, true);
+    }
+
     @Bean
     public Queue result_queue() {
         return new Queue(RESULT_QUEUE, true);
@@ -33,4 +48,30 @@ public class RabbitMQConfig {
     public Binding binding(Queue queue, TopicExchange exchange) {
         return BindingBuilder.bind(queue).to(exchange).with(ROUTING_KEY);
     }
+
+    @Bean
+    public Binding largeBinding(Queue largeQueue, TopicExchange exchange) {
+        return BindingBuilder.bind(largeQueue).to(exchange).with(LARGE_ROUTING_KEY);
+    }
+
+    /**
+     * Hands OCR results to the listener in lists of up to {@code paperless.ocr-results.batch-size}
+     * messages. A smaller batch is delivered once no further message arrived within
+     * {@code paperless.ocr-results.batch-timeout}, so single results are not held back during quiet times.
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory resultBatchContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                            ConnectionFactory connectionFactory,
+                                                                            @Value("${paperless.ocr-results.batch-size:100}") int batchSize,
+                                                                            @Value("${paperless.ocr-results.batch-timeout:500ms}") Duration batchTimeout) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(batchTimeout.toMillis());
+        // The broker has to send a full batch before the first one is acked
+        factory.setPrefetchCount(batchSize);
+        return factory;
+    }
 }
@@ -1,40 +1,190 @@
 package at.technikum.paperlessrest.rabbitmq;
 
+import at.technikum.paperlessrest.dto.DocumentDTO;
+import at.technikum.paperlessrest.elastic.ElasticsearchIndexer;
 import at.technikum.paperlessrest.entities.Document;
+import at.technikum.paperlessrest.repository.DocumentContentHash;
 import at.technikum.paperlessrest.repository.DocumentRepository;
+import at.technikum.paperlessrest.repository.OcrProgress;
+import at.technikum.paperlessrest.service.SearchResultCache;
+import io.micrometer.tracing.Span;
 import lombok.extern.slf4j.Slf4j;
 import org.json.JSONObject;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies OCR results in batches, see {@link RabbitMQConfig#resultBatchContainerFactory}. All documents
+ * of a batch are marked done with one {@code UPDATE ... WHERE id IN (...)}, and the batch is acked once
+ * this method returns. If the database update fails, the exception rejects the whole batch and the
+ * broker delivers it again. Progress messages of running jobs are applied in the same pass as one JDBC
+ * batch, and copies of the batch's contents waiting for a result are looked up with one query.
+ * <p>
+ * Every message gets a span in the trace of its job, ending once the batch is applied.
+ */
 @Slf4j
 @Service
 public class RabbitMQResultListener {
 
+    // Type of the messages a worker sends while a job is running, results without a type are completions
+    private static final String PROGRESS = "progress";
+
     private final DocumentRepository documentRepository;
+    private final ElasticsearchIndexer elasticsearchIndexer;
+    private final SearchResultCache searchResultCache;
+    private final TransactionTemplate transactionTemplate;
+    private final AmqpTracing amqpTracing;
 
-    public RabbitMQResultListener(DocumentRepository documentRepository) {
+    public RabbitMQResultListener(DocumentRepository documentRepository, ElasticsearchIndexer elasticsearchIndexer,
+                                  SearchResultCache searchResultCache, TransactionTemplate transactionTemplate, AmqpTracing amqpTracing) {
         this.documentRepository = documentRepository;
+        this.elasticsearchIndexer = elasticsearchIndexer;
+        this.searchResultCache = searchResultCache;
+        this.transactionTemplate = transactionTemplate;
+        this.amqpTracing = amqpTracing;
     }
 
-    @RabbitListener(queues = RabbitMQConfig.RESULT_QUEUE)
-    public void handleOcrResult(String message) {
-        log.info("Received OCR result message: {}", message);
+    @RabbitListener(queues = RabbitMQConfig.RESULT_QUEUE, containerFactory = "resultBatchContainerFactory")
+    public void handleOcrResults(List<Message> messages) {
+        List<Span> spans = messages.stream().map(message -> amqpTracing.startConsumerSpan("ocr-result apply", message)).toList();
         try {
-            JSONObject jsonMessage = new JSONObject(message);
-            String documentId = jsonMessage.getString("documentId");
+            applyResults(messages.stream().map(message -> new String(message.getBody(), StandardCharsets.UTF_8)).toList());
+        } catch (RuntimeException e) {
+            spans.forEach(span -> span.error(e));
+            throw e;
+        } finally {
+            spans.forEach(Span::end);
+        }
+    }
+
+    private void applyResults(List<String> messages) {
+        log.info("Received {} OCR result messages", messages.size());
+        // A document may be reported twice if a job was redelivered
+        Set<String> documentIds = new LinkedHashSet<>();
+        Map<String, OcrProgress> progress = new LinkedHashMap<>();
+        // Content digests named by the results, needed for documents deleted while their job ran
+        Map<String, String> contentHashes = new HashMap<>();
+        for (String message : messages) {
+            JSONObject result = parse(message);
+            if (result == null) {
+                continue;
+            }
+            String documentId = result.getString("documentId");
+            if (PROGRESS.equals(result.optString("type"))) {
+                // Only the furthest progress of a document in this batch matters
+                progress.merge(documentId, new OcrProgress(result.getInt("pagesDone"), result.getInt("pageCount")),
+                        (a, b) -> a.pagesDone() >= b.pagesDone() ? a : b);
+            } else {
+                documentIds.add(documentId);
+                if (result.has("contentHash")) {
+                    contentHashes.put(documentId, result.getString("contentHash"));
+                }
+            }
+        }
+        documentIds.forEach(progress::remove);
+        if (!progress.isEmpty()) {
+            updateProgress(progress);
+        }
+        if (documentIds.isEmpty()) {
+            return;
+        }
+
+        // Results for deleted or unknown documents are dropped, the others are flipped in one statement
+        List<DocumentContentHash> documents = transactionTemplate.execute(status -> {
+            List<DocumentContentHash> existing = documentRepository.findContentHashesByIdIn(documentIds);
+            if (!existing.isEmpty()) {
+                documentRepository.markOcrJobsDone(existing.stream().map(DocumentContentHash::id).toList());
+            }
+            return existing;
+        });
+
+        // Content of every completed document, and of deleted ones whose copies still wait for the text
+        Map<String, String> sources = new HashMap<>();
+        documents.stream()
+                .filter(document -> document.contentHash() != null)
+                .forEach(document -> sources.put(document.contentHash(), document.id()));
+        Set<String> deleted = new LinkedHashSet<>(documentIds);
+        documents.forEach(document -> deleted.remove(document.id()));
+        if (!deleted.isEmpty()) {
+            log.warn("Received OCR results for deleted or unknown document IDs: {}", deleted);
+            deleted.stream()
+                    .filter(contentHashes::containsKey)
+                    .forEach(documentId -> sources.putIfAbsent(contentHashes.get(documentId), documentId));
+        }
+        int duplicates = sources.isEmpty() ? 0 : completeDuplicates(sources);
+        // The worker created index entries for the deleted documents, their copies took the text by now
+        deleted.forEach(this::removeFromIndex);
+
+        if (!documents.isEmpty()) {
+            log.info("OCR processing completed for {} documents. Updated 'ocrJobDone' to true.", documents.size());
+        }
+        if (!documents.isEmpty() || duplicates > 0) {
+            // The OCR text is searchable now, cached pages may be missing these documents
+            searchResultCache.invalidate();
+        }
+    }
 
-            // Find document by ID and update ocrJobDone
-            Document document = documentRepository.findById(documentId)
-                    .orElseThrow(() -> new IllegalArgumentException("Document not found with ID: " + documentId));
+    // Progress messages of running jobs, the text of the pages done so far is already in the index
+    private void updateProgress(Map<String, OcrProgress> progress) {
+        Integer updated = transactionTemplate.execute(status -> documentRepository.updateOcrProgress(progress));
+        // Not invalidating the search result cache: partial text shows up once cached pages expire,
+        // clearing the cache for every progress report would keep it empty while jobs are running
+        log.info("Updated OCR progress of {} documents", updated);
+    }
 
-            document.setOcrJobDone(true);
-            documentRepository.save(document);
+    // Malformed messages are dropped here, anything thrown later would reject and redeliver the whole batch
+    private static JSONObject parse(String message) {
+        try {
+            JSONObject result = new JSONObject(message);
+            result.getString("documentId");
+            if (PROGRESS.equals(result.optString("type"))) {
+                result.getInt("pagesDone");
+                result.getInt("pageCount");
+            }
+            return result;
+        } catch (Exception e) {
+            log.error("Failed to process OCR result message {}: {}", message, e.getMessage());
+            return null;
+        }
+    }
 
-            log.info("OCR processing completed for document ID: {}. Updated 'ocrJobDone' to true.", documentId);
+    private void removeFromIndex(String documentId) {
+        try {
+            elasticsearchIndexer.deleteDocument(documentId);
         } catch (Exception e) {
-            log.error("Failed to process OCR result message: {}", e.getMessage(), e);
+            log.warn("Could not remove deleted document {} from the search index: {}", documentId, e.getMessage());
         }
     }
 
+    // Duplicates uploaded while a document was being processed reuse its OCR text. sources maps each
+    // content digest to the document whose index entry has the text.
+    private int completeDuplicates(Map<String, String> sources) {
+        List<String> completed = new ArrayList<>();
+        for (Document duplicate : documentRepository.findByContentHashInAndOcrJobDoneFalse(sources.keySet())) {
+            String source = sources.get(duplicate.getContentHash());
+            try {
+                elasticsearchIndexer.copyOcrText(source, new DocumentDTO(duplicate.getId(), duplicate.getFilename(), duplicate.getFilesize(),
+                        duplicate.getFiletype(), duplicate.getUploadDate(), true));
+                completed.add(duplicate.getId());
+                log.info("Reused OCR result of document ID: {} for duplicate document ID: {}", source, duplicate.getId());
+            } catch (Exception e) {
+                log.error("Failed to reuse OCR result for duplicate document ID {}: {}", duplicate.getId(), e.getMessage(), e);
+            }
+        }
+        if (!completed.isEmpty()) {
+            documentRepository.markOcrJobsDone(completed);
+        }
+        return completed.size();
+    }
 }
@@ -1,28 +1,97 @@
 package at.technikum.paperlessrest.rabbitmq;
 
+import at.technikum.paperlessrest.entities.OcrJobOutboxEntry;
+import at.technikum.paperlessrest.metrics.DependencyTimer;
+import io.micrometer.tracing.Span;
 import lombok.extern.slf4j.Slf4j;
+import org.json.JSONObject;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 
 @Slf4j
 @Service
 public class RabbitMQSender {
 
     private final RabbitTemplate rabbitTemplate;
+    private final DependencyTimer dependencyTimer;
+    private final AmqpTracing amqpTracing;
+    private final int largeDocumentPages;
+    private final DataSize largeDocumentSize;
 
-    public RabbitMQSender(RabbitTemplate rabbitTemplate) {
+    public RabbitMQSender(RabbitTemplate rabbitTemplate, DependencyTimer dependencyTimer, AmqpTracing amqpTracing,
+                          @Value("${paperless.ocr.large-document.pages:50}") int largeDocumentPages,
+                          @Value("${paperless.ocr.large-document.size:20MB}") DataSize largeDocumentSize) {
         this.rabbitTemplate = rabbitTemplate;
+        this.dependencyTimer = dependencyTimer;
+        this.amqpTracing = amqpTracing;
+        this.largeDocumentPages = largeDocumentPages;
+        this.largeDocumentSize = largeDocumentSize;
     }
 
-    public void sendOCRJobMessage(String documentId, String filename) {
-        String message = "{\"documentId\":\"" + documentId + "\", \"filename\":\"" + filename + "\"}";
-        log.info("Preparing to send OCR job message for document ID: {}", documentId);
-
+    /**
+     * Publishes the jobs on one channel and waits until the broker has confirmed all of them, so the
+     * confirm round trip is paid once per batch. Requires {@code spring.rabbitmq.publisher-confirm-type=simple}.
+     * Every message continues the trace of its upload and carries the time it was published.
+     *
+     * @throws org.springframework.amqp.AmqpException if a message was not confirmed within {@code confirmTimeout};
+     *                                                any of the jobs may then have been published or not
+     */
+    public void sendOCRJobMessages(List<OcrJobOutboxEntry> jobs, Duration confirmTimeout) {
+        List<Span> spans = new ArrayList<>();
         try {
-            rabbitTemplate.convertAndSend(RabbitMQConfig.EXCHANGE, RabbitMQConfig.ROUTING_KEY, message);
-            log.info("Message successfully sent to RabbitMQ for document ID: {}", documentId);
-        } catch (Exception e) {
-            log.error("Failed to send message to RabbitMQ for document ID: {}", documentId, e);
+            dependencyTimer.record(DependencyTimer.RABBITMQ, "publishConfirmed", () -> rabbitTemplate.invoke(operations -> {
+                for (OcrJobOutboxEntry job : jobs) {
+                    Span span = amqpTracing.startPublishSpan(job.getTraceContext(), job.getCreatedAt(), job.getDocumentId());
+                    spans.add(span);
+                    operations.convertAndSend(RabbitMQConfig.EXCHANGE, routingKeyOf(job), messageOf(job), message -> {
+                        amqpTracing.inject(span, message.getMessageProperties());
+                        message.getMessageProperties().setTimestamp(new Date());
+                        return message;
+                    });
+                }
+                operations.waitForConfirmsOrDie(confirmTimeout.toMillis());
+                return null;
+            }));
+        } catch (RuntimeException e) {
+            spans.forEach(span -> span.error(e));
+            throw e;
+        } finally {
+            // Publish spans end once the broker confirmed the batch
+            spans.forEach(Span::end);
+        }
+        log.info("{} OCR job messages confirmed by RabbitMQ", jobs.size());
+    }
+
+    /**
+     * Sends documents with at least {@code paperless.ocr.large-document.pages} pages to the large lane,
+     * so they cannot hold up short documents. Without a page count the file size decides.
+     */
+    String routingKeyOf(OcrJobOutboxEntry job) {
+        boolean large = job.getPageCount() > 0
+                ? job.getPageCount() >= largeDocumentPages
+                : job.getFilesize() >= largeDocumentSize.toBytes();
+        return large ? RabbitMQConfig.LARGE_ROUTING_KEY : RabbitMQConfig.ROUTING_KEY;
+    }
+
+    static String messageOf(OcrJobOutboxEntry job) {
+        JSONObject message = new JSONObject()
+                .put("documentId", job.getDocumentId())
+                .put("filename", job.getFilename())
+                .put("objectKey", job.getObjectKey())
+                .put("filesize", job.getFilesize());
+        if (job.getContentHash() != null) {
+            message.put("contentHash", job.getContentHash());
+        }
+        if (job.getPageCount() > 0) {
+            message.put("pageCount", job.getPageCount());
         }
+        return message.toString();
     }
 }
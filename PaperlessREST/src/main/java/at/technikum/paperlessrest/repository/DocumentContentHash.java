@@ -0,0 +1,8 @@
+package at.technikum.paperlessrest.repository;
+
+/**
+ * ID and content hash of a {@link at.technikum.paperlessrest.entities.Document}, enough to find the
+ * duplicates waiting for its OCR result.
+ */
+public record DocumentContentHash(String id, String contentHash) {
+}
@@ -0,0 +1,17 @@
+package at.technikum.paperlessrest.repository;
+
+import at.technikum.paperlessrest.entities.DocumentContent;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
+
+public interface DocumentContentRepository extends JpaRepository<DocumentContent, String> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from DocumentContent c where c.contentHash = :contentHash")
+    Optional<DocumentContent> findByIdForUpdate(@Param("contentHash") String contentHash);
+}
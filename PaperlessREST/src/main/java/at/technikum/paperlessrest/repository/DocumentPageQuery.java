@@ -0,0 +1,28 @@
+package at.technikum.paperlessrest.repository;
+
+import lombok.Builder;
+import lombok.Getter;
+import org.springframework.data.domain.Sort;
+
+/**
+ * Filters, ordering and keyset position of one page of a document listing.
+ * {@code afterValue}/{@code afterId} are the sort key and ID of the last row of the previous page.
+ */
+@Getter
+@Builder
+public class DocumentPageQuery {
+    private Boolean ocrJobDone;
+    private String filetype;
+    private Long minFilesize;
+    private Long maxFilesize;
+
+    @Builder.Default
+    private DocumentSortField sortField = DocumentSortField.UPLOAD_DATE;
+    @Builder.Default
+    private Sort.Direction direction = Sort.Direction.DESC;
+
+    private Comparable<?> afterValue;
+    private String afterId;
+
+    private int limit;
+}
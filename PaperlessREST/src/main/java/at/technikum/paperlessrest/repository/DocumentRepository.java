@@ -2,10 +2,36 @@ package at.technikum.paperlessrest.repository;
 
 import at.technikum.paperlessrest.entities.Document;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
-public interface DocumentRepository extends JpaRepository<Document, String> {
+public interface DocumentRepository extends JpaRepository<Document, String>, DocumentRepositoryCustom {
     List<Document> findByFilenameContainingIgnoreCase(String query);
     List<Document> findByIdContainingIgnoreCase(String query);
+
+    Optional<Document> findFirstByContentHashAndOcrJobDoneTrue(String contentHash);
+    List<Document> findByContentHashAndOcrJobDoneFalse(String contentHash);
+    List<Document> findByContentHashInAndOcrJobDoneFalse(Collection<String> contentHashes);
+
+    @Query("select d.objectKey from Document d where d.id = :id")
+    Optional<String> findObjectKeyById(@Param("id") String id);
+
+    @Query("select new at.technikum.paperlessrest.repository.DocumentContentHash(d.id, d.contentHash) from Document d where d.id in :ids")
+    List<DocumentContentHash> findContentHashesByIdIn(@Param("ids") Collection<String> ids);
+
+    @Transactional
+    @Modifying
+    @Query("update Document d set d.ocrJobDone = true where d.id = :id")
+    int markOcrJobDone(@Param("id") String id);
+
+    @Transactional
+    @Modifying
+    @Query("update Document d set d.ocrJobDone = true, d.ocrPagesDone = d.ocrPageCount where d.id in :ids")
+    int markOcrJobsDone(@Param("ids") Collection<String> ids);
 }
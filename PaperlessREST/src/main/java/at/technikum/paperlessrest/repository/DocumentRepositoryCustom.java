@@ -0,0 +1,16 @@
+package at.technikum.paperlessrest.repository;
+
+import java.util.List;
+import java.util.Map;
+
+public interface DocumentRepositoryCustom {
+    List<DocumentSummary> findPage(DocumentPageQuery query);
+
+    /**
+     * Stores the progress of running OCR jobs, keyed by document ID, as one JDBC batch. Progress only
+     * moves forward and is ignored once the job is done, messages may arrive out of order.
+     *
+     * @return the number of documents updated
+     */
+    int updateOcrProgress(Map<String, OcrProgress> progress);
+}
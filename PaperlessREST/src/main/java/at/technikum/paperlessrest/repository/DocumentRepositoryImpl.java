@@ -0,0 +1,100 @@
+package at.technikum.paperlessrest.repository;
+
+import at.technikum.paperlessrest.entities.Document;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.*;
+import org.hibernate.Session;
+import org.springframework.data.domain.Sort;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class DocumentRepositoryImpl implements DocumentRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public List<DocumentSummary> findPage(DocumentPageQuery query) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<DocumentSummary> cq = cb.createQuery(DocumentSummary.class);
+        Root<Document> document = cq.from(Document.class);
+
+        cq.select(cb.construct(DocumentSummary.class,
+                document.get("id"),
+                document.get("filename"),
+                document.get("filesize"),
+                document.get("filetype"),
+                document.get("uploadDate"),
+                document.get("ocrJobDone"),
+                document.get("ocrPagesDone"),
+                document.get("ocrPageCount")));
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (query.getOcrJobDone() != null) {
+            predicates.add(cb.equal(document.get("ocrJobDone"), query.getOcrJobDone()));
+        }
+        if (query.getFiletype() != null) {
+            predicates.add(cb.equal(document.get("filetype"), query.getFiletype()));
+        }
+        if (query.getMinFilesize() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(document.get("filesize"), query.getMinFilesize()));
+        }
+        if (query.getMaxFilesize() != null) {
+            predicates.add(cb.lessThanOrEqualTo(document.get("filesize"), query.getMaxFilesize()));
+        }
+
+        boolean descending = query.getDirection() == Sort.Direction.DESC;
+        Path<Comparable> key = document.get(query.getSortField().getProperty());
+        Path<String> id = document.get("id");
+
+        // Keyset condition: (key, id) strictly after the cursor in sort order
+        if (query.getAfterId() != null) {
+            Comparable value = query.getAfterValue();
+            predicates.add(descending
+                    ? cb.or(cb.lessThan(key, value), cb.and(cb.equal(key, value), cb.lessThan(id, query.getAfterId())))
+                    : cb.or(cb.greaterThan(key, value), cb.and(cb.equal(key, value), cb.greaterThan(id, query.getAfterId()))));
+        }
+
+        cq.where(predicates.toArray(new Predicate[0]));
+        cq.orderBy(descending
+                ? List.of(cb.desc(key), cb.desc(id))
+                : List.of(cb.asc(key), cb.asc(id)));
+
+        return entityManager.createQuery(cq)
+                .setMaxResults(query.getLimit())
+                .getResultList();
+    }
+
+    @Override
+    public int updateOcrProgress(Map<String, OcrProgress> progress) {
+        if (progress.isEmpty()) {
+            return 0;
+        }
+        // Plain JDBC does not flush pending changes of the persistence context on its own
+        entityManager.flush();
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "update files set ocr_pages_done = ?, ocr_page_count = ? "
+                            + "where id = ? and ocr_job_done = false and (ocr_pages_done is null or ocr_pages_done < ?)")) {
+                for (Map.Entry<String, OcrProgress> entry : progress.entrySet()) {
+                    statement.setInt(1, entry.getValue().pagesDone());
+                    statement.setInt(2, entry.getValue().pageCount());
+                    statement.setString(3, entry.getKey());
+                    statement.setInt(4, entry.getValue().pagesDone());
+                    statement.addBatch();
+                }
+                int updated = 0;
+                for (int count : statement.executeBatch()) {
+                    // Drivers may report SUCCESS_NO_INFO instead of a count
+                    updated += Math.max(count, 0);
+                }
+                return updated;
+            }
+        });
+    }
+}
@@ -0,0 +1,44 @@
+package at.technikum.paperlessrest.repository;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * Columns a document listing can be ordered by. Each is combined with the ID as tiebreaker,
+ * which makes the pair a unique keyset cursor.
+ */
+public enum DocumentSortField {
+    UPLOAD_DATE("uploadDate", LocalDateTime::parse, DocumentSummary::uploadDate),
+    FILENAME("filename", value -> value, DocumentSummary::filename),
+    FILESIZE("filesize", Long::valueOf, DocumentSummary::filesize);
+
+    private final String property;
+    private final Function<String, Comparable<?>> parser;
+    private final Function<DocumentSummary, Object> extractor;
+
+    DocumentSortField(String property, Function<String, Comparable<?>> parser, Function<DocumentSummary, Object> extractor) {
+        this.property = property;
+        this.parser = parser;
+        this.extractor = extractor;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    public Comparable<?> parseValue(String value) {
+        return parser.apply(value);
+    }
+
+    public String valueOf(DocumentSummary summary) {
+        return String.valueOf(extractor.apply(summary));
+    }
+
+    public static DocumentSortField fromProperty(String property) {
+        return Arrays.stream(values())
+                .filter(field -> field.property.equals(property))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unsupported sort field: " + property));
+    }
+}
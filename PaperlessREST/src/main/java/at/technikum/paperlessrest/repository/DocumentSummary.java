@@ -0,0 +1,17 @@
+package at.technikum.paperlessrest.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Metadata-only projection of {@link at.technikum.paperlessrest.entities.Document} used for listings,
+ * so the file column is never selected.
+ */
+public record DocumentSummary(String id,
+                              String filename,
+                              long filesize,
+                              String filetype,
+                              LocalDateTime uploadDate,
+                              boolean ocrJobDone,
+                              Integer ocrPagesDone,
+                              Integer ocrPageCount) {
+}
@@ -0,0 +1,28 @@
+package at.technikum.paperlessrest.repository;
+
+import at.technikum.paperlessrest.entities.OcrJobOutboxEntry;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface OcrJobOutboxRepository extends JpaRepository<OcrJobOutboxEntry, Long> {
+
+    // SKIP LOCKED (lock timeout -2) lets several REST instances relay disjoint batches
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select e from OcrJobOutboxEntry e order by e.id")
+    List<OcrJobOutboxEntry> findBatchForUpdate(Pageable pageable);
+
+    // Waits for a relay that is publishing the entry, which deletes it, so a published job is never reassigned
+    @Modifying
+    @Query("update OcrJobOutboxEntry e set e.documentId = :to, e.filename = :filename where e.documentId = :from")
+    int reassign(@Param("from") String fromDocumentId, @Param("to") String toDocumentId, @Param("filename") String filename);
+}
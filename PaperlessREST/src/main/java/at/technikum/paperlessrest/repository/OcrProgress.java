@@ -0,0 +1,7 @@
+package at.technikum.paperlessrest.repository;
+
+/**
+ * Pages of a running OCR job that are recognized and searchable, as reported by the worker.
+ */
+public record OcrProgress(int pagesDone, int pageCount) {
+}
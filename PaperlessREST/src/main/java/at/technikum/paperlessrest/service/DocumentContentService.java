@@ -0,0 +1,59 @@
+package at.technikum.paperlessrest.service;
+
+import at.technikum.paperlessrest.entities.DocumentContent;
+import at.technikum.paperlessrest.repository.DocumentContentRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+@Slf4j
+@Service
+public class DocumentContentService {
+
+    private final DocumentContentRepository documentContentRepository;
+
+    public DocumentContentService(DocumentContentRepository documentContentRepository) {
+        this.documentContentRepository = documentContentRepository;
+    }
+
+    /**
+     * Adds a reference to the content with the given digest. If the content is not stored yet,
+     * {@code objectKey} becomes its MinIO object; otherwise the existing object is returned and the
+     * caller's freshly uploaded copy is redundant.
+     */
+    @Transactional
+    public DocumentContent acquire(String contentHash, String objectKey) {
+        return documentContentRepository.findByIdForUpdate(contentHash)
+                .map(content -> {
+                    content.setReferenceCount(content.getReferenceCount() + 1);
+                    log.info("Content {} already stored as object {}, now referenced {} times", contentHash, content.getObjectKey(), content.getReferenceCount());
+                    return content;
+                })
+                .orElseGet(() -> {
+                    log.info("Registering new content {} stored as object {}", contentHash, objectKey);
+                    return documentContentRepository.saveAndFlush(new DocumentContent(contentHash, objectKey, 1));
+                });
+    }
+
+    /**
+     * Drops a reference to the content with the given digest.
+     *
+     * @return true if no document references the content anymore and its object can be removed
+     */
+    @Transactional
+    public boolean release(String contentHash) {
+        DocumentContent content = documentContentRepository.findByIdForUpdate(contentHash).orElse(null);
+        if (content == null) {
+            log.warn("No content record found for {}", contentHash);
+            return true;
+        }
+        if (content.getReferenceCount() <= 1) {
+            documentContentRepository.delete(content);
+            log.info("Last reference to content {} released", contentHash);
+            return true;
+        }
+        content.setReferenceCount(content.getReferenceCount() - 1);
+        log.info("Content {} still referenced {} times", contentHash, content.getReferenceCount());
+        return false;
+    }
+}
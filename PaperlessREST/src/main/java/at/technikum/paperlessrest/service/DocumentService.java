@@ -1,19 +1,48 @@
 package at.technikum.paperlessrest.service;
 
+import at.technikum.paperlessrest.customExceptions.InvalidFileUploadException;
 import at.technikum.paperlessrest.dto.DocumentDTO;
-import at.technikum.paperlessrest.dto.DocumentSearchResultDTO;
+import at.technikum.paperlessrest.dto.DocumentPageDTO;
+import at.technikum.paperlessrest.dto.DocumentPageRequestDTO;
+import at.technikum.paperlessrest.dto.DocumentSearchHitDTO;
+import at.technikum.paperlessrest.dto.SearchResultPageDTO;
+import at.technikum.paperlessrest.elastic.ElasticsearchIndexer;
 import at.technikum.paperlessrest.elastic.ElasticsearchSearcher;
+import at.technikum.paperlessrest.elastic.SearchCursor;
+import at.technikum.paperlessrest.elastic.SearchPage;
 import at.technikum.paperlessrest.entities.Document;
-import at.technikum.paperlessrest.rabbitmq.RabbitMQSender;
+import at.technikum.paperlessrest.entities.DocumentContent;
+import at.technikum.paperlessrest.metrics.DependencyTimer;
+import at.technikum.paperlessrest.repository.DocumentPageQuery;
 import at.technikum.paperlessrest.repository.DocumentRepository;
+import at.technikum.paperlessrest.repository.DocumentSortField;
+import at.technikum.paperlessrest.repository.DocumentSummary;
 import io.minio.*;
 import lombok.extern.slf4j.Slf4j;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -23,84 +52,279 @@ public class DocumentService {
 
     private final MinioClient minioClient;
     private final DocumentRepository documentRepository;
-    private final RabbitMQSender rabbitMQSender; // Producer for OCR-Jobs
+    private final OcrJobOutbox ocrJobOutbox; // Producer for OCR-Jobs, published by OcrJobOutboxRelay
     private final ElasticsearchSearcher elasticsearchSearcher;
+    private final ElasticsearchIndexer elasticsearchIndexer;
+    private final DocumentContentService documentContentService;
+    private final SearchResultCache searchResultCache;
+    private final TransactionTemplate transactionTemplate;
+    private final DependencyTimer dependencyTimer;
     private final String bucketName = "documents";
+    private static final int MAX_PAGE_SIZE = 200;
+    private final DataSize uploadPartSize;
+    private final DataSize maxUploadSize;
 
-    public DocumentService(MinioClient minioClient, DocumentRepository documentRepository, RabbitMQSender rabbitMQSender, ElasticsearchSearcher elasticsearchSearcher) {
+    public DocumentService(MinioClient minioClient, DocumentRepository documentRepository, OcrJobOutbox ocrJobOutbox, ElasticsearchSearcher elasticsearchSearcher,
+                           ElasticsearchIndexer elasticsearchIndexer, DocumentContentService documentContentService,
+                           SearchResultCache searchResultCache, TransactionTemplate transactionTemplate, DependencyTimer dependencyTimer,
+                           @Value("${paperless.upload.part-size:5MB}") DataSize uploadPartSize,
+                           @Value("${paperless.upload.max-size:500MB}") DataSize maxUploadSize) {
         this.minioClient = minioClient;
         this.documentRepository = documentRepository;
-        this.rabbitMQSender = rabbitMQSender;
+        this.ocrJobOutbox = ocrJobOutbox;
         this.elasticsearchSearcher = elasticsearchSearcher;
+        this.elasticsearchIndexer = elasticsearchIndexer;
+        this.documentContentService = documentContentService;
+        this.searchResultCache = searchResultCache;
+        this.transactionTemplate = transactionTemplate;
+        this.dependencyTimer = dependencyTimer;
+        this.uploadPartSize = uploadPartSize;
+        this.maxUploadSize = maxUploadSize;
     }
 
     public DocumentDTO uploadFile(MultipartFile file) throws Exception {
-        if (!Objects.equals(file.getContentType(), "application/pdf")) {
-            log.warn("Invalid file type for upload: {}", file.getContentType());
+        try (InputStream stream = file.getInputStream()) {
+            return uploadFile(file.getOriginalFilename(), file.getContentType(), stream);
+        }
+    }
+
+    /**
+     * Streams the content into a MinIO multipart upload as it is read, holding at most one part in memory.
+     * The filesize is only known once the stream is exhausted, so metadata is saved after the upload.
+     */
+    public DocumentDTO uploadFile(String filename, String contentType, InputStream content) throws Exception {
+        if (!Objects.equals(contentType, "application/pdf")) {
+            log.warn("Invalid file type for upload: {}", contentType);
             throw new IllegalArgumentException("Only PDF files are allowed.");
         }
 
         String id = UUID.randomUUID().toString();
+
+        // Cheching and building of the Bucket in MinIO
+        if (!dependencyTimer.record(DependencyTimer.MINIO, "bucketExists",
+                () -> minioClient.bucketExists(BucketExistsArgs.builder().bucket(bucketName).build()))) {
+            log.info("Bucket '{}' does not exist. Creating it now.", bucketName);
+            minioClient.makeBucket(MakeBucketArgs.builder().bucket(bucketName).build());
+        }
+
+        log.info("Streaming file to MinIO: {}", filename);
+        SizeLimitingInputStream limited = new SizeLimitingInputStream(content, maxUploadSize.toBytes());
+        // Pages are counted on the way through, so OCR jobs can be scheduled by size without reading the file again
+        PageCountingInputStream pages = new PageCountingInputStream(limited);
+        DigestInputStream body = new DigestInputStream(pages, MessageDigest.getInstance("SHA-256"));
+        try {
+            // Includes reading the request body, which arrives no faster than the client sends it
+            dependencyTimer.record(DependencyTimer.MINIO, "putObject", () -> minioClient.putObject(
+                    PutObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(id)
+                            .stream(body, -1, uploadPartSize.toBytes())
+                            .contentType(contentType)
+                            .build()
+            ));
+        } catch (Exception e) {
+            if (limited.isLimitExceeded()) {
+                log.warn("Upload of {} aborted after {} bytes: exceeds maximum size of {}", filename, limited.getBytesRead(), maxUploadSize);
+                throw new InvalidFileUploadException("File exceeds the maximum upload size of " + maxUploadSize);
+            }
+            throw e;
+        }
+        String contentHash = HexFormat.of().formatHex(body.getMessageDigest().digest());
+        int pageCount = pages.getPageCount();
+        log.info("File successfully uploaded to MinIO with ID: {} ({} bytes, {} pages, sha256 {})", id, limited.getBytesRead(),
+                pageCount > 0 ? pageCount : "unknown", contentHash);
+
         DocumentDTO document = DocumentDTO.builder()
                 .id(id)
-                .filename(file.getOriginalFilename())
-                .filesize(file.getSize())
-                .filetype(file.getContentType())
+                .filename(filename)
+                .filesize(limited.getBytesRead())
+                .filetype(contentType)
                 .uploadDate(java.time.LocalDateTime.now())
                 .ocrJobDone(false)
                 .build();
 
-        log.info("Saving document metadata to repository: {}", document);
-        // Saving the entity in the repository
-        documentRepository.save(new Document(document));
+        // The content reference, the document and its OCR job are stored together. If that fails nothing
+        // references the new object, so it is removed again and the upload leaves nothing behind.
+        DocumentContent storedContent;
+        try {
+            storedContent = dependencyTimer.record(DependencyTimer.POSTGRES, "saveDocument",
+                    () -> saveDocument(document, contentHash, pageCount));
+        } catch (Exception e) {
+            log.error("Could not save document {}, removing its uploaded object and index entry: {}", id, e.getMessage());
+            discardObject(id);
+            discardIndexEntry(id);
+            throw e;
+        }
+        // The digest is only known after the upload, so a duplicate is detected by discarding the new copy
+        if (!storedContent.getObjectKey().equals(id)) {
+            log.info("Content of {} is already stored as object {}. Removing redundant copy {}", filename, storedContent.getObjectKey(), id);
+            discardObject(id);
+        }
 
-        // Cheching and building of the Bucket in MinIO
-        if (!minioClient.bucketExists(BucketExistsArgs.builder().bucket(bucketName).build())) {
-            log.info("Bucket '{}' does not exist. Creating it now.", bucketName);
-            minioClient.makeBucket(MakeBucketArgs.builder().bucket(bucketName).build());
+        // Only a copy that reused an OCR text is searchable by its text right away. Other new documents
+        // are found by filename once the cached pages expire, and by text when their OCR result arrives.
+        if (document.isOcrJobDone()) {
+            searchResultCache.invalidate();
         }
+        return document;
+    }
+
+    private DocumentContent saveDocument(DocumentDTO document, String contentHash, int pageCount) {
+        try {
+            return transactionTemplate.execute(status -> saveDocumentInTransaction(document, contentHash, pageCount));
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent upload registered the same content first; link to its object instead
+            log.info("Content {} was registered concurrently, retrying", contentHash);
+            document.setOcrJobDone(false);
+            return transactionTemplate.execute(status -> saveDocumentInTransaction(document, contentHash, pageCount));
+        }
+    }
 
-        log.info("Uploading file to MinIO: {}", document.getFilename());
-        minioClient.putObject(
-                PutObjectArgs.builder()
-                        .bucket(bucketName)
-                        .object(id)
-                        .stream(file.getInputStream(), file.getSize(), -1)
-                        .contentType(file.getContentType())
-                        .build()
-        );
+    private DocumentContent saveDocumentInTransaction(DocumentDTO document, String contentHash, int pageCount) {
+        String id = document.getId();
+        DocumentContent storedContent = documentContentService.acquire(contentHash, id);
+        boolean duplicate = !storedContent.getObjectKey().equals(id);
 
-        log.info("File successfully uploaded to MinIO with ID: {}", id);
-        rabbitMQSender.sendOCRJobMessage(id, document.getFilename());
-        return document;
+        // Reuse the OCR text of an already processed copy. If the only copies are still being processed,
+        // the document is completed together with them when their OCR result arrives.
+        Optional<Document> processedCopy = duplicate
+                ? documentRepository.findFirstByContentHashAndOcrJobDoneTrue(contentHash)
+                : Optional.empty();
+        boolean needsOcr = !duplicate;
+        if (processedCopy.isPresent()) {
+            try {
+                dependencyTimer.run(DependencyTimer.ELASTICSEARCH, "copyOcrText",
+                        () -> elasticsearchIndexer.copyOcrText(processedCopy.get().getId(), document));
+                document.setOcrJobDone(true);
+            } catch (Exception e) {
+                log.warn("Could not reuse OCR text of document {}, requesting OCR: {}", processedCopy.get().getId(), e.getMessage());
+                needsOcr = true;
+            }
+        }
+
+        // Searches are served from the index alone, so it carries the metadata from the start. It is indexed
+        // before the OCR job can be published, so it never overwrites the flag of a finished OCR result.
+        if (!document.isOcrJobDone()) {
+            try {
+                dependencyTimer.run(DependencyTimer.ELASTICSEARCH, "indexMetadata", () -> elasticsearchIndexer.indexMetadata(document));
+            } catch (Exception e) {
+                log.warn("Could not index metadata of document {}: {}", id, e.getMessage());
+            }
+        }
+
+        log.info("Saving document metadata to repository: {}", document);
+        Document entity = new Document(document);
+        entity.setContentHash(contentHash);
+        entity.setObjectKey(storedContent.getObjectKey());
+        documentRepository.save(entity);
+        if (needsOcr) {
+            ocrJobOutbox.enqueue(id, document.getFilename(), storedContent.getObjectKey(), contentHash, document.getFilesize(), pageCount);
+        }
+        return storedContent;
+    }
+
+    // The metadata is indexed before the document is committed, so a failed save would leave a search hit
+    // for a document that does not exist
+    private void discardIndexEntry(String id) {
+        try {
+            dependencyTimer.run(DependencyTimer.ELASTICSEARCH, "deleteDocument", () -> elasticsearchIndexer.deleteDocument(id));
+            searchResultCache.invalidate();
+        } catch (Exception e) {
+            log.warn("Could not remove index entry of unsaved document {}: {}", id, e.getMessage());
+        }
+    }
+
+    // Best effort, an object that cannot be removed only wastes space
+    private void discardObject(String objectKey) {
+        try {
+            removeObject(objectKey);
+        } catch (Exception e) {
+            log.warn("Could not remove unreferenced MinIO object {}: {}", objectKey, e.getMessage());
+        }
     }
 
     public void deleteDocument(String id) throws Exception {
         log.info("Request received to delete document with ID: {}", id);
 
-        if (!documentRepository.existsById(id)) {
+        Document document = dependencyTimer.record(DependencyTimer.POSTGRES, "findById",
+                () -> documentRepository.findById(id).orElse(null));
+        if (document == null) {
             log.warn("Document with ID {} not found", id);
             throw new IllegalArgumentException("Document not found");
         }
 
         log.info("Deleting document metadata from repository with ID: {}", id);
-        documentRepository.deleteById(id);
+        // The row and its content reference go together, a failed release must not leave the reference count behind
+        Boolean lastReference = dependencyTimer.record(DependencyTimer.POSTGRES, "deleteDocument", () -> transactionTemplate.execute(status -> {
+            documentRepository.deleteById(id);
+            if (document.getContentHash() == null) {
+                return true;
+            }
+            boolean released = documentContentService.release(document.getContentHash());
+            if (!released && !document.isOcrJobDone()) {
+                handOverOcrJob(document);
+            }
+            return released;
+        }));
 
-        log.info("Removing file from MinIO with ID: {}", id);
-        minioClient.removeObject(RemoveObjectArgs.builder().bucket(bucketName).object(id).build());
+        try {
+            dependencyTimer.run(DependencyTimer.ELASTICSEARCH, "deleteDocument", () -> elasticsearchIndexer.deleteDocument(id));
+        } catch (Exception e) {
+            log.warn("Could not remove document {} from the search index: {}", id, e.getMessage());
+        }
+        searchResultCache.invalidate();
+
+        String objectKey = objectKeyOf(id, document.getObjectKey());
+        if (!Boolean.TRUE.equals(lastReference)) {
+            log.info("Keeping MinIO object {}: still referenced by other documents", objectKey);
+            log.info("Document with ID {} successfully deleted", id);
+            return;
+        }
+
+        log.info("Removing file from MinIO with object key: {}", objectKey);
+        removeObject(objectKey);
         log.info("Document with ID {} successfully deleted", id);
     }
 
-    public byte[] getDocumentFileById(String id) throws Exception {
-        log.info("Fetching file for document ID: {}", id);
+    // Copies of the same content uploaded while it was processed wait for the OCR job of the first upload.
+    // A job that is still in the outbox moves to one of them. A published job is not repeated: its result
+    // names the content digest, and RabbitMQResultListener completes the waiting copies with it.
+    private void handOverOcrJob(Document deleted) {
+        documentRepository.findByContentHashAndOcrJobDoneFalse(deleted.getContentHash()).stream()
+                .filter(pending -> !pending.getId().equals(deleted.getId()))
+                .findFirst()
+                .ifPresent(pending -> ocrJobOutbox.reassign(deleted.getId(), pending.getId(), pending.getFilename()));
+    }
+
+    private void removeObject(String objectKey) throws Exception {
+        dependencyTimer.run(DependencyTimer.MINIO, "removeObject",
+                () -> minioClient.removeObject(RemoveObjectArgs.builder().bucket(bucketName).object(objectKey).build()));
+    }
 
-        try (InputStream stream = minioClient.getObject(GetObjectArgs.builder()
-                .bucket(bucketName)
-                .object(id)
-                .build())) {
-            byte[] fileData = stream.readAllBytes();
-            log.info("File successfully retrieved for document ID: {}", id);
-            return fileData;
+    public InputStream getDocumentFileStream(String id) throws Exception {
+        return openDocumentFile(GetObjectArgs.builder().bucket(bucketName).object(resolveObjectKey(id)).build(), id);
+    }
+
+    public InputStream getDocumentFileStream(String id, long offset, long length) throws Exception {
+        return openDocumentFile(GetObjectArgs.builder().bucket(bucketName).object(resolveObjectKey(id)).offset(offset).length(length).build(), id);
+    }
+
+    private String resolveObjectKey(String id) {
+        return objectKeyOf(id, dependencyTimer.record(DependencyTimer.POSTGRES, "findObjectKey",
+                () -> documentRepository.findObjectKeyById(id).orElse(null)));
+    }
+
+    // Documents uploaded before deduplication are stored under their own ID
+    private static String objectKeyOf(String id, String objectKey) {
+        return objectKey != null ? objectKey : id;
+    }
+
+    // The caller owns the returned stream and is responsible for closing it
+    private InputStream openDocumentFile(GetObjectArgs args, String id) throws Exception {
+        log.info("Opening file stream for document ID: {}", id);
+        try {
+            // Only covers opening the object, the content is streamed to the client afterwards
+            return dependencyTimer.record(DependencyTimer.MINIO, "getObject", () -> minioClient.getObject(args));
         } catch (Exception e) {
             log.error("Error retrieving file for document ID {}: {}", id, e.getMessage(), e);
             throw e;
@@ -109,65 +333,167 @@ public class DocumentService {
 
     public DocumentDTO getDocumentById(String id) {
         log.info("Fetching document metadata by ID: {}", id);
-        return documentRepository.findById(id)
-                .map(document -> new DocumentDTO(document.getId(), document.getFilename(), document.getFilesize(), document.getFiletype(), document.getUploadDate(), document.isOcrJobDone()))
+        return dependencyTimer.record(DependencyTimer.POSTGRES, "findById", () -> documentRepository.findById(id))
+                .map(document -> new DocumentDTO(document.getId(), document.getFilename(), document.getFilesize(), document.getFiletype(), document.getUploadDate(), document.isOcrJobDone(),
+                        document.getOcrPagesDone(), document.getOcrPageCount()))
                 .orElseThrow(() -> new IllegalArgumentException("Document not found with ID: " + id));
     }
 
-    public List<DocumentDTO> getAllDocuments() {
-        log.info("Fetching all documents.");
-        return documentRepository.findAll()
-                .stream()
-                .filter(Objects::nonNull) // Remove `null`entries
-                .map(document -> new DocumentDTO(
-                        document.getId(),
-                        document.getFilename(),
-                        document.getFilesize(),
-                        document.getFiletype(),
-                        document.getUploadDate(),
-                        document.isOcrJobDone()))
+    /**
+     * Returns one page of document metadata using keyset pagination on (sort key, id),
+     * so the cost of a page does not depend on how far into the listing it is.
+     */
+    public DocumentPageDTO getDocuments(DocumentPageRequestDTO request) {
+        log.info("Fetching document page: {}", request);
+        if (request.getLimit() < 1 || request.getLimit() > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        DocumentSortField sortField = DocumentSortField.fromProperty(request.getSort());
+        Sort.Direction direction = Sort.Direction.fromString(request.getDirection());
+
+        DocumentPageQuery.DocumentPageQueryBuilder query = DocumentPageQuery.builder()
+                .ocrJobDone(request.getOcrJobDone())
+                .filetype(request.getFiletype())
+                .minFilesize(request.getMinFilesize())
+                .maxFilesize(request.getMaxFilesize())
+                .sortField(sortField)
+                .direction(direction)
+                // One extra row tells whether another page follows
+                .limit(request.getLimit() + 1);
+        if (request.getCursor() != null && !request.getCursor().isBlank()) {
+            decodeCursor(request.getCursor(), sortField, direction, query);
+        }
+
+        DocumentPageQuery pageQuery = query.build();
+        List<DocumentSummary> rows = dependencyTimer.record(DependencyTimer.POSTGRES, "findPage", () -> documentRepository.findPage(pageQuery));
+        boolean hasMore = rows.size() > request.getLimit();
+        List<DocumentSummary> page = hasMore ? rows.subList(0, request.getLimit()) : rows;
+
+        List<DocumentDTO> documents = page.stream()
+                .map(row -> new DocumentDTO(row.id(), row.filename(), row.filesize(), row.filetype(), row.uploadDate(), row.ocrJobDone(),
+                        row.ocrPagesDone(), row.ocrPageCount()))
                 .collect(Collectors.toList());
+        String nextCursor = hasMore ? encodeCursor(page.get(page.size() - 1), sortField, direction) : null;
+        return new DocumentPageDTO(documents, nextCursor);
+    }
+
+    private static String encodeCursor(DocumentSummary last, DocumentSortField sortField, Sort.Direction direction) {
+        String json = new JSONObject()
+                .put("sort", sortField.getProperty())
+                .put("direction", direction.name())
+                .put("value", sortField.valueOf(last))
+                .put("id", last.id())
+                .toString();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
     }
 
-    public List<DocumentDTO> searchDocuments(String query) {
+    private static void decodeCursor(String cursor, DocumentSortField sortField, Sort.Direction direction, DocumentPageQuery.DocumentPageQueryBuilder query) {
+        try {
+            JSONObject json = new JSONObject(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+            if (!sortField.getProperty().equals(json.getString("sort")) || !direction.name().equals(json.getString("direction"))) {
+                throw new IllegalArgumentException("Cursor does not match the requested sort order");
+            }
+            query.afterValue(sortField.parseValue(json.getString("value")))
+                    .afterId(json.getString("id"));
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    /**
+     * Returns one page of search results. The cursor pins the point in time the first page was read
+     * from, so later pages neither skip nor repeat hits while documents are being indexed.
+     * Pages are served from {@link SearchResultCache} until the index changes.
+     */
+    public SearchResultPageDTO searchDocuments(String query, String cursor, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        // All query clauses are case-insensitive, so differently typed queries share cache entries
+        String normalizedQuery = normalizeQuery(query);
+        String normalizedCursor = cursor != null && !cursor.isBlank() ? cursor : null;
+        return searchResultCache.get(normalizedQuery, normalizedCursor, limit,
+                () -> searchIndex(normalizedQuery, normalizedCursor, limit));
+    }
+
+    private SearchResultPageDTO searchIndex(String query, String cursor, int limit) {
         log.info("Querying Elasticsearch with query: {}", query);
+        SearchCursor after = cursor != null ? decodeSearchCursor(cursor, query) : null;
 
         // Elasticsearch - actual search
-        List<DocumentSearchResultDTO> elasticResults = elasticsearchSearcher.searchDocuments(query);
-
-        log.info("Mapping Elasticsearch results to DTOs using database data.");
-
-        // Retrieve document information from the database and map to DTOs
-        return elasticResults.stream()
-                .map(result -> {
-                    try {
-                        // Fetch the document from the database
-                        Document document = documentRepository.findById(result.getDocumentId())
-                                .orElseThrow(() -> new RuntimeException("Document not found in database for ID: " + result.getDocumentId()));
-
-                        // Map the database data to a DocumentDTO
-                        return new DocumentDTO(
-                                document.getId(),
-                                document.getFilename(),
-                                document.getFilesize(),
-                                document.getFiletype(),
-                                document.getUploadDate(),
-                                document.isOcrJobDone()
-                        );
-                    } catch (Exception e) {
-                        log.error("Error fetching document data for ID {}: {}", result.getDocumentId(), e.getMessage(), e);
-                        // If an error occurs, return an empty DTO or other handling
-                        return new DocumentDTO(
-                                result.getDocumentId(),
-                                result.getFilename(),
-                                result.getFilesize(),
-                                result.getFiletype(),
-                                result.getUploadDate(),
-                                result.isOcrJobDone()
-                        );
-                    }
-                })
+        SearchPage page = elasticsearchSearcher.searchDocuments(query, limit, after);
+
+        // The index carries all listed metadata, so no database lookup is needed per hit
+        List<DocumentSearchHitDTO> documents = page.results().stream()
+                .map(result -> new DocumentSearchHitDTO(
+                        result.getDocumentId(),
+                        result.getFilename(),
+                        result.getFilesize(),
+                        result.getFiletype(),
+                        result.getUploadDate(),
+                        result.isOcrJobDone(),
+                        result.getOcrPagesDone(),
+                        result.getOcrPageCount(),
+                        result.getSnippets()))
                 .collect(Collectors.toList());
+        String nextCursor = page.next() != null ? encodeSearchCursor(page.next(), query) : null;
+        return new SearchResultPageDTO(documents, nextCursor);
+    }
+
+    static String normalizeQuery(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Writes the ID of every document matching {@code query} to {@code out} as newline-delimited JSON.
+     */
+    public void exportSearchResultIds(String query, OutputStream out) throws IOException {
+        query = normalizeQuery(query);
+        log.info("Exporting IDs of all documents matching query: {}", query);
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        long[] exported = {0};
+        try {
+            elasticsearchSearcher.forEachMatchingId(query, id -> {
+                try {
+                    writer.write(new JSONObject().put("documentId", id).toString());
+                    writer.write('\n');
+                    exported[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        log.info("Exported {} document IDs for query: {}", exported[0], query);
+    }
+
+    // The query is part of the cursor so it cannot be replayed against a different search
+    private static String encodeSearchCursor(SearchCursor cursor, String query) {
+        String json = new JSONObject()
+                .put("query", query)
+                .put("pit", cursor.pitId())
+                .put("score", cursor.score())
+                .put("doc", cursor.shardDoc())
+                .toString();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static SearchCursor decodeSearchCursor(String cursor, String query) {
+        try {
+            JSONObject json = new JSONObject(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+            if (!query.equals(json.getString("query"))) {
+                throw new IllegalArgumentException("Cursor does not match the search query");
+            }
+            return new SearchCursor(json.getString("pit"), json.getDouble("score"), json.getLong("doc"));
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
     }
 
 }
@@ -0,0 +1,51 @@
+package at.technikum.paperlessrest.service;
+
+import at.technikum.paperlessrest.entities.OcrJobOutboxEntry;
+import at.technikum.paperlessrest.rabbitmq.AmqpTracing;
+import at.technikum.paperlessrest.repository.OcrJobOutboxRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Records OCR jobs for {@link at.technikum.paperlessrest.rabbitmq.OcrJobOutboxRelay} to publish.
+ * Enqueuing joins the caller's transaction, so a job exists exactly when its document was saved.
+ */
+@Slf4j
+@Service
+public class OcrJobOutbox {
+
+    private final OcrJobOutboxRepository ocrJobOutboxRepository;
+    private final AmqpTracing amqpTracing;
+
+    public OcrJobOutbox(OcrJobOutboxRepository ocrJobOutboxRepository, AmqpTracing amqpTracing) {
+        this.ocrJobOutboxRepository = ocrJobOutboxRepository;
+        this.amqpTracing = amqpTracing;
+    }
+
+    /**
+     * @param pageCount number of pages, or 0 if unknown
+     */
+    @Transactional
+    public void enqueue(String documentId, String filename, String objectKey, String contentHash, long filesize, int pageCount) {
+        OcrJobOutboxEntry entry = new OcrJobOutboxEntry(documentId, filename, objectKey, contentHash, filesize, pageCount);
+        entry.setTraceContext(amqpTracing.currentContext());
+        ocrJobOutboxRepository.save(entry);
+        log.info("Queued OCR job for document ID: {}", documentId);
+    }
+
+    /**
+     * Hands the job of a deleted document over to another document with the same content, if it has
+     * not been published yet. The job keeps its object, digest, size and page count.
+     *
+     * @return false if there is no unpublished job for {@code fromDocumentId}
+     */
+    @Transactional
+    public boolean reassign(String fromDocumentId, String toDocumentId, String filename) {
+        if (ocrJobOutboxRepository.reassign(fromDocumentId, toDocumentId, filename) == 0) {
+            return false;
+        }
+        log.info("Reassigned queued OCR job of deleted document ID: {} to document ID: {}", fromDocumentId, toDocumentId);
+        return true;
+    }
+}
@@ -0,0 +1,103 @@
+package at.technikum.paperlessrest.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Counts the {@code /Type /Page} dictionaries of a PDF as it streams through, without parsing or
+ * buffering the document. Page dictionaries inside compressed object streams (PDF 1.5 and later) are
+ * not visible this way, so a count of 0 means unknown rather than empty.
+ */
+class PageCountingInputStream extends FilterInputStream {
+
+    private static final byte[] TYPE = "/Type".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PAGE = "/Page".getBytes(StandardCharsets.US_ASCII);
+
+    private int pageCount;
+    // Bytes of /Type matched so far, then of /Page once /Type was complete
+    private int typeMatched;
+    private int pageMatched;
+    private boolean afterType;
+    // /Type /Page was read, the next byte tells whether the name ends there or is /Pages
+    private boolean pageNameRead;
+
+    PageCountingInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            scan(b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        for (int i = 0; i < n; i++) {
+            scan(b[off + i] & 0xff);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped bytes cannot be scanned, read them instead
+        byte[] buffer = new byte[8192];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    int getPageCount() {
+        return pageNameRead ? pageCount + 1 : pageCount;
+    }
+
+    private void scan(int b) {
+        if (pageNameRead) {
+            pageNameRead = false;
+            if (!Character.isLetterOrDigit(b)) {
+                pageCount++;
+            }
+        }
+        if (afterType) {
+            if (pageMatched == 0 && Character.isWhitespace(b)) {
+                return;
+            }
+            if (b == PAGE[pageMatched]) {
+                if (++pageMatched == PAGE.length) {
+                    pageNameRead = true;
+                    afterType = false;
+                    pageMatched = 0;
+                }
+                return;
+            }
+            afterType = false;
+            pageMatched = 0;
+        }
+        if (b == TYPE[typeMatched]) {
+            if (++typeMatched == TYPE.length) {
+                afterType = true;
+                typeMatched = 0;
+            }
+        } else {
+            typeMatched = b == '/' ? 1 : 0;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package at.technikum.paperlessrest.service;
+
+import at.technikum.paperlessrest.dto.DocumentSearchHitDTO;
+import at.technikum.paperlessrest.dto.SearchResultPageDTO;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of search result pages. Entries are weighed by their approximate heap size and
+ * expire after a TTL.
+ * <p>
+ * Every key carries the index generation it was computed in. {@link #invalidate()} starts a new
+ * generation, so a search still running while the index changes cannot put a stale page back into
+ * the cache; entries of older generations are simply never read again and age out.
+ */
+@Slf4j
+@Component
+public class SearchResultCache {
+
+    static final String CACHE_NAME = "searchResults";
+
+    private final Cache<Key, SearchResultPageDTO> cache;
+    private final AtomicLong generation = new AtomicLong();
+
+    public SearchResultCache(MeterRegistry meterRegistry,
+                             @Value("${paperless.search.cache.max-size:16MB}") DataSize maxSize,
+                             @Value("${paperless.search.cache.ttl:30s}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((Key key, SearchResultPageDTO page) -> weigh(key, page))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+
+        // cache.gets{result=hit|miss}, cache.evictions, cache.eviction.weight, cache.size
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        Gauge.builder("cache.hit.ratio", cache, c -> c.stats().hitRate())
+                .tag("cache", CACHE_NAME)
+                .description("Share of lookups answered from the cache since startup")
+                .register(meterRegistry);
+    }
+
+    public SearchResultPageDTO get(String query, String cursor, int limit, Supplier<SearchResultPageDTO> loader) {
+        return cache.get(new Key(generation.get(), query, cursor, limit), key -> loader.get());
+    }
+
+    /**
+     * Drops all cached pages. Called when a change has to show up in results right away: an OCR text
+     * becoming searchable or a document being deleted. Smaller changes (new uploads found only by
+     * filename, partial OCR progress) show up once the pages expire after the TTL.
+     */
+    public void invalidate() {
+        long current = generation.incrementAndGet();
+        cache.invalidateAll();
+        log.debug("Search result cache invalidated, now at generation {}", current);
+    }
+
+    // Rough heap footprint: object headers and references plus two bytes per character
+    private static int weigh(Key key, SearchResultPageDTO page) {
+        long bytes = 96 + chars(key.query()) + chars(key.cursor()) + chars(page.getNextCursor());
+        for (DocumentSearchHitDTO document : page.getDocuments()) {
+            bytes += 112 + chars(document.getId()) + chars(document.getFilename()) + chars(document.getFiletype());
+            if (document.getSnippets() != null) {
+                bytes += document.getSnippets().stream().mapToLong(SearchResultCache::chars).sum();
+            }
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    private static long chars(String value) {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+
+    private record Key(long generation, String query, String cursor, int limit) {
+    }
+}
@@ -0,0 +1,67 @@
+package at.technikum.paperlessrest.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes passing through and aborts the read once more than {@code maxBytes} have been seen,
+ * so an upload of unknown length can be streamed without trusting the client-provided size.
+ */
+class SizeLimitingInputStream extends FilterInputStream {
+
+    private final long maxBytes;
+    private long bytesRead;
+    private boolean limitExceeded;
+
+    SizeLimitingInputStream(InputStream in, long maxBytes) {
+        super(in);
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            count(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    boolean isLimitExceeded() {
+        return limitExceeded;
+    }
+
+    private void count(long n) throws IOException {
+        bytesRead += n;
+        if (bytesRead > maxBytes) {
+            limitExceeded = true;
+            throw new IOException("Upload exceeds the maximum size of " + maxBytes + " bytes");
+        }
+    }
+}
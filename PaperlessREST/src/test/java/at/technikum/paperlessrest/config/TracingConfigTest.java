@@ -0,0 +1,34 @@
+package at.technikum.paperlessrest.config;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationPredicate;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.server.observation.ServerRequestObservationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TracingConfigTest {
+
+    private final ObservationPredicate predicate = new TracingConfig().ignoreActuatorRequests("/actuator");
+
+    private static ServerRequestObservationContext request(String uri) {
+        return new ServerRequestObservationContext(new MockHttpServletRequest("GET", uri), new MockHttpServletResponse());
+    }
+
+    @Test
+    void ignoreActuatorRequests_dropsPrometheusScrapes() {
+        // Act & Assert
+        assertFalse(predicate.test("http.server.requests", request("/actuator/prometheus")));
+        assertFalse(predicate.test("http.server.requests", request("/actuator/health")));
+    }
+
+    @Test
+    void ignoreActuatorRequests_keepsApiRequestsAndOtherObservations() {
+        // Act & Assert
+        assertTrue(predicate.test("http.server.requests", request("/api/documents/search")));
+        assertTrue(predicate.test("ocr-job publish", new Observation.Context()));
+    }
+}
@@ -0,0 +1,54 @@
+package at.technikum.paperlessrest.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.context.ApplicationContext;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+class WebConfigTest {
+
+    private final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(WebMvcAutoConfiguration.class, HttpMessageConvertersAutoConfiguration.class))
+            .withUserConfiguration(WebConfig.class)
+            // Converts "1h" to a Duration like a Spring Boot application does
+            .withInitializer(context -> context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance()));
+
+    private static Object asyncTimeoutOf(ApplicationContext context) {
+        return ReflectionTestUtils.getField(context.getBean(RequestMappingHandlerAdapter.class), "asyncRequestTimeout");
+    }
+
+    @Test
+    void streamingResponsesOutliveContainerDefaultTimeout() {
+        // Act & Assert
+        contextRunner.run(context -> assertEquals(Duration.ofHours(1).toMillis(), asyncTimeoutOf(context)));
+    }
+
+    @Test
+    void streamingResponsesRunOnExecutorSizedLikeTomcat() {
+        // Act & Assert
+        contextRunner.run(context -> {
+            Object executor = ReflectionTestUtils.getField(context.getBean(RequestMappingHandlerAdapter.class), "taskExecutor");
+            ThreadPoolTaskExecutor streaming = assertInstanceOf(ThreadPoolTaskExecutor.class, executor);
+            assertEquals(200, streaming.getMaxPoolSize());
+            assertEquals("streaming-", streaming.getThreadNamePrefix());
+        });
+    }
+
+    @Test
+    void streamingTimeoutIsConfigurable() {
+        // Act & Assert
+        contextRunner.withPropertyValues("paperless.streaming.timeout=-1")
+                .run(context -> assertEquals(-1L, asyncTimeoutOf(context)));
+    }
+}
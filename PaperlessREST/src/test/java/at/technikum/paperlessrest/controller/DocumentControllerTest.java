@@ -1,11 +1,23 @@
 package at.technikum.paperlessrest.controller;
 
+import at.technikum.paperlessrest.customExceptions.InvalidFileUploadException;
 import at.technikum.paperlessrest.dto.DocumentDTO;
+import at.technikum.paperlessrest.dto.DocumentPageDTO;
+import at.technikum.paperlessrest.dto.DocumentPageRequestDTO;
+import at.technikum.paperlessrest.dto.DocumentSearchHitDTO;
+import at.technikum.paperlessrest.dto.SearchResultPageDTO;
 import at.technikum.paperlessrest.service.DocumentService;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockMultipartFile;
-
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -81,6 +93,20 @@ class DocumentControllerTest {
         verify(documentService).uploadFile(file);
     }
 
+    @Test
+    void uploadFile_tooLarge() throws Exception {
+        // Arrange
+        MockMultipartFile file = new MockMultipartFile("file", "large.pdf", "application/pdf", new byte[16]);
+
+        when(documentService.uploadFile(file)).thenThrow(new InvalidFileUploadException("File exceeds the maximum upload size"));
+
+        // Act
+        ResponseEntity<DocumentDTO> response = documentController.uploadFile(file);
+
+        // Assert
+        assertEquals(PAYLOAD_TOO_LARGE, response.getStatusCode());
+    }
+
     @Test
     void uploadFile_emptyFile() throws Exception {
         // Arrange
@@ -96,6 +122,38 @@ class DocumentControllerTest {
         verify(documentService).uploadFile(file);
     }
 
+    @Test
+    void uploadFileStream_success() throws Exception {
+        // Arrange
+        InputStream body = new ByteArrayInputStream("Sample PDF content".getBytes());
+        DocumentDTO document = new DocumentDTO();
+        document.setId("123e4567-e89b-12d3-a456-426614174000");
+
+        when(documentService.uploadFile("test.pdf", "application/pdf", body)).thenReturn(document);
+
+        // Act
+        ResponseEntity<DocumentDTO> response = documentController.uploadFileStream("test.pdf", body);
+
+        // Assert
+        assertEquals(CREATED, response.getStatusCode());
+        assertEquals(document, response.getBody());
+        verify(documentService).uploadFile("test.pdf", "application/pdf", body);
+    }
+
+    @Test
+    void uploadFileStream_tooLarge() throws Exception {
+        // Arrange
+        InputStream body = new ByteArrayInputStream(new byte[16]);
+        when(documentService.uploadFile("large.pdf", "application/pdf", body))
+                .thenThrow(new InvalidFileUploadException("File exceeds the maximum upload size"));
+
+        // Act
+        ResponseEntity<DocumentDTO> response = documentController.uploadFileStream("large.pdf", body);
+
+        // Assert
+        assertEquals(PAYLOAD_TOO_LARGE, response.getStatusCode());
+    }
+
     @Test
     void deleteDocument_success() throws Exception {
         // Arrange
@@ -147,33 +205,97 @@ class DocumentControllerTest {
         DocumentDTO document = new DocumentDTO();
         document.setId(documentId);
         document.setFilename("test.pdf");
+        document.setFilesize(fileContent.length);
 
         when(documentService.getDocumentById(documentId)).thenReturn(document);
-        when(documentService.getDocumentFileById(documentId)).thenReturn(fileContent);
+        when(documentService.getDocumentFileStream(documentId)).thenReturn(new ByteArrayInputStream(fileContent));
 
         // Act
-        ResponseEntity<byte[]> response = documentController.getDocumentById(documentId);
+        ResponseEntity<StreamingResponseBody> response = documentController.getDocumentById(documentId, null, null, null);
 
         // Assert
         assertEquals(OK, response.getStatusCode());
-        assertArrayEquals(fileContent, response.getBody());
+        assertEquals("\"" + documentId + "\"", response.getHeaders().getETag());
+        assertEquals(fileContent.length, response.getHeaders().getContentLength());
+        assertArrayEquals(fileContent, writeBody(response));
         verify(documentService).getDocumentById(documentId);
-        verify(documentService).getDocumentFileById(documentId);
+        verify(documentService).getDocumentFileStream(documentId);
     }
 
     @Test
-    void getDocumentById_notFound() {
+    void getDocumentById_range() throws Exception {
+        // Arrange
+        String documentId = "123e4567-e89b-12d3-a456-426614174000";
+        DocumentDTO document = new DocumentDTO();
+        document.setId(documentId);
+        document.setFilename("test.pdf");
+        document.setFilesize(1000);
+
+        when(documentService.getDocumentById(documentId)).thenReturn(document);
+        when(documentService.getDocumentFileStream(documentId, 100, 100)).thenReturn(new ByteArrayInputStream(new byte[100]));
+
+        // Act
+        ResponseEntity<StreamingResponseBody> response = documentController.getDocumentById(documentId, "bytes=100-199", null, null);
+
+        // Assert
+        assertEquals(PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("bytes 100-199/1000", response.getHeaders().getFirst("Content-Range"));
+        assertEquals(100, response.getHeaders().getContentLength());
+        assertEquals(100, writeBody(response).length);
+        verify(documentService, never()).getDocumentFileStream(documentId);
+    }
+
+    @Test
+    void getDocumentById_rangeNotSatisfiable() throws Exception {
+        // Arrange
+        String documentId = "123e4567-e89b-12d3-a456-426614174000";
+        DocumentDTO document = new DocumentDTO();
+        document.setId(documentId);
+        document.setFilesize(1000);
+
+        when(documentService.getDocumentById(documentId)).thenReturn(document);
+
+        // Act
+        ResponseEntity<StreamingResponseBody> response = documentController.getDocumentById(documentId, "bytes=2000-", null, null);
+
+        // Assert
+        assertEquals(REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode());
+        assertEquals("bytes */1000", response.getHeaders().getFirst("Content-Range"));
+        verify(documentService, never()).getDocumentFileStream(anyString(), anyLong(), anyLong());
+    }
+
+    @Test
+    void getDocumentById_notModified() throws Exception {
+        // Arrange
+        String documentId = "123e4567-e89b-12d3-a456-426614174000";
+        DocumentDTO document = new DocumentDTO();
+        document.setId(documentId);
+
+        when(documentService.getDocumentById(documentId)).thenReturn(document);
+
+        // Act
+        ResponseEntity<StreamingResponseBody> response = documentController.getDocumentById(documentId, null, "\"" + documentId + "\"", null);
+
+        // Assert
+        assertEquals(NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        verify(documentService, never()).getDocumentFileStream(documentId);
+    }
+
+    @Test
+    void getDocumentById_notFound() throws Exception {
         // Arrange
         String documentId = "123e4567-e89b-12d3-a456-426614174000";
 
         when(documentService.getDocumentById(documentId)).thenReturn(null);
 
         // Act
-        ResponseEntity<byte[]> response = documentController.getDocumentById(documentId);
+        ResponseEntity<StreamingResponseBody> response = documentController.getDocumentById(documentId, null, null, null);
 
         // Assert
         assertEquals(NOT_FOUND, response.getStatusCode());
         verify(documentService).getDocumentById(documentId);
+        verify(documentService, never()).getDocumentFileStream(documentId);
     }
 
     @Test
@@ -183,7 +305,7 @@ class DocumentControllerTest {
         when(documentService.getDocumentById(documentId)).thenThrow(new RuntimeException("Unexpected error"));
 
         // Act
-        ResponseEntity<byte[]> response = documentController.getDocumentById(documentId);
+        ResponseEntity<StreamingResponseBody> response = documentController.getDocumentById(documentId, null, null, null);
 
         // Assert
         assertEquals(INTERNAL_SERVER_ERROR, response.getStatusCode());
@@ -191,7 +313,7 @@ class DocumentControllerTest {
     }
 
     @Test
-    void getAllDocuments_success() {
+    void getDocuments_success() {
         // Arrange
         DocumentDTO document1 = new DocumentDTO();
         document1.setId("1");
@@ -201,57 +323,85 @@ class DocumentControllerTest {
         document2.setId("2");
         document2.setFilename("doc2.pdf");
 
-        List<DocumentDTO> documents = List.of(document1, document2);
+        DocumentPageRequestDTO request = new DocumentPageRequestDTO();
+        DocumentPageDTO page = new DocumentPageDTO(List.of(document1, document2), "next");
 
-        when(documentService.getAllDocuments()).thenReturn(documents);
+        when(documentService.getDocuments(request)).thenReturn(page);
 
         // Act
-        ResponseEntity<List<DocumentDTO>> response = documentController.getAllDocuments();
+        ResponseEntity<DocumentPageDTO> response = documentController.getDocuments(request);
 
         // Assert
         assertEquals(OK, response.getStatusCode());
-        assertEquals(documents, response.getBody());
-        verify(documentService).getAllDocuments();
+        assertEquals(page, response.getBody());
+        verify(documentService).getDocuments(request);
     }
 
     @Test
-    void getAllDocuments_internalServerError() {
+    void getDocuments_invalidRequest() {
         // Arrange
-        when(documentService.getAllDocuments()).thenThrow(new RuntimeException("Unexpected error"));
+        DocumentPageRequestDTO request = DocumentPageRequestDTO.builder().sort("unknown").build();
+        when(documentService.getDocuments(request)).thenThrow(new IllegalArgumentException("Unsupported sort field: unknown"));
 
         // Act
-        ResponseEntity<List<DocumentDTO>> response = documentController.getAllDocuments();
+        ResponseEntity<DocumentPageDTO> response = documentController.getDocuments(request);
+
+        // Assert
+        assertEquals(BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    void getDocuments_internalServerError() {
+        // Arrange
+        DocumentPageRequestDTO request = new DocumentPageRequestDTO();
+        when(documentService.getDocuments(request)).thenThrow(new RuntimeException("Unexpected error"));
+
+        // Act
+        ResponseEntity<DocumentPageDTO> response = documentController.getDocuments(request);
 
         // Assert
         assertEquals(INTERNAL_SERVER_ERROR, response.getStatusCode());
-        verify(documentService).getAllDocuments();
+        verify(documentService).getDocuments(request);
     }
 
     @Test
     void searchDocuments_success() {
         // Arrange
         String query = "test";
-        DocumentDTO document = new DocumentDTO();
+        DocumentSearchHitDTO document = new DocumentSearchHitDTO();
         document.setId("1");
         document.setFilename("test.pdf");
+        document.setSnippets(List.of("an <mark>test</mark> snippet"));
 
-        List<DocumentDTO> results = List.of(document);
+        SearchResultPageDTO results = new SearchResultPageDTO(List.of(document), "next");
 
-        when(documentService.searchDocuments(query)).thenReturn(results);
+        when(documentService.searchDocuments(query, null, 50)).thenReturn(results);
 
         // Act
-        ResponseEntity<List<DocumentDTO>> response = documentController.searchDocuments(query);
+        ResponseEntity<SearchResultPageDTO> response = documentController.searchDocuments(query, null, 50);
 
         // Assert
         assertEquals(OK, response.getStatusCode());
         assertEquals(results, response.getBody());
-        verify(documentService).searchDocuments(query);
+        verify(documentService).searchDocuments(query, null, 50);
     }
 
     @Test
     void searchDocuments_invalidQuery() {
         // Act
-        ResponseEntity<List<DocumentDTO>> response = documentController.searchDocuments("");
+        ResponseEntity<SearchResultPageDTO> response = documentController.searchDocuments("", null, 50);
+
+        // Assert
+        assertEquals(BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    void searchDocuments_invalidCursor() {
+        // Arrange
+        when(documentService.searchDocuments("test", "bad", 50)).thenThrow(new IllegalArgumentException("Invalid cursor"));
+
+        // Act
+        ResponseEntity<SearchResultPageDTO> response = documentController.searchDocuments("test", "bad", 50);
 
         // Assert
         assertEquals(BAD_REQUEST, response.getStatusCode());
@@ -261,13 +411,47 @@ class DocumentControllerTest {
     void searchDocuments_internalServerError() {
         // Arrange
         String query = "test";
-        when(documentService.searchDocuments(query)).thenThrow(new RuntimeException("Unexpected error"));
+        when(documentService.searchDocuments(query, null, 50)).thenThrow(new RuntimeException("Unexpected error"));
 
         // Act
-        ResponseEntity<List<DocumentDTO>> response = documentController.searchDocuments(query);
+        ResponseEntity<SearchResultPageDTO> response = documentController.searchDocuments(query, null, 50);
 
         // Assert
         assertEquals(INTERNAL_SERVER_ERROR, response.getStatusCode());
-        verify(documentService).searchDocuments(query);
+        verify(documentService).searchDocuments(query, null, 50);
+    }
+
+    @Test
+    void exportSearchResults_streamsNdjson() throws Exception {
+        // Arrange
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(1);
+            out.write("{\"documentId\":\"1\"}\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(documentService).exportSearchResultIds(eq("test"), any(OutputStream.class));
+
+        // Act
+        ResponseEntity<StreamingResponseBody> response = documentController.exportSearchResults("test");
+
+        // Assert
+        assertEquals(OK, response.getStatusCode());
+        assertEquals("application/x-ndjson", response.getHeaders().getContentType().toString());
+        assertEquals("{\"documentId\":\"1\"}\n", new String(writeBody(response), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void exportSearchResults_invalidQuery() {
+        // Act
+        ResponseEntity<StreamingResponseBody> response = documentController.exportSearchResults(" ");
+
+        // Assert
+        assertEquals(BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(documentService);
+    }
+
+    private static byte[] writeBody(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        response.getBody().writeTo(outputStream);
+        return outputStream.toByteArray();
     }
 }
\ No newline at end of file
@@ -0,0 +1,202 @@
+package at.technikum.paperlessrest.elastic;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.ReindexRequest;
+import co.elastic.clients.elasticsearch.core.ReindexResponse;
+import co.elastic.clients.elasticsearch.indices.ElasticsearchIndicesClient;
+import co.elastic.clients.elasticsearch.indices.PutIndexTemplateRequest;
+import co.elastic.clients.elasticsearch.indices.PutIndicesSettingsRequest;
+import co.elastic.clients.elasticsearch.indices.UpdateAliasesRequest;
+import co.elastic.clients.elasticsearch.indices.update_aliases.Action;
+import co.elastic.clients.elasticsearch.tasks.ElasticsearchTasksClient;
+import co.elastic.clients.elasticsearch.tasks.GetTasksResponse;
+import co.elastic.clients.json.JsonData;
+import co.elastic.clients.transport.endpoints.BooleanResponse;
+import co.elastic.clients.util.ObjectBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@SuppressWarnings("unchecked")
+class DocumentIndexInitializerTest {
+
+    private final ElasticsearchClient elasticsearchClient = mock(ElasticsearchClient.class);
+    private final ElasticsearchIndicesClient indices = mock(ElasticsearchIndicesClient.class);
+    private final ElasticsearchTasksClient tasks = mock(ElasticsearchTasksClient.class);
+    private final DocumentIndexInitializer initializer = new DocumentIndexInitializer(elasticsearchClient,
+            Duration.ofMillis(200), Duration.ofMillis(10), Duration.ofMillis(1));
+
+    @BeforeEach
+    void setup() {
+        when(elasticsearchClient.indices()).thenReturn(indices);
+        when(elasticsearchClient.tasks()).thenReturn(tasks);
+    }
+
+    private void reindexTask(GetTasksResponse... statuses) throws Exception {
+        ReindexResponse started = mock(ReindexResponse.class);
+        when(started.task()).thenReturn("node:1");
+        when(elasticsearchClient.reindex(any(Function.class))).thenReturn(started);
+        when(tasks.get(any(Function.class))).thenReturn(statuses[0], Arrays.copyOfRange(statuses, 1, statuses.length));
+    }
+
+    private static GetTasksResponse running() {
+        GetTasksResponse status = mock(GetTasksResponse.class);
+        when(status.completed()).thenReturn(false);
+        return status;
+    }
+
+    private static GetTasksResponse completed(String response) {
+        GetTasksResponse status = mock(GetTasksResponse.class);
+        when(status.completed()).thenReturn(true);
+        when(status.response()).thenReturn(JsonData.fromJson(response));
+        return status;
+    }
+
+    @Test
+    void initialize_aliasExists_onlyUpdatesTemplate() throws Exception {
+        // Arrange
+        when(indices.existsAlias(any(Function.class))).thenReturn(new BooleanResponse(true));
+
+        // Act
+        initializer.initialize();
+
+        // Assert
+        ArgumentCaptor<Function<PutIndexTemplateRequest.Builder, ObjectBuilder<PutIndexTemplateRequest>>> captor =
+                ArgumentCaptor.forClass(Function.class);
+        verify(indices).putIndexTemplate(captor.capture());
+        PutIndexTemplateRequest template = captor.getValue().apply(new PutIndexTemplateRequest.Builder()).build();
+        assertEquals(List.of("documents-*"), template.indexPatterns());
+        assertEquals("keyword", template.template().mappings().properties().get("documentId")._kind().jsonValue());
+        assertTrue(template.template().mappings().properties().get("filename").text().fields().containsKey("ngram"));
+        verify(indices, never()).create(any(Function.class));
+        verify(indices, never()).updateAliases(any(Function.class));
+    }
+
+    @Test
+    void initialize_freshCluster_createsIndexAndAlias() throws Exception {
+        // Arrange
+        when(indices.existsAlias(any(Function.class))).thenReturn(new BooleanResponse(false));
+        when(indices.exists(any(Function.class))).thenReturn(new BooleanResponse(false));
+
+        // Act
+        initializer.initialize();
+
+        // Assert
+        verify(indices).create(any(Function.class));
+        verify(elasticsearchClient, never()).reindex(any(Function.class));
+        List<Action> actions = capturedAliasActions();
+        assertEquals(1, actions.size());
+        assertEquals(DocumentIndexInitializer.INDEX, actions.get(0).add().index());
+        assertEquals(DocumentIndexInitializer.ALIAS, actions.get(0).add().alias());
+    }
+
+    @Test
+    void initialize_dynamicallyMappedIndex_isReindexedAndReplacedByAlias() throws Exception {
+        // Arrange
+        when(indices.existsAlias(any(Function.class))).thenReturn(new BooleanResponse(false));
+        // documents-v1 does not exist yet, the legacy documents index does
+        when(indices.exists(any(Function.class))).thenReturn(new BooleanResponse(false), new BooleanResponse(true));
+        reindexTask(running(), running(), completed("{\"total\":42,\"failures\":[]}"));
+
+        // Act
+        initializer.initialize();
+
+        // Assert
+        InOrder inOrder = inOrder(indices, elasticsearchClient, tasks);
+        inOrder.verify(indices).putSettings(any(Function.class));
+        inOrder.verify(elasticsearchClient).reindex(any(Function.class));
+        inOrder.verify(tasks, times(3)).get(any(Function.class));
+        inOrder.verify(indices).updateAliases(any(Function.class));
+        PutIndicesSettingsRequest block = capturedSettings().get(0);
+        assertEquals(List.of(DocumentIndexInitializer.ALIAS), block.index());
+        assertTrue(block.settings().blocks().write());
+
+        List<Action> actions = capturedAliasActions();
+        assertEquals(2, actions.size());
+        assertEquals(DocumentIndexInitializer.ALIAS, actions.get(0).removeIndex().index());
+        assertEquals(DocumentIndexInitializer.INDEX, actions.get(1).add().index());
+    }
+
+    @Test
+    void initialize_reindexFails_unblocksOldIndex() throws Exception {
+        // Arrange
+        when(indices.existsAlias(any(Function.class))).thenReturn(new BooleanResponse(false));
+        when(indices.exists(any(Function.class))).thenReturn(new BooleanResponse(false), new BooleanResponse(true));
+        reindexTask(completed("{\"total\":3,\"failures\":[{\"id\":\"doc-1\",\"cause\":{\"type\":\"mapper_parsing_exception\"}}]}"));
+
+        // Act & Assert
+        assertThrows(IOException.class, initializer::initialize);
+        List<PutIndicesSettingsRequest> settings = capturedSettings();
+        assertEquals(2, settings.size());
+        assertTrue(settings.get(0).settings().blocks().write());
+        assertFalse(settings.get(1).settings().blocks().write());
+        verify(indices, never()).updateAliases(any(Function.class));
+    }
+
+    @Test
+    void initialize_reindexRunsAsTaskInsteadOfBlockingRequest() throws Exception {
+        // Arrange
+        when(indices.existsAlias(any(Function.class))).thenReturn(new BooleanResponse(false));
+        when(indices.exists(any(Function.class))).thenReturn(new BooleanResponse(false), new BooleanResponse(true));
+        reindexTask(completed("{\"total\":0,\"failures\":[]}"));
+
+        // Act
+        initializer.initialize();
+
+        // Assert
+        ArgumentCaptor<Function<ReindexRequest.Builder, ObjectBuilder<ReindexRequest>>> captor = ArgumentCaptor.forClass(Function.class);
+        verify(elasticsearchClient).reindex(captor.capture());
+        assertFalse(captor.getValue().apply(new ReindexRequest.Builder()).build().waitForCompletion());
+    }
+
+    @Test
+    void run_elasticsearchNotReadyYet_retriesUntilReachable() throws Exception {
+        // Arrange
+        when(indices.putIndexTemplate(any(Function.class)))
+                .thenThrow(new RuntimeException("Connection refused"))
+                .thenThrow(new RuntimeException("Connection refused"))
+                .thenReturn(null);
+        when(indices.existsAlias(any(Function.class))).thenReturn(new BooleanResponse(true));
+
+        // Act
+        initializer.run(null);
+
+        // Assert
+        verify(indices, times(3)).putIndexTemplate(any(Function.class));
+    }
+
+    @Test
+    void run_elasticsearchUnavailable_failsStartupAfterTimeout() throws Exception {
+        // Arrange
+        when(indices.putIndexTemplate(any(Function.class))).thenThrow(new RuntimeException("Connection refused"));
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> initializer.run(null));
+    }
+
+    private List<PutIndicesSettingsRequest> capturedSettings() throws Exception {
+        ArgumentCaptor<Function<PutIndicesSettingsRequest.Builder, ObjectBuilder<PutIndicesSettingsRequest>>> captor =
+                ArgumentCaptor.forClass(Function.class);
+        verify(indices, atLeastOnce()).putSettings(captor.capture());
+        return captor.getAllValues().stream()
+                .map(f -> f.apply(new PutIndicesSettingsRequest.Builder()).build())
+                .toList();
+    }
+
+        private List<Action> capturedAliasActions() throws Exception {
+        ArgumentCaptor<Function<UpdateAliasesRequest.Builder, ObjectBuilder<UpdateAliasesRequest>>> captor =
+                ArgumentCaptor.forClass(Function.class);
+        verify(indices).updateAliases(captor.capture());
+        return captor.getValue().apply(new UpdateAliasesRequest.Builder()).build().actions();
+    }
+}
@@ -0,0 +1,92 @@
+package at.technikum.paperlessrest.elastic;
+
+import at.technikum.paperlessrest.dto.DocumentDTO;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.GetResponse;
+import co.elastic.clients.elasticsearch.core.IndexRequest;
+import co.elastic.clients.elasticsearch.core.UpdateRequest;
+import co.elastic.clients.util.ObjectBuilder;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ElasticsearchIndexerTest {
+
+    private final ElasticsearchClient elasticsearchClient = mock(ElasticsearchClient.class);
+    private final ElasticsearchIndexer elasticsearchIndexer = new ElasticsearchIndexer(elasticsearchClient);
+
+    private final DocumentDTO document = new DocumentDTO("copy-id", "copy.pdf", 42, "application/pdf",
+            LocalDateTime.of(2024, 1, 15, 10, 30), false);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void indexMetadata_upsertsAllListedFields() throws Exception {
+        // Act
+        elasticsearchIndexer.indexMetadata(document);
+
+        // Assert
+        ArgumentCaptor<Function<UpdateRequest.Builder<Map, Map>, ObjectBuilder<UpdateRequest<Map, Map>>>> captor =
+                ArgumentCaptor.forClass(Function.class);
+        verify(elasticsearchClient).update(captor.capture(), eq(Map.class));
+        UpdateRequest<Map, Map> request = captor.getValue().apply(new UpdateRequest.Builder<>()).build();
+
+        assertEquals("copy-id", request.id());
+        assertTrue(request.docAsUpsert());
+        Map<String, Object> fields = request.doc();
+        assertEquals("copy.pdf", fields.get("filename"));
+        assertEquals(42L, fields.get("filesize"));
+        assertEquals("application/pdf", fields.get("filetype"));
+        assertEquals("2024-01-15T10:30", fields.get("uploadDate"));
+        assertEquals(false, fields.get("ocrJobDone"));
+        assertFalse(fields.containsKey("ocrText"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void copyOcrText_keepsTextAndUsesTargetMetadata() throws Exception {
+        // Arrange
+        Map<String, Object> source = new HashMap<>();
+        source.put("documentId", "original-id");
+        source.put("filename", "original.pdf");
+        source.put("ocrText", "recognised text");
+        GetResponse<Map> response = mock(GetResponse.class);
+        when(response.found()).thenReturn(true);
+        when(response.source()).thenReturn(source);
+        when(elasticsearchClient.get(any(Function.class), eq(Map.class))).thenReturn(response);
+
+        // Act
+        elasticsearchIndexer.copyOcrText("original-id", document);
+
+        // Assert
+        ArgumentCaptor<Function<IndexRequest.Builder<Map<String, Object>>, ObjectBuilder<IndexRequest<Map<String, Object>>>>> captor =
+                ArgumentCaptor.forClass(Function.class);
+        verify(elasticsearchClient).index(captor.capture());
+        IndexRequest<Map<String, Object>> request = captor.getValue().apply(new IndexRequest.Builder<>()).build();
+
+        assertEquals("copy-id", request.id());
+        assertEquals("recognised text", request.document().get("ocrText"));
+        assertEquals("copy-id", request.document().get("documentId"));
+        assertEquals("copy.pdf", request.document().get("filename"));
+        assertEquals(true, request.document().get("ocrJobDone"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void copyOcrText_sourceNotIndexed() throws Exception {
+        // Arrange
+        GetResponse<Map> response = mock(GetResponse.class);
+        when(response.found()).thenReturn(false);
+        when(elasticsearchClient.get(any(Function.class), eq(Map.class))).thenReturn(response);
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> elasticsearchIndexer.copyOcrText("original-id", document));
+        verify(elasticsearchClient, never()).index(any(Function.class));
+    }
+}
@@ -1,16 +1,26 @@
 package at.technikum.paperlessrest.elastic;
 
 import at.technikum.paperlessrest.dto.DocumentSearchResultDTO;
+import at.technikum.paperlessrest.metrics.DependencyTimer;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.ErrorResponse;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.OpenPointInTimeResponse;
 import co.elastic.clients.elasticsearch.core.SearchRequest;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
 import co.elastic.clients.elasticsearch.core.search.Hit;
 import co.elastic.clients.elasticsearch.core.search.HitsMetadata;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -21,100 +31,202 @@ class ElasticsearchSearcherTest {
     private final ElasticsearchSearcher elasticsearchSearcher = new ElasticsearchSearcher();
 
     @BeforeEach
-    void setup() {
+    @SuppressWarnings("unchecked")
+    void setup() throws Exception {
         elasticsearchSearcher.elasticsearchClient = elasticsearchClient;
+        elasticsearchSearcher.dependencyTimer = new DependencyTimer(new SimpleMeterRegistry());
+
+        OpenPointInTimeResponse pit = mock(OpenPointInTimeResponse.class);
+        when(pit.id()).thenReturn("pit-1");
+        when(elasticsearchClient.openPointInTime(any(Function.class))).thenReturn(pit);
     }
 
     @Test
-    void searchDocuments_success() throws Exception {
+    void searchDocuments_firstPageOpensPointInTimeAndReturnsCursor() throws Exception {
         // Arrange
-        String query = "test";
-
-        DocumentSearchResultDTO documentSearchResult = new DocumentSearchResultDTO("1", "text", "filename", "filetype", 1, true, null, "timestamp");
-        Hit<DocumentSearchResultDTO> hit = Hit.of(h -> h
-                .id("id")
-                .index("documents")
-                .source(documentSearchResult)
-        );
+        SearchResponse<DocumentSearchResultDTO> searchResponse = response(List.of(
+                hit("1", 2.5, 10), hit("2", 1.5, 11), hit("3", 1.0, 12)));
+        when(elasticsearchClient.search(any(SearchRequest.class), eq(DocumentSearchResultDTO.class))).thenReturn(searchResponse);
 
-        HitsMetadata<DocumentSearchResultDTO> hitsMetadata = mock(HitsMetadata.class);
-        when(hitsMetadata.hits()).thenReturn(List.of(hit));
+        // Act
+        SearchPage page = elasticsearchSearcher.searchDocuments("test", 2, null);
 
-        SearchResponse<DocumentSearchResultDTO> searchResponse = mock(SearchResponse.class);
-        when(searchResponse.hits()).thenReturn(hitsMetadata);
+        // Assert
+        assertEquals(2, page.results().size());
+        assertEquals("1", page.results().get(0).getDocumentId());
+        assertEquals(List.of("some <mark>test</mark> text"), page.results().get(0).getSnippets());
+        assertEquals(new SearchCursor("pit-1", 1.5, 11), page.next());
+
+        ArgumentCaptor<SearchRequest> captor = ArgumentCaptor.forClass(SearchRequest.class);
+        verify(elasticsearchClient).search(captor.capture(), eq(DocumentSearchResultDTO.class));
+        SearchRequest request = captor.getValue();
+        assertEquals(3, request.size());
+        assertEquals("pit-1", request.pit().id());
+        assertEquals(2, request.sort().size());
+        assertTrue(request.searchAfter().isEmpty());
+        assertEquals(List.of("ocrText"), request.source().filter().excludes());
+        assertTrue(request.highlight().fields().containsKey("ocrText"));
+        verify(elasticsearchClient, never()).closePointInTime(any(Function.class));
+    }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    void searchDocuments_lastPageContinuesFromCursorAndKeepsPointInTime() throws Exception {
+        // Arrange
+        SearchResponse<DocumentSearchResultDTO> searchResponse = response(List.of(hit("3", 1.0, 12)));
         when(elasticsearchClient.search(any(SearchRequest.class), eq(DocumentSearchResultDTO.class))).thenReturn(searchResponse);
 
         // Act
-        List<DocumentSearchResultDTO> results = elasticsearchSearcher.searchDocuments(query);
+        SearchPage page = elasticsearchSearcher.searchDocuments("test", 2, new SearchCursor("pit-1", 1.5, 11));
 
         // Assert
-        assertEquals(1, results.size());
-        assertEquals("1", results.get(0).getDocumentId());
-        verify(elasticsearchClient).search(any(SearchRequest.class), eq(DocumentSearchResultDTO.class));
+        assertEquals(1, page.results().size());
+        assertNull(page.next());
+
+        ArgumentCaptor<SearchRequest> captor = ArgumentCaptor.forClass(SearchRequest.class);
+        verify(elasticsearchClient).search(captor.capture(), eq(DocumentSearchResultDTO.class));
+        assertEquals(1.5, captor.getValue().searchAfter().get(0).doubleValue());
+        assertEquals(11L, captor.getValue().searchAfter().get(1).longValue());
+        verify(elasticsearchClient, never()).openPointInTime(any(Function.class));
+        // The cursor may be followed again once the cache evicts this page, the PIT expires on its own
+        verify(elasticsearchClient, never()).closePointInTime(any(Function.class));
     }
 
     @Test
     void searchDocuments_noResults() throws Exception {
         // Arrange
-        String query = "empty";
-
-        HitsMetadata<DocumentSearchResultDTO> hitsMetadata = mock(HitsMetadata.class);
-        when(hitsMetadata.hits()).thenReturn(Collections.emptyList());
-
-        SearchResponse<DocumentSearchResultDTO> searchResponse = mock(SearchResponse.class);
-        when(searchResponse.hits()).thenReturn(hitsMetadata);
-
+        SearchResponse<DocumentSearchResultDTO> searchResponse = response(Collections.emptyList());
         when(elasticsearchClient.search(any(SearchRequest.class), eq(DocumentSearchResultDTO.class))).thenReturn(searchResponse);
 
         // Act
-        List<DocumentSearchResultDTO> results = elasticsearchSearcher.searchDocuments(query);
+        SearchPage page = elasticsearchSearcher.searchDocuments("empty", 10, null);
 
         // Assert
-        assertNotNull(results);
-        assertTrue(results.isEmpty());
-        verify(elasticsearchClient).search(any(SearchRequest.class), eq(DocumentSearchResultDTO.class));
+        assertTrue(page.results().isEmpty());
+        assertNull(page.next());
+        verify(elasticsearchClient).closePointInTime(any(Function.class));
     }
 
     @Test
+    @SuppressWarnings("unchecked")
     void searchDocuments_elasticError() throws Exception {
         // Arrange
-        String query = "error";
-
         when(elasticsearchClient.search(any(SearchRequest.class), eq(DocumentSearchResultDTO.class)))
                 .thenThrow(new RuntimeException("Elasticsearch failure"));
 
         // Act & Assert
-        RuntimeException exception = assertThrows(RuntimeException.class, () -> elasticsearchSearcher.searchDocuments(query));
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> elasticsearchSearcher.searchDocuments("error", 10, null));
         assertEquals("Failed to search documents", exception.getMessage());
-        verify(elasticsearchClient).search(any(SearchRequest.class), eq(DocumentSearchResultDTO.class));
+        verify(elasticsearchClient).closePointInTime(any(Function.class));
     }
 
     @Test
-    void searchDocuments_nullSourceInResult() throws Exception {
+    void searchDocuments_expiredCursor() throws Exception {
         // Arrange
-        String query = "nullSource";
+        ElasticsearchException missingPit = new ElasticsearchException("search", ErrorResponse.of(e -> e
+                .status(404)
+                .error(c -> c.type("search_context_missing_exception").reason("No search context found"))));
+        when(elasticsearchClient.search(any(SearchRequest.class), eq(DocumentSearchResultDTO.class))).thenThrow(missingPit);
 
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class,
+                () -> elasticsearchSearcher.searchDocuments("test", 10, new SearchCursor("expired", 1.0, 1)));
+    }
+
+    @Test
+    void searchDocuments_nullSourceInResult() throws Exception {
+        // Arrange
         Hit<DocumentSearchResultDTO> hit = Hit.of(h -> h
                 .id("id")
                 .index("documents")
                 .source(null) // Quelle ist null
         );
+        SearchResponse<DocumentSearchResultDTO> searchResponse = response(List.of(hit));
+        when(elasticsearchClient.search(any(SearchRequest.class), eq(DocumentSearchResultDTO.class))).thenReturn(searchResponse);
 
-        HitsMetadata<DocumentSearchResultDTO> hitsMetadata = mock(HitsMetadata.class);
-        when(hitsMetadata.hits()).thenReturn(List.of(hit));
+        // Act
+        SearchPage page = elasticsearchSearcher.searchDocuments("nullSource", 10, null);
 
-        SearchResponse<DocumentSearchResultDTO> searchResponse = mock(SearchResponse.class);
-        when(searchResponse.hits()).thenReturn(hitsMetadata);
+        // Assert
+        assertTrue(page.results().isEmpty());
+    }
 
-        when(elasticsearchClient.search(any(SearchRequest.class), eq(DocumentSearchResultDTO.class))).thenReturn(searchResponse);
+    @Test
+    @SuppressWarnings("unchecked")
+    void forEachMatchingId_readsAllBatchesAndClosesPointInTime() throws Exception {
+        // Arrange
+        List<Hit<Void>> fullBatch = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            String id = "doc-" + i;
+            long shardDoc = i;
+            fullBatch.add(Hit.of(h -> h.id(id).index("documents").sort(FieldValue.of(shardDoc))));
+        }
+        Hit<Void> last = Hit.of(h -> h.id("doc-last").index("documents").sort(FieldValue.of(1000L)));
+
+        SearchResponse<Void> first = mock(SearchResponse.class);
+        HitsMetadata<Void> firstHits = mock(HitsMetadata.class);
+        when(firstHits.hits()).thenReturn(fullBatch);
+        when(first.hits()).thenReturn(firstHits);
+        SearchResponse<Void> second = mock(SearchResponse.class);
+        HitsMetadata<Void> secondHits = mock(HitsMetadata.class);
+        when(secondHits.hits()).thenReturn(List.of(last));
+        when(second.hits()).thenReturn(secondHits);
+        when(elasticsearchClient.search(any(Function.class), eq(Void.class))).thenReturn(first, second);
+
+        // Act
+        List<String> ids = new ArrayList<>();
+        elasticsearchSearcher.forEachMatchingId("test", ids::add);
+
+        // Assert
+        assertEquals(1001, ids.size());
+        assertEquals("doc-last", ids.get(1000));
+        verify(elasticsearchClient, times(2)).search(any(Function.class), eq(Void.class));
+        verify(elasticsearchClient).closePointInTime(any(Function.class));
+    }
+
+    @Test
+    void buildQuery_usesFilenameTrigramsInsteadOfWildcards() {
+        // Act
+        Query query = ElasticsearchSearcher.buildQuery("invoice");
+
+        // Assert
+        List<Query> clauses = query.bool().should();
+        assertTrue(clauses.stream().noneMatch(Query::isWildcard));
+        assertTrue(clauses.stream().anyMatch(q -> q.isMatch() && q.match().field().equals("filename.ngram")));
+        assertTrue(clauses.stream().anyMatch(q -> q.isTerm() && q.term().field().equals("documentId")));
+    }
 
+    @Test
+    void buildQuery_shortQueryUsesFilenamePrefix() {
         // Act
-        List<DocumentSearchResultDTO> results = elasticsearchSearcher.searchDocuments(query);
+        Query query = ElasticsearchSearcher.buildQuery("AB");
 
         // Assert
-        assertNotNull(results);
-        assertTrue(results.isEmpty());
-        verify(elasticsearchClient).search(any(SearchRequest.class), eq(DocumentSearchResultDTO.class));
+        List<Query> clauses = query.bool().should();
+        assertTrue(clauses.stream().anyMatch(q -> q.isPrefix()
+                && q.prefix().field().equals("filename.keyword")
+                && q.prefix().value().equals("ab")));
+        assertTrue(clauses.stream().noneMatch(q -> q.isMatch() && q.match().field().equals("filename.ngram")));
+    }
+
+    private static Hit<DocumentSearchResultDTO> hit(String id, double score, long shardDoc) {
+        DocumentSearchResultDTO source = new DocumentSearchResultDTO(id, null, "filename", "filetype", 1, true, null, "timestamp", null, null, null);
+        return Hit.of(h -> h
+                .id(id)
+                .index("documents")
+                .source(source)
+                .highlight("ocrText", List.of("some <mark>test</mark> text"))
+                .sort(FieldValue.of(score), FieldValue.of(shardDoc))
+        );
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SearchResponse<DocumentSearchResultDTO> response(List<Hit<DocumentSearchResultDTO>> hits) {
+        HitsMetadata<DocumentSearchResultDTO> hitsMetadata = mock(HitsMetadata.class);
+        when(hitsMetadata.hits()).thenReturn(hits);
+
+        SearchResponse<DocumentSearchResultDTO> searchResponse = mock(SearchResponse.class);
+        when(searchResponse.hits()).thenReturn(hitsMetadata);
+        return searchResponse;
     }
 }
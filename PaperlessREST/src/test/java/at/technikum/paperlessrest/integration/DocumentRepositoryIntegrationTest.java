@@ -2,14 +2,25 @@ package at.technikum.paperlessrest.integration;
 
 import at.technikum.paperlessrest.dto.DocumentDTO;
 import at.technikum.paperlessrest.entities.Document;
+import at.technikum.paperlessrest.repository.DocumentContentHash;
+import at.technikum.paperlessrest.repository.DocumentPageQuery;
 import at.technikum.paperlessrest.repository.DocumentRepository;
+import at.technikum.paperlessrest.repository.DocumentSortField;
+import at.technikum.paperlessrest.repository.DocumentSummary;
+import at.technikum.paperlessrest.repository.OcrProgress;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Sort;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @DataJpaTest
@@ -40,4 +51,128 @@ class DocumentRepositoryIntegrationTest {
         // Assert
         assertTrue(result.isPresent());
     }
+
+    @Test
+    void testMarkOcrJobDone() {
+        // Arrange
+        documentRepository.save(new Document(DocumentDTO.builder().id("1").filename("test.pdf").build()));
+
+        // Act
+        int updated = documentRepository.markOcrJobDone("1");
+        int missing = documentRepository.markOcrJobDone("unknown");
+
+        // Assert
+        assertEquals(1, updated);
+        assertEquals(0, missing);
+    }
+
+    @Test
+    void testUpdateOcrProgressOnlyMovesForward() {
+        // Arrange
+        documentRepository.save(new Document(DocumentDTO.builder().id("1").filename("scan.pdf").build()));
+
+        // Act
+        int first = documentRepository.updateOcrProgress(Map.of("1", new OcrProgress(20, 100)));
+        int stale = documentRepository.updateOcrProgress(Map.of("1", new OcrProgress(10, 100)));
+        int unknown = documentRepository.updateOcrProgress(Map.of("unknown", new OcrProgress(10, 100)));
+
+        // Assert
+        assertEquals(1, first);
+        assertEquals(0, stale);
+        assertEquals(0, unknown);
+    }
+
+    @Test
+    void testUpdateOcrProgressOfBatch() {
+        // Arrange
+        documentRepository.save(new Document(DocumentDTO.builder().id("1").filename("first.pdf").build()));
+        documentRepository.save(new Document(DocumentDTO.builder().id("2").filename("second.pdf").build()));
+        documentRepository.save(new Document(DocumentDTO.builder().id("3").filename("done.pdf").ocrJobDone(true).build()));
+
+        // Act
+        int updated = documentRepository.updateOcrProgress(Map.of(
+                "1", new OcrProgress(5, 10),
+                "2", new OcrProgress(7, 30),
+                "3", new OcrProgress(1, 2),
+                "unknown", new OcrProgress(1, 2)));
+
+        // Assert
+        assertEquals(2, updated);
+    }
+
+    @Test
+    void testFindWaitingCopiesOfSeveralContents() {
+        // Arrange
+        for (String id : List.of("a", "b", "c", "d")) {
+            Document document = new Document(DocumentDTO.builder().id(id).filename(id + ".pdf").ocrJobDone(id.equals("c")).build());
+            document.setContentHash(id.equals("d") ? "other" : "hash-" + (id.equals("b") ? 2 : 1));
+            documentRepository.save(document);
+        }
+
+        // Act
+        List<Document> waiting = documentRepository.findByContentHashInAndOcrJobDoneFalse(List.of("hash-1", "hash-2"));
+
+        // Assert
+        assertEquals(List.of("a", "b"), waiting.stream().map(Document::getId).sorted().toList());
+    }
+
+    @Test
+    void testMarkOcrJobsDoneForBatch() {
+        // Arrange
+        Document first = new Document(DocumentDTO.builder().id("1").filename("first.pdf").build());
+        first.setContentHash("hash");
+        documentRepository.save(first);
+        documentRepository.save(new Document(DocumentDTO.builder().id("2").filename("second.pdf").build()));
+        documentRepository.save(new Document(DocumentDTO.builder().id("3").filename("third.pdf").build()));
+
+        // Act
+        List<DocumentContentHash> found = documentRepository.findContentHashesByIdIn(List.of("1", "2", "unknown"));
+        int updated = documentRepository.markOcrJobsDone(List.of("1", "2", "unknown"));
+
+        // Assert
+        assertEquals(2, found.size());
+        assertTrue(found.contains(new DocumentContentHash("1", "hash")));
+        assertEquals(2, updated);
+    }
+
+    @Test
+    void testFindPageWithKeysetCursor() {
+        // Arrange
+        LocalDateTime uploadDate = LocalDateTime.of(2024, 1, 1, 12, 0);
+        for (int i = 0; i < 5; i++) {
+            documentRepository.save(new Document(DocumentDTO.builder()
+                    .id("doc-" + i)
+                    .filename("doc-" + i + ".pdf")
+                    .filesize(100L * i)
+                    .filetype("application/pdf")
+                    .uploadDate(uploadDate.plusHours(i % 3)) // duplicate dates exercise the ID tiebreaker
+                    .ocrJobDone(i % 2 == 0)
+                    .build()));
+        }
+
+        // Act
+        List<String> ids = new ArrayList<>();
+        DocumentSummary last = null;
+        do {
+            List<DocumentSummary> page = documentRepository.findPage(DocumentPageQuery.builder()
+                    .afterValue(last == null ? null : last.uploadDate())
+                    .afterId(last == null ? null : last.id())
+                    .limit(2)
+                    .build());
+            page.forEach(row -> ids.add(row.id()));
+            last = page.size() == 2 ? page.get(1) : null;
+        } while (last != null);
+
+        List<DocumentSummary> filtered = documentRepository.findPage(DocumentPageQuery.builder()
+                .ocrJobDone(true)
+                .minFilesize(100L)
+                .sortField(DocumentSortField.FILESIZE)
+                .direction(Sort.Direction.ASC)
+                .limit(10)
+                .build());
+
+        // Assert
+        assertEquals(List.of("doc-2", "doc-4", "doc-1", "doc-3", "doc-0"), ids);
+        assertEquals(List.of("doc-2", "doc-4"), filtered.stream().map(DocumentSummary::id).toList());
+    }
 }
@@ -0,0 +1,67 @@
+package at.technikum.paperlessrest.metrics;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DependencyTimerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DependencyTimer dependencyTimer = new DependencyTimer(meterRegistry);
+
+    @AfterEach
+    void unbind() {
+        DependencyTimer.unbind();
+    }
+
+    @Test
+    void record_timesCallByDependencyOperationAndOutcome() throws Exception {
+        // Act
+        String result = dependencyTimer.record(DependencyTimer.POSTGRES, "findById", () -> "row");
+        assertThrows(IOException.class, () -> dependencyTimer.run(DependencyTimer.MINIO, "getObject", () -> {
+            throw new IOException("down");
+        }));
+
+        // Assert
+        assertEquals("row", result);
+        Timer success = meterRegistry.get("paperless.dependency")
+                .tags("dependency", "postgres", "operation", "findById", "outcome", "success")
+                .timer();
+        assertEquals(1, success.count());
+        Timer failure = meterRegistry.get("paperless.dependency")
+                .tags("dependency", "minio", "operation", "getObject", "outcome", "failure")
+                .timer();
+        assertEquals(1, failure.count());
+    }
+
+    @Test
+    void record_addsCallsToCurrentRequest() {
+        // Arrange
+        ServerTiming timing = new ServerTiming(System.nanoTime());
+        DependencyTimer.bind(timing);
+
+        // Act
+        dependencyTimer.record(DependencyTimer.POSTGRES, "findById", () -> "row");
+        dependencyTimer.record(DependencyTimer.POSTGRES, "findPage", () -> "rows");
+        dependencyTimer.record(DependencyTimer.ELASTICSEARCH, "search", () -> "hits");
+
+        // Assert
+        String header = timing.header(System.nanoTime());
+        assertTrue(header.matches("postgres;dur=\\d+\\.\\d;desc=\"2 calls\", elasticsearch;dur=\\d+\\.\\d;desc=\"1 call\", total;dur=\\d+\\.\\d"),
+                header);
+    }
+
+    @Test
+    void record_withoutRequestOnlyRecordsTimer() {
+        // Act
+        dependencyTimer.record(DependencyTimer.RABBITMQ, "publishConfirmed", () -> null);
+
+        // Assert
+        assertEquals(1, meterRegistry.get("paperless.dependency").tag("dependency", "rabbitmq").timer().count());
+    }
+}
@@ -0,0 +1,71 @@
+package at.technikum.paperlessrest.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerTimingFilterTest {
+
+    private final DependencyTimer dependencyTimer = new DependencyTimer(new SimpleMeterRegistry());
+    private final ServerTimingFilter filter = new ServerTimingFilter(true, "http://localhost");
+
+    @Test
+    void doFilter_addsTimingsBeforeBodyIsWritten() throws Exception {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/documents/search");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = (req, res) -> {
+            dependencyTimer.record(DependencyTimer.ELASTICSEARCH, "search", () -> "hits");
+            res.getOutputStream().write("{}".getBytes(StandardCharsets.UTF_8));
+            res.flushBuffer();
+            // Too late for the header, the response is committed
+            dependencyTimer.record(DependencyTimer.POSTGRES, "findById", () -> "row");
+        };
+
+        // Act
+        filter.doFilter(request, response, chain);
+
+        // Assert
+        String header = response.getHeader(ServerTimingFilter.SERVER_TIMING);
+        assertNotNull(header);
+        assertTrue(header.startsWith("elasticsearch;dur="), header);
+        assertFalse(header.contains("postgres"), header);
+        assertTrue(header.contains("total;dur="), header);
+        assertEquals("http://localhost", response.getHeader(ServerTimingFilter.TIMING_ALLOW_ORIGIN));
+    }
+
+    @Test
+    void doFilter_addsTimingsToResponseWithoutBody() throws Exception {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest("DELETE", "/api/documents/1");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = (req, res) -> dependencyTimer.run(DependencyTimer.POSTGRES, "deleteById", () -> {
+        });
+
+        // Act
+        filter.doFilter(request, response, chain);
+
+        // Assert
+        assertTrue(response.getHeader(ServerTimingFilter.SERVER_TIMING).startsWith("postgres;dur="));
+    }
+
+    @Test
+    void doFilter_disabled() throws Exception {
+        // Arrange
+        ServerTimingFilter disabled = new ServerTimingFilter(false, "http://localhost");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        disabled.doFilter(new MockHttpServletRequest("GET", "/api/documents"), response,
+                (req, res) -> dependencyTimer.record(DependencyTimer.POSTGRES, "findPage", () -> "rows"));
+
+        // Assert
+        assertNull(response.getHeader(ServerTimingFilter.SERVER_TIMING));
+    }
+}
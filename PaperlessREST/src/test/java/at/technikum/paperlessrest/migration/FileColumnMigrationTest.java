@@ -0,0 +1,99 @@
+package at.technikum.paperlessrest.migration;
+
+import io.minio.BucketExistsArgs;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.StatObjectArgs;
+import io.minio.errors.ErrorResponseException;
+import io.minio.messages.ErrorResponse;
+import okhttp3.Response;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+@DataJpaTest
+class FileColumnMigrationTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final MinioClient minioClient = mock(MinioClient.class);
+
+    private FileColumnMigration migration() {
+        return new FileColumnMigration(jdbcTemplate, minioClient, new TransactionTemplate(transactionManager));
+    }
+
+    @BeforeAll
+    static void setLogPathForTests() {
+        System.setProperty("LOG_PATH", "./logs/test-logs");
+    }
+
+    @Test
+    void run_movesFilesToMinioAndDropsColumn() throws Exception {
+        // Arrange
+        jdbcTemplate.execute("alter table files add column file blob");
+        jdbcTemplate.update("insert into files (id, filename, filesize, ocr_job_done, file) values (?, ?, 18, false, ?)", "1", "with-file.pdf", "Sample PDF content".getBytes());
+        jdbcTemplate.update("insert into files (id, filename, filesize, ocr_job_done) values (?, ?, 0, false)", "2", "without-file.pdf");
+
+        when(minioClient.bucketExists(any(BucketExistsArgs.class))).thenReturn(true);
+        ErrorResponse noSuchKey = new ErrorResponse("NoSuchKey", "Object does not exist", null, null, null, null, null);
+        when(minioClient.statObject(any(StatObjectArgs.class)))
+                .thenThrow(new ErrorResponseException(noSuchKey, mock(Response.class), "NoSuchKey"));
+
+        // Act
+        migration().run(null);
+
+        // Assert
+        verify(minioClient, times(1)).putObject(any(PutObjectArgs.class));
+        Integer fileColumns = jdbcTemplate.queryForObject(
+                "select count(*) from information_schema.columns where lower(table_name) = 'files' and lower(column_name) = 'file'",
+                Integer.class);
+        assertEquals(0, fileColumns);
+    }
+
+    @Test
+    void run_pagesThroughAllFilesAndSkipsMovedOnes() throws Exception {
+        // Arrange
+        jdbcTemplate.execute("alter table files add column file blob");
+        for (int i = 0; i < 250; i++) {
+            jdbcTemplate.update("insert into files (id, filename, filesize, ocr_job_done, file) values (?, ?, 3, false, ?)",
+                    String.format("doc-%03d", i), "scan.pdf", new byte[]{1, 2, 3});
+        }
+
+        when(minioClient.bucketExists(any(BucketExistsArgs.class))).thenReturn(true);
+        ErrorResponse noSuchKey = new ErrorResponse("NoSuchKey", "Object does not exist", null, null, null, null, null);
+        // Every tenth file was moved by an earlier, interrupted run
+        when(minioClient.statObject(any(StatObjectArgs.class))).thenAnswer(invocation -> {
+            if (invocation.<StatObjectArgs>getArgument(0).object().endsWith("0")) {
+                return null;
+            }
+            throw new ErrorResponseException(noSuchKey, mock(Response.class), "NoSuchKey");
+        });
+
+        // Act
+        migration().run(null);
+
+        // Assert
+        verify(minioClient, times(250)).statObject(any(StatObjectArgs.class));
+        verify(minioClient, times(225)).putObject(any(PutObjectArgs.class));
+    }
+
+    @Test
+    void run_withoutLegacyColumnDoesNothing() throws Exception {
+        // Act
+        migration().run(null);
+
+        // Assert
+        verifyNoInteractions(minioClient);
+    }
+}
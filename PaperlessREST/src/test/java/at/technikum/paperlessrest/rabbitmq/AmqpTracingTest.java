@@ -0,0 +1,109 @@
+package at.technikum.paperlessrest.rabbitmq;
+
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.otel.bridge.OtelCurrentTraceContext;
+import io.micrometer.tracing.otel.bridge.OtelPropagator;
+import io.micrometer.tracing.otel.bridge.OtelTracer;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AmqpTracingTest {
+
+    private final List<SpanData> finished = new CopyOnWriteArrayList<>();
+    private final AmqpTracing amqpTracing;
+    private final Tracer tracer;
+
+    AmqpTracingTest() {
+        SdkTracerProvider tracerProvider = SdkTracerProvider.builder()
+                .addSpanProcessor(SimpleSpanProcessor.create(new SpanExporter() {
+                    @Override
+                    public CompletableResultCode export(Collection<SpanData> spans) {
+                        finished.addAll(spans);
+                        return CompletableResultCode.ofSuccess();
+                    }
+
+                    @Override
+                    public CompletableResultCode flush() {
+                        return CompletableResultCode.ofSuccess();
+                    }
+
+                    @Override
+                    public CompletableResultCode shutdown() {
+                        return CompletableResultCode.ofSuccess();
+                    }
+                }))
+                .build();
+        io.opentelemetry.api.trace.Tracer otelTracer = tracerProvider.get("test");
+        tracer = new OtelTracer(otelTracer, new OtelCurrentTraceContext(), event -> { });
+        amqpTracing = new AmqpTracing(tracer,
+                new OtelPropagator(ContextPropagators.create(W3CTraceContextPropagator.getInstance()), otelTracer));
+    }
+
+    private Map<String, SpanData> finishedByName() {
+        return finished.stream().collect(Collectors.toMap(SpanData::getName, Function.identity()));
+    }
+
+    @Test
+    void jobContinuesTraceOfUploadAcrossOutboxAndQueue() {
+        // Arrange
+        Span upload = tracer.nextSpan().name("upload").start();
+        String storedContext;
+        try (Tracer.SpanInScope ignored = tracer.withSpan(upload)) {
+            storedContext = amqpTracing.currentContext();
+        } finally {
+            upload.end();
+        }
+        LocalDateTime queuedAt = LocalDateTime.now().minusSeconds(2);
+        MessageProperties properties = new MessageProperties();
+
+        // Act
+        Span publish = amqpTracing.startPublishSpan(storedContext, queuedAt, "doc-1");
+        amqpTracing.inject(publish, properties);
+        publish.end();
+        amqpTracing.startConsumerSpan("ocr-result apply", new Message(new byte[0], properties)).end();
+
+        // Assert
+        assertTrue(storedContext.contains("traceparent"));
+        assertNotNull(properties.getHeader("traceparent"));
+        Map<String, SpanData> spans = finishedByName();
+        String traceId = spans.get("upload").getTraceId();
+        assertEquals(traceId, spans.get("ocr-job outbox").getTraceId());
+        assertEquals(traceId, spans.get("ocr-job publish").getTraceId());
+        assertEquals(traceId, spans.get("ocr-result apply").getTraceId());
+        assertEquals(spans.get("upload").getSpanId(), spans.get("ocr-job outbox").getParentSpanId());
+        assertEquals(spans.get("ocr-job publish").getSpanId(), spans.get("ocr-result apply").getParentSpanId());
+        SpanData outbox = spans.get("ocr-job outbox");
+        assertTrue(outbox.getEndEpochNanos() - outbox.getStartEpochNanos() >= TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @Test
+    void jobWithoutStoredContextStartsNewTrace() {
+        // Act
+        String context = amqpTracing.currentContext();
+        amqpTracing.startPublishSpan(context, LocalDateTime.now(), "doc-1").end();
+
+        // Assert
+        assertNull(context);
+        assertFalse(finishedByName().get("ocr-job publish").getParentSpanContext().isValid());
+    }
+}
@@ -0,0 +1,70 @@
+package at.technikum.paperlessrest.rabbitmq;
+
+import at.technikum.paperlessrest.entities.OcrJobOutboxEntry;
+import at.technikum.paperlessrest.repository.OcrJobOutboxRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpTimeoutException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+class OcrJobOutboxRelayTest {
+
+    private final OcrJobOutboxRepository ocrJobOutboxRepository = mock(OcrJobOutboxRepository.class);
+    private final RabbitMQSender rabbitMQSender = mock(RabbitMQSender.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final OcrJobOutboxRelay relay = new OcrJobOutboxRelay(ocrJobOutboxRepository, rabbitMQSender,
+            new TransactionTemplate(transactionManager), 2, Duration.ofSeconds(5));
+
+    @Test
+    void relay_publishesAndDeletesUntilOutboxIsDrained() {
+        // Arrange
+        List<OcrJobOutboxEntry> full = List.of(new OcrJobOutboxEntry("doc-1", "a.pdf", "doc-1", "hash", 1024, 1), new OcrJobOutboxEntry("doc-2", "b.pdf", "doc-2", "hash", 1024, 1));
+        List<OcrJobOutboxEntry> rest = List.of(new OcrJobOutboxEntry("doc-3", "c.pdf", "doc-3", "hash", 1024, 1));
+        when(ocrJobOutboxRepository.findBatchForUpdate(any(Pageable.class))).thenReturn(full, rest);
+
+        // Act
+        relay.relay();
+
+        // Assert
+        verify(rabbitMQSender).sendOCRJobMessages(full, Duration.ofSeconds(5));
+        verify(rabbitMQSender).sendOCRJobMessages(rest, Duration.ofSeconds(5));
+        verify(ocrJobOutboxRepository).deleteAllInBatch(full);
+        verify(ocrJobOutboxRepository).deleteAllInBatch(rest);
+        verify(ocrJobOutboxRepository, times(2)).findBatchForUpdate(any(Pageable.class));
+        verify(transactionManager, times(2)).commit(any());
+    }
+
+    @Test
+    void relay_emptyOutbox() {
+        // Arrange
+        when(ocrJobOutboxRepository.findBatchForUpdate(any(Pageable.class))).thenReturn(List.of());
+
+        // Act
+        relay.relay();
+
+        // Assert
+        verifyNoInteractions(rabbitMQSender);
+        verify(ocrJobOutboxRepository, never()).deleteAllInBatch(anyIterable());
+    }
+
+    @Test
+    void relay_unconfirmedBatchStaysInOutbox() {
+        // Arrange
+        List<OcrJobOutboxEntry> batch = List.of(new OcrJobOutboxEntry("doc-1", "a.pdf", "doc-1", "hash", 1024, 1));
+        when(ocrJobOutboxRepository.findBatchForUpdate(any(Pageable.class))).thenReturn(batch);
+        doThrow(new AmqpTimeoutException("no confirm")).when(rabbitMQSender).sendOCRJobMessages(anyList(), any(Duration.class));
+
+        // Act
+        relay.relay();
+
+        // Assert
+        verify(ocrJobOutboxRepository, never()).deleteAllInBatch(anyIterable());
+        verify(transactionManager).rollback(any());
+    }
+}
@@ -1,93 +1,278 @@
 package at.technikum.paperlessrest.rabbitmq;
 
 import at.technikum.paperlessrest.dto.DocumentDTO;
+import at.technikum.paperlessrest.elastic.ElasticsearchIndexer;
 import at.technikum.paperlessrest.entities.Document;
+import at.technikum.paperlessrest.repository.DocumentContentHash;
 import at.technikum.paperlessrest.repository.DocumentRepository;
+import at.technikum.paperlessrest.repository.OcrProgress;
+import at.technikum.paperlessrest.service.SearchResultCache;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.jupiter.api.Test;
-import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import static org.junit.jupiter.api.Assertions.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
 class RabbitMQResultListenerTest {
 
     private final DocumentRepository documentRepository = mock(DocumentRepository.class);
-    private final RabbitMQResultListener rabbitMQResultListener = new RabbitMQResultListener(documentRepository);
+    private final ElasticsearchIndexer elasticsearchIndexer = mock(ElasticsearchIndexer.class);
+    private final SearchResultCache searchResultCache = mock(SearchResultCache.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final RabbitMQResultListener rabbitMQResultListener = new RabbitMQResultListener(documentRepository, elasticsearchIndexer,
+            searchResultCache, new TransactionTemplate(transactionManager), new AmqpTracing(Tracer.NOOP, Propagator.NOOP));
+
+    private static List<Message> received(List<String> bodies) {
+        return bodies.stream().map(body -> new Message(body.getBytes(StandardCharsets.UTF_8))).toList();
+    }
+
+    private static String resultMessage(String documentId) throws JSONException {
+        return new JSONObject()
+                .put("documentId", documentId)
+                .toString();
+    }
+
+    private static String progressMessage(String documentId, int pagesDone, int pageCount) throws JSONException {
+        return new JSONObject()
+                .put("documentId", documentId)
+                .put("type", "progress")
+                .put("pagesDone", pagesDone)
+                .put("pageCount", pageCount)
+                .toString();
+    }
+
+    @Test
+    void handleOcrResults_marksBatchDoneWithOneUpdate() throws JSONException {
+        // Arrange
+        List<String> messages = List.of(resultMessage("doc-1"), resultMessage("doc-2"), resultMessage("doc-1"));
+
+        when(documentRepository.findContentHashesByIdIn(Set.of("doc-1", "doc-2")))
+                .thenReturn(List.of(new DocumentContentHash("doc-1", null), new DocumentContentHash("doc-2", null)));
+
+        // Act
+        rabbitMQResultListener.handleOcrResults(received(messages));
+
+        // Assert
+        verify(documentRepository).markOcrJobsDone(List.of("doc-1", "doc-2"));
+        verify(documentRepository, never()).markOcrJobDone(anyString());
+        verify(documentRepository, never()).findByContentHashInAndOcrJobDoneFalse(anyCollection());
+        verify(documentRepository, never()).findById(anyString());
+        verify(documentRepository, never()).save(any(Document.class));
+        verify(transactionManager).commit(any());
+        verify(searchResultCache).invalidate();
+    }
 
     @Test
-    void handleOcrResult_success() throws JSONException {
+    void handleOcrResults_completesPendingDuplicates() throws Exception {
         // Arrange
         String documentId = "123e4567-e89b-12d3-a456-426614174000";
-        DocumentDTO document = DocumentDTO.builder()
-                .id(documentId)
-                .filename("test.pdf")
-                .ocrJobDone(false)
-                .build();
+        Document duplicate = new Document("duplicate-id", "copy.pdf");
+        duplicate.setContentHash("hash");
 
-        String message = new JSONObject()
-                .put("documentId", documentId)
-                .toString();
+        when(documentRepository.findContentHashesByIdIn(Set.of(documentId)))
+                .thenReturn(List.of(new DocumentContentHash(documentId, "hash")));
+        when(documentRepository.findByContentHashInAndOcrJobDoneFalse(Set.of("hash"))).thenReturn(List.of(duplicate));
+
+        // Act
+        rabbitMQResultListener.handleOcrResults(received(List.of(resultMessage(documentId))));
+
+        // Assert
+        verify(elasticsearchIndexer).copyOcrText(eq(documentId), argThat(copy -> copy.getId().equals("duplicate-id") && copy.isOcrJobDone()));
+        verify(documentRepository).markOcrJobsDone(List.of("duplicate-id"));
+    }
+
+    @Test
+    void handleOcrResults_looksUpDuplicatesOfWholeBatchWithOneQuery() throws Exception {
+        // Arrange
+        Document copyOfFirst = new Document("copy-1", "copy.pdf");
+        copyOfFirst.setContentHash("hash-1");
+        Document copyOfSecond = new Document("copy-2", "copy.pdf");
+        copyOfSecond.setContentHash("hash-2");
 
-        when(documentRepository.findById(documentId)).thenReturn(java.util.Optional.of(new Document(document)));
-        when(documentRepository.save(any(Document.class))).thenReturn(new Document(document));
+        when(documentRepository.findContentHashesByIdIn(Set.of("doc-1", "doc-2", "doc-3")))
+                .thenReturn(List.of(new DocumentContentHash("doc-1", "hash-1"), new DocumentContentHash("doc-2", "hash-2"),
+                        new DocumentContentHash("doc-3", "hash-3")));
+        when(documentRepository.findByContentHashInAndOcrJobDoneFalse(Set.of("hash-1", "hash-2", "hash-3")))
+                .thenReturn(List.of(copyOfFirst, copyOfSecond));
 
         // Act
-        rabbitMQResultListener.handleOcrResult(message);
+        rabbitMQResultListener.handleOcrResults(received(List.of(resultMessage("doc-1"), resultMessage("doc-2"), resultMessage("doc-3"))));
 
         // Assert
-        ArgumentCaptor<Document> documentCaptor = ArgumentCaptor.forClass(Document.class);
-        verify(documentRepository).save(documentCaptor.capture());
+        verify(documentRepository, times(1)).findByContentHashInAndOcrJobDoneFalse(anyCollection());
+        verify(documentRepository, never()).findByContentHashAndOcrJobDoneFalse(anyString());
+        verify(elasticsearchIndexer).copyOcrText(eq("doc-1"), argThat(copy -> copy.getId().equals("copy-1")));
+        verify(elasticsearchIndexer).copyOcrText(eq("doc-2"), argThat(copy -> copy.getId().equals("copy-2")));
+        verify(documentRepository).markOcrJobsDone(List.of("copy-1", "copy-2"));
+        verify(documentRepository, never()).markOcrJobDone(anyString());
+        verify(elasticsearchIndexer, never()).deleteDocument(anyString());
+    }
+
+    @Test
+    void handleOcrResults_ignoresUnknownDocuments() throws Exception {
+        // Arrange
+        when(documentRepository.findContentHashesByIdIn(Set.of("doc-1", "nonexistent-id")))
+                .thenReturn(List.of(new DocumentContentHash("doc-1", null)));
+
+        // Act
+        rabbitMQResultListener.handleOcrResults(received(List.of(resultMessage("doc-1"), resultMessage("nonexistent-id"))));
 
-        Document savedDocument = documentCaptor.getValue();
-        assertTrue(savedDocument.isOcrJobDone());
-        verify(documentRepository).findById(documentId);
+        // Assert
+        verify(documentRepository).markOcrJobsDone(List.of("doc-1"));
+        verify(searchResultCache).invalidate();
     }
 
     @Test
-    void handleOcrResult_documentNotFound() throws JSONException {
+    void handleOcrResults_deletedDocumentCompletesWaitingCopies() throws Exception {
         // Arrange
-        String documentId = "nonexistent-id";
+        Document waitingCopy = new Document("copy-id", "copy.pdf");
+        waitingCopy.setContentHash("hash");
         String message = new JSONObject()
-                .put("documentId", documentId)
+                .put("documentId", "deleted-id")
+                .put("contentHash", "hash")
                 .toString();
 
-        when(documentRepository.findById(documentId)).thenReturn(java.util.Optional.empty());
+        when(documentRepository.findContentHashesByIdIn(Set.of("deleted-id"))).thenReturn(List.of());
+        when(documentRepository.findByContentHashInAndOcrJobDoneFalse(Set.of("hash"))).thenReturn(List.of(waitingCopy));
 
         // Act
-        rabbitMQResultListener.handleOcrResult(message);
+        rabbitMQResultListener.handleOcrResults(received(List.of(message)));
 
         // Assert
-        verify(documentRepository).findById(documentId);
-        verify(documentRepository, never()).save(any(Document.class));
+        verify(elasticsearchIndexer).copyOcrText(eq("deleted-id"), argThat(copy -> copy.getId().equals("copy-id") && copy.isOcrJobDone()));
+        verify(documentRepository).markOcrJobsDone(List.of("copy-id"));
+        verify(elasticsearchIndexer).deleteDocument("deleted-id");
+        verify(searchResultCache).invalidate();
     }
 
     @Test
-    void handleOcrResult_invalidJsonMessage() {
+    void handleOcrResults_onlyUnknownDocuments() throws Exception {
         // Arrange
-        String invalidMessage = "{invalid-json}";
+        when(documentRepository.findContentHashesByIdIn(Set.of("nonexistent-id"))).thenReturn(List.of());
 
         // Act
-        rabbitMQResultListener.handleOcrResult(invalidMessage);
+        rabbitMQResultListener.handleOcrResults(received(List.of(resultMessage("nonexistent-id"))));
 
         // Assert
-        verify(documentRepository, never()).findById(anyString());
-        verify(documentRepository, never()).save(any(Document.class));
+        verify(documentRepository, never()).markOcrJobsDone(anyCollection());
+        verify(documentRepository, never()).findByContentHashInAndOcrJobDoneFalse(anyCollection());
+        verify(searchResultCache, never()).invalidate();
+        verify(elasticsearchIndexer, never()).copyOcrText(anyString(), any(DocumentDTO.class));
     }
 
     @Test
-    void handleOcrResult_missingDocumentId() throws JSONException {
+    void handleOcrResults_appliesLatestProgressOfRunningJobs() throws Exception {
         // Arrange
-        String message = new JSONObject()
+        List<String> messages = List.of(progressMessage("doc-1", 10, 500), progressMessage("doc-1", 30, 500),
+                progressMessage("doc-2", 5, 20), resultMessage("doc-2"));
+
+        when(documentRepository.updateOcrProgress(Map.of("doc-1", new OcrProgress(30, 500)))).thenReturn(1);
+        when(documentRepository.findContentHashesByIdIn(Set.of("doc-2")))
+                .thenReturn(List.of(new DocumentContentHash("doc-2", null)));
+
+        // Act
+        rabbitMQResultListener.handleOcrResults(received(messages));
+
+        // Assert
+        // One batch with the furthest progress of doc-1, doc-2 is done
+        verify(documentRepository).updateOcrProgress(Map.of("doc-1", new OcrProgress(30, 500)));
+        verify(documentRepository).markOcrJobsDone(List.of("doc-2"));
+        // Only the completion makes a change visible that cannot wait for cached pages to expire
+        verify(searchResultCache, times(1)).invalidate();
+    }
+
+    @Test
+    void handleOcrResults_progressOnly() throws Exception {
+        // Arrange
+        when(documentRepository.updateOcrProgress(anyMap())).thenReturn(0);
+
+        // Act
+        rabbitMQResultListener.handleOcrResults(received(List.of(progressMessage("doc-1", 10, 500))));
+
+        // Assert
+        verify(documentRepository, never()).findContentHashesByIdIn(anyCollection());
+        verify(documentRepository, never()).markOcrJobsDone(anyCollection());
+        verify(searchResultCache, never()).invalidate();
+    }
+
+    @Test
+    void handleOcrResults_skipsInvalidMessages() throws JSONException {
+        // Arrange
+        String invalidMessage = "{invalid-json}";
+        String missingId = new JSONObject()
                 .put("invalidKey", "value")
                 .toString();
 
+        when(documentRepository.findContentHashesByIdIn(Set.of("doc-1")))
+                .thenReturn(List.of(new DocumentContentHash("doc-1", null)));
+
         // Act
-        rabbitMQResultListener.handleOcrResult(message);
+        rabbitMQResultListener.handleOcrResults(received(List.of(invalidMessage, missingId, resultMessage("doc-1"))));
 
         // Assert
-        verify(documentRepository, never()).findById(anyString());
+        verify(documentRepository).markOcrJobsDone(List.of("doc-1"));
+    }
+
+    @Test
+    void handleOcrResults_skipsMalformedProgressMessages() throws JSONException {
+        // Arrange
+        String missingPages = new JSONObject()
+                .put("documentId", "doc-1")
+                .put("type", "progress")
+                .put("pageCount", 500)
+                .toString();
+        String wrongType = new JSONObject()
+                .put("documentId", "doc-2")
+                .put("type", "progress")
+                .put("pagesDone", "some")
+                .put("pageCount", 500)
+                .toString();
+
+        when(documentRepository.findContentHashesByIdIn(Set.of("doc-3")))
+                .thenReturn(List.of(new DocumentContentHash("doc-3", null)));
+
+        // Act
+        rabbitMQResultListener.handleOcrResults(received(List.of(missingPages, wrongType, resultMessage("doc-3"))));
+
+        // Assert
+        verify(documentRepository, never()).updateOcrProgress(anyMap());
+        verify(documentRepository).markOcrJobsDone(List.of("doc-3"));
+    }
+
+    @Test
+    void handleOcrResults_noValidMessages() {
+        // Act
+        rabbitMQResultListener.handleOcrResults(received(List.of("{invalid-json}")));
+
+        // Assert
+        verify(documentRepository, never()).findContentHashesByIdIn(anyCollection());
+        verify(documentRepository, never()).markOcrJobsDone(anyCollection());
         verify(documentRepository, never()).save(any(Document.class));
     }
+
+    @Test
+    void handleOcrResults_databaseFailureRejectsBatch() throws Exception {
+        // Arrange
+        when(documentRepository.findContentHashesByIdIn(anyCollection()))
+                .thenReturn(List.of(new DocumentContentHash("doc-1", null)));
+        when(documentRepository.markOcrJobsDone(anyCollection())).thenThrow(new DataAccessResourceFailureException("down"));
+
+        // Act & Assert
+        assertThrows(DataAccessResourceFailureException.class,
+                () -> rabbitMQResultListener.handleOcrResults(received(List.of(resultMessage("doc-1")))));
+        verify(transactionManager).rollback(any());
+        verify(searchResultCache, never()).invalidate();
+    }
 }
@@ -1,53 +1,106 @@
 package at.technikum.paperlessrest.rabbitmq;
 
+import at.technikum.paperlessrest.entities.OcrJobOutboxEntry;
+import at.technikum.paperlessrest.metrics.DependencyTimer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.amqp.AmqpTimeoutException;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
 class RabbitMQSenderTest {
 
     private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
-    private final RabbitMQSender rabbitMQSender = new RabbitMQSender(rabbitTemplate);
+    private final RabbitOperations operations = mock(RabbitOperations.class);
+    private final RabbitMQSender rabbitMQSender = new RabbitMQSender(rabbitTemplate, new DependencyTimer(new SimpleMeterRegistry()),
+            new AmqpTracing(Tracer.NOOP, Propagator.NOOP), 50, DataSize.ofMegabytes(20));
+
+    @BeforeEach
+    void setup() {
+        when(rabbitTemplate.invoke(any(RabbitOperations.OperationsCallback.class)))
+                .thenAnswer(invocation -> invocation.<RabbitOperations.OperationsCallback<?>>getArgument(0).doInRabbit(operations));
+    }
 
     @Test
-    void sendOCRJobMessage_success() {
+    void sendOCRJobMessages_publishesBatchThenWaitsForConfirms() {
         // Arrange
-        String documentId = "123e4567-e89b-12d3-a456-426614174000";
-        String filename = "filename-test";
-        String expectedMessage = "{\"documentId\":\"" + documentId + "\", \"filename\":\"" + filename + "\"}";
+        OcrJobOutboxEntry first = new OcrJobOutboxEntry("doc-1", "first.pdf", "object-1", "hash", 1024, 1);
+        OcrJobOutboxEntry second = new OcrJobOutboxEntry("doc-2", "second \"quoted\".pdf", "object-1", "hash", 1024, 1);
 
         // Act
-        rabbitMQSender.sendOCRJobMessage(documentId, filename);
+        rabbitMQSender.sendOCRJobMessages(List.of(first, second), Duration.ofSeconds(5));
 
         // Assert
-        ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
-        ArgumentCaptor<String> exchangeCaptor = ArgumentCaptor.forClass(String.class);
-        ArgumentCaptor<String> routingKeyCaptor = ArgumentCaptor.forClass(String.class);
+        InOrder inOrder = inOrder(operations);
+        inOrder.verify(operations).convertAndSend(eq(RabbitMQConfig.EXCHANGE), eq(RabbitMQConfig.ROUTING_KEY), eq(RabbitMQSender.messageOf(first)), any(MessagePostProcessor.class));
+        inOrder.verify(operations).convertAndSend(eq(RabbitMQConfig.EXCHANGE), eq(RabbitMQConfig.ROUTING_KEY), eq(RabbitMQSender.messageOf(second)), any(MessagePostProcessor.class));
+        inOrder.verify(operations).waitForConfirmsOrDie(5000);
+    }
 
-        verify(rabbitTemplate).convertAndSend(exchangeCaptor.capture(), routingKeyCaptor.capture(), messageCaptor.capture());
+    @Test
+    void sendOCRJobMessages_unconfirmedBatchFails() {
+        // Arrange
+        doThrow(new AmqpTimeoutException("no confirm")).when(operations).waitForConfirmsOrDie(anyLong());
 
-        assertEquals(RabbitMQConfig.EXCHANGE, exchangeCaptor.getValue());
-        assertEquals(RabbitMQConfig.ROUTING_KEY, routingKeyCaptor.getValue());
-        assertEquals(expectedMessage, messageCaptor.getValue());
+        // Act & Assert
+        assertThrows(AmqpTimeoutException.class, () -> rabbitMQSender.sendOCRJobMessages(
+                List.of(new OcrJobOutboxEntry("doc-1", "first.pdf", "object-1", "hash", 1024, 1)), Duration.ofSeconds(5)));
     }
 
     @Test
-    void sendOCRJobMessage_failure() {
+    void messageOf_escapesFilename() throws JSONException {
         // Arrange
-        String documentId = "123e4567-e89b-12d3-a456-426614174000";
-        String filename = "filename-test";
-        String expectedMessage = "{\"documentId\":\"" + documentId + "\", \"filename\":\"" + filename + "\"}";
-
-        doThrow(new RuntimeException("RabbitMQ error")).when(rabbitTemplate)
-                .convertAndSend(RabbitMQConfig.EXCHANGE, RabbitMQConfig.ROUTING_KEY, expectedMessage);
+        OcrJobOutboxEntry job = new OcrJobOutboxEntry("doc-1", "report \"final\".pdf", "object-1", "hash", 1024, 1);
 
         // Act
-        rabbitMQSender.sendOCRJobMessage(documentId, filename);
+        JSONObject message = new JSONObject(RabbitMQSender.messageOf(job));
 
         // Assert
-        verify(rabbitTemplate).convertAndSend(RabbitMQConfig.EXCHANGE, RabbitMQConfig.ROUTING_KEY, expectedMessage);
+        assertEquals("doc-1", message.getString("documentId"));
+        assertEquals("report \"final\".pdf", message.getString("filename"));
+        assertEquals("object-1", message.getString("objectKey"));
+        assertEquals("hash", message.getString("contentHash"));
+        assertEquals(1024, message.getLong("filesize"));
+        assertEquals(1, message.getInt("pageCount"));
+    }
+
+    @Test
+    void routingKeyOf_largeDocumentsGoToLargeLane() {
+        // Arrange
+        OcrJobOutboxEntry receipt = new OcrJobOutboxEntry("doc-1", "receipt.pdf", "doc-1", "hash", 50_000, 1);
+        OcrJobOutboxEntry scan = new OcrJobOutboxEntry("doc-2", "scan.pdf", "doc-2", "hash", 50_000_000, 500);
+        OcrJobOutboxEntry smallScanOfManyPages = new OcrJobOutboxEntry("doc-3", "pages.pdf", "doc-3", "hash", 1_000_000, 50);
+
+        // Act & Assert
+        assertEquals(RabbitMQConfig.ROUTING_KEY, rabbitMQSender.routingKeyOf(receipt));
+        assertEquals(RabbitMQConfig.LARGE_ROUTING_KEY, rabbitMQSender.routingKeyOf(scan));
+        assertEquals(RabbitMQConfig.LARGE_ROUTING_KEY, rabbitMQSender.routingKeyOf(smallScanOfManyPages));
+    }
+
+    @Test
+    void routingKeyOf_unknownPageCountFallsBackToSize() {
+        // Arrange
+        OcrJobOutboxEntry small = new OcrJobOutboxEntry("doc-1", "small.pdf", "doc-1", "hash", 1_000_000, 0);
+        OcrJobOutboxEntry large = new OcrJobOutboxEntry("doc-2", "large.pdf", "doc-2", "hash", DataSize.ofMegabytes(20).toBytes(), 0);
+
+        // Act & Assert
+        assertEquals(RabbitMQConfig.ROUTING_KEY, rabbitMQSender.routingKeyOf(small));
+        assertEquals(RabbitMQConfig.LARGE_ROUTING_KEY, rabbitMQSender.routingKeyOf(large));
     }
 }
@@ -0,0 +1,75 @@
+package at.technikum.paperlessrest.service;
+
+import at.technikum.paperlessrest.entities.DocumentContent;
+import at.technikum.paperlessrest.repository.DocumentContentRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DocumentContentServiceTest {
+
+    private final DocumentContentRepository documentContentRepository = mock(DocumentContentRepository.class);
+    private final DocumentContentService documentContentService = new DocumentContentService(documentContentRepository);
+
+    @Test
+    void acquire_newContent() {
+        // Arrange
+        when(documentContentRepository.findByIdForUpdate("hash")).thenReturn(Optional.empty());
+        when(documentContentRepository.saveAndFlush(any(DocumentContent.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        DocumentContent result = documentContentService.acquire("hash", "new-id");
+
+        // Assert
+        assertEquals("new-id", result.getObjectKey());
+        assertEquals(1, result.getReferenceCount());
+        verify(documentContentRepository).saveAndFlush(any(DocumentContent.class));
+    }
+
+    @Test
+    void acquire_existingContent() {
+        // Arrange
+        DocumentContent existing = new DocumentContent("hash", "original-id", 1);
+        when(documentContentRepository.findByIdForUpdate("hash")).thenReturn(Optional.of(existing));
+
+        // Act
+        DocumentContent result = documentContentService.acquire("hash", "new-id");
+
+        // Assert
+        assertEquals("original-id", result.getObjectKey());
+        assertEquals(2, result.getReferenceCount());
+        verify(documentContentRepository, never()).saveAndFlush(any(DocumentContent.class));
+    }
+
+    @Test
+    void release_stillReferenced() {
+        // Arrange
+        DocumentContent existing = new DocumentContent("hash", "original-id", 2);
+        when(documentContentRepository.findByIdForUpdate("hash")).thenReturn(Optional.of(existing));
+
+        // Act
+        boolean unreferenced = documentContentService.release("hash");
+
+        // Assert
+        assertFalse(unreferenced);
+        assertEquals(1, existing.getReferenceCount());
+        verify(documentContentRepository, never()).delete(any(DocumentContent.class));
+    }
+
+    @Test
+    void release_lastReference() {
+        // Arrange
+        DocumentContent existing = new DocumentContent("hash", "original-id", 1);
+        when(documentContentRepository.findByIdForUpdate("hash")).thenReturn(Optional.of(existing));
+
+        // Act
+        boolean unreferenced = documentContentService.release("hash");
+
+        // Assert
+        assertTrue(unreferenced);
+        verify(documentContentRepository).delete(existing);
+    }
+}
@@ -1,23 +1,49 @@
 package at.technikum.paperlessrest.service;
 
+import at.technikum.paperlessrest.customExceptions.InvalidFileUploadException;
 import at.technikum.paperlessrest.dto.DocumentDTO;
+import at.technikum.paperlessrest.dto.DocumentPageDTO;
+import at.technikum.paperlessrest.dto.DocumentPageRequestDTO;
+import at.technikum.paperlessrest.dto.DocumentSearchHitDTO;
+import at.technikum.paperlessrest.dto.SearchResultPageDTO;
 import at.technikum.paperlessrest.dto.DocumentSearchResultDTO;
+import at.technikum.paperlessrest.elastic.ElasticsearchIndexer;
 import at.technikum.paperlessrest.elastic.ElasticsearchSearcher;
+import at.technikum.paperlessrest.elastic.SearchCursor;
+import at.technikum.paperlessrest.elastic.SearchPage;
 import at.technikum.paperlessrest.entities.Document;
-import at.technikum.paperlessrest.rabbitmq.RabbitMQSender;
+import at.technikum.paperlessrest.entities.DocumentContent;
+import at.technikum.paperlessrest.metrics.DependencyTimer;
+import at.technikum.paperlessrest.repository.DocumentPageQuery;
 import at.technikum.paperlessrest.repository.DocumentRepository;
+import at.technikum.paperlessrest.repository.DocumentSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.minio.*;
 import io.minio.errors.*;
 import io.minio.messages.ErrorResponse;
 import okhttp3.Response;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -25,9 +51,22 @@ import static org.mockito.Mockito.*;
 class DocumentServiceTest {
     private final MinioClient minioClient = mock(MinioClient.class);
     private final DocumentRepository documentRepository = mock(DocumentRepository.class);
-    private final RabbitMQSender rabbitMQSender = mock(RabbitMQSender.class);
+    private final OcrJobOutbox ocrJobOutbox = mock(OcrJobOutbox.class);
     private final ElasticsearchSearcher elasticsearchSearcher = mock(ElasticsearchSearcher.class);
-    private final DocumentService documentService = new DocumentService(minioClient, documentRepository, rabbitMQSender, elasticsearchSearcher);
+    private final ElasticsearchIndexer elasticsearchIndexer = mock(ElasticsearchIndexer.class);
+    private final DocumentContentService documentContentService = mock(DocumentContentService.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final SearchResultCache searchResultCache = new SearchResultCache(new SimpleMeterRegistry(), DataSize.ofMegabytes(1), Duration.ofSeconds(30));
+    private final DocumentService documentService = new DocumentService(minioClient, documentRepository, ocrJobOutbox, elasticsearchSearcher,
+            elasticsearchIndexer, documentContentService, searchResultCache, new TransactionTemplate(transactionManager),
+            new DependencyTimer(new SimpleMeterRegistry()), DataSize.ofMegabytes(5), DataSize.ofBytes(64));
+
+    @BeforeEach
+    void setup() {
+        // By default every upload is new content stored under its own object
+        when(documentContentService.acquire(anyString(), anyString()))
+                .thenAnswer(invocation -> new DocumentContent(invocation.getArgument(0), invocation.getArgument(1), 1));
+    }
 
     @Test
     void uploadFile_success() throws Exception {
@@ -49,7 +88,6 @@ class DocumentServiceTest {
                 .build();
 
         when(documentRepository.save(any(Document.class))).thenReturn(new Document(document));
-        doNothing().when(rabbitMQSender).sendOCRJobMessage(anyString(), anyString());
         doAnswer(invocation -> null).when(minioClient).putObject(any(PutObjectArgs.class));
 
         // Act
@@ -60,7 +98,187 @@ class DocumentServiceTest {
         assertEquals(file.getOriginalFilename(), result.getFilename());
         verify(documentRepository).save(any(Document.class));
         verify(minioClient).putObject(any(PutObjectArgs.class));
-        verify(rabbitMQSender).sendOCRJobMessage(result.getId(), result.getFilename());
+        verify(ocrJobOutbox).enqueue(eq(result.getId()), eq(result.getFilename()), eq(result.getId()), anyString(), eq(result.getFilesize()), eq(0));
+    }
+
+    @Test
+    void uploadFile_streamCountsFilesize() throws Exception {
+        // Arrange
+        byte[] content = "Sample PDF content".getBytes();
+        doAnswer(invocation -> {
+            PutObjectArgs args = invocation.getArgument(0);
+            args.stream().readAllBytes();
+            return null;
+        }).when(minioClient).putObject(any(PutObjectArgs.class));
+
+        // Act
+        DocumentDTO result = documentService.uploadFile("test.pdf", "application/pdf", new ByteArrayInputStream(content));
+
+        // Assert
+        assertEquals(content.length, result.getFilesize());
+        verify(documentRepository).save(any(Document.class));
+        verify(elasticsearchIndexer).indexMetadata(result);
+        verify(ocrJobOutbox).enqueue(eq(result.getId()), eq("test.pdf"), eq(result.getId()), anyString(), eq(result.getFilesize()), eq(0));
+    }
+
+    @Test
+    void uploadFile_countsPagesForOcrJob() throws Exception {
+        // Arrange
+        // The test service accepts at most 64 bytes
+        String pdf = "<</Type/Pages/Count 2>><</Type /Page>><</Type/Page>>";
+        doAnswer(invocation -> {
+            PutObjectArgs args = invocation.getArgument(0);
+            args.stream().readAllBytes();
+            return null;
+        }).when(minioClient).putObject(any(PutObjectArgs.class));
+
+        // Act
+        DocumentDTO result = documentService.uploadFile("test.pdf", "application/pdf", new ByteArrayInputStream(pdf.getBytes(StandardCharsets.US_ASCII)));
+
+        // Assert
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(pdf.getBytes(StandardCharsets.US_ASCII)));
+        verify(ocrJobOutbox).enqueue(result.getId(), "test.pdf", result.getId(), sha256, pdf.length(), 2);
+    }
+
+    @Test
+    void uploadFile_searchIndexUnavailableStillStoresDocument() throws Exception {
+        // Arrange
+        doThrow(new IOException("Elasticsearch unavailable")).when(elasticsearchIndexer).indexMetadata(any(DocumentDTO.class));
+
+        // Act
+        DocumentDTO result = documentService.uploadFile("test.pdf", "application/pdf", new ByteArrayInputStream("Sample PDF content".getBytes()));
+
+        // Assert
+        verify(documentRepository).save(any(Document.class));
+        verify(ocrJobOutbox).enqueue(eq(result.getId()), eq("test.pdf"), eq(result.getId()), anyString(), eq(result.getFilesize()), eq(0));
+    }
+
+    @Test
+    void uploadFile_streamExceedsMaxSize() throws Exception {
+        // Arrange
+        byte[] content = new byte[128];
+        doAnswer(invocation -> {
+            PutObjectArgs args = invocation.getArgument(0);
+            args.stream().readAllBytes();
+            return null;
+        }).when(minioClient).putObject(any(PutObjectArgs.class));
+
+        // Act & Assert
+        assertThrows(InvalidFileUploadException.class,
+                () -> documentService.uploadFile("large.pdf", "application/pdf", new ByteArrayInputStream(content)));
+        verify(documentRepository, never()).save(any(Document.class));
+        verify(ocrJobOutbox, never()).enqueue(anyString(), anyString(), anyString(), anyString(), anyLong(), anyInt());
+    }
+
+    @Test
+    void uploadFile_duplicateReusesStoredObjectAndOcrText() throws Exception {
+        // Arrange
+        Document processedCopy = new Document("original-id", "original.pdf");
+        processedCopy.setOcrJobDone(true);
+
+        when(documentContentService.acquire(anyString(), anyString()))
+                .thenAnswer(invocation -> new DocumentContent(invocation.getArgument(0), "original-id", 2));
+        when(documentRepository.findFirstByContentHashAndOcrJobDoneTrue(anyString())).thenReturn(Optional.of(processedCopy));
+
+        // Act
+        DocumentDTO result = documentService.uploadFile("copy.pdf", "application/pdf", new ByteArrayInputStream("Sample PDF content".getBytes()));
+
+        // Assert
+        assertTrue(result.isOcrJobDone());
+        ArgumentCaptor<Document> documentCaptor = ArgumentCaptor.forClass(Document.class);
+        verify(documentRepository).save(documentCaptor.capture());
+        assertEquals("original-id", documentCaptor.getValue().getObjectKey());
+        assertNotNull(documentCaptor.getValue().getContentHash());
+
+        ArgumentCaptor<RemoveObjectArgs> removeCaptor = ArgumentCaptor.forClass(RemoveObjectArgs.class);
+        verify(minioClient).removeObject(removeCaptor.capture());
+        assertEquals(result.getId(), removeCaptor.getValue().object());
+        verify(elasticsearchIndexer).copyOcrText(eq("original-id"), argThat(copy -> copy.getId().equals(result.getId()) && "copy.pdf".equals(copy.getFilename())));
+        verify(elasticsearchIndexer, never()).indexMetadata(any(DocumentDTO.class));
+        verify(ocrJobOutbox, never()).enqueue(anyString(), anyString(), anyString(), anyString(), anyLong(), anyInt());
+    }
+
+    @Test
+    void uploadFile_duplicateOfPendingDocumentWaitsForItsOcr() throws Exception {
+        // Arrange
+        when(documentContentService.acquire(anyString(), anyString()))
+                .thenAnswer(invocation -> new DocumentContent(invocation.getArgument(0), "original-id", 2));
+        when(documentRepository.findFirstByContentHashAndOcrJobDoneTrue(anyString())).thenReturn(Optional.empty());
+
+        // Act
+        DocumentDTO result = documentService.uploadFile("copy.pdf", "application/pdf", new ByteArrayInputStream("Sample PDF content".getBytes()));
+
+        // Assert
+        assertFalse(result.isOcrJobDone());
+        verify(elasticsearchIndexer, never()).copyOcrText(anyString(), any(DocumentDTO.class));
+        verify(elasticsearchIndexer).indexMetadata(result);
+        verify(ocrJobOutbox, never()).enqueue(anyString(), anyString(), anyString(), anyString(), anyLong(), anyInt());
+    }
+
+    @Test
+    void uploadFile_saveFailsRollsBackReferenceAndRemovesUploadedObject() throws Exception {
+        // Arrange
+        ArgumentCaptor<PutObjectArgs> putCaptor = ArgumentCaptor.forClass(PutObjectArgs.class);
+        when(documentRepository.save(any(Document.class))).thenThrow(new DataAccessResourceFailureException("Database unavailable"));
+
+        // Act & Assert
+        assertThrows(DataAccessResourceFailureException.class,
+                () -> documentService.uploadFile("test.pdf", "application/pdf", new ByteArrayInputStream("Sample PDF content".getBytes())));
+        verify(minioClient).putObject(putCaptor.capture());
+        // The reference is acquired in the same transaction as the save, so it is rolled back with it
+        verify(documentContentService).acquire(anyString(), eq(putCaptor.getValue().object()));
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+        ArgumentCaptor<RemoveObjectArgs> removeCaptor = ArgumentCaptor.forClass(RemoveObjectArgs.class);
+        verify(minioClient).removeObject(removeCaptor.capture());
+        assertEquals(putCaptor.getValue().object(), removeCaptor.getValue().object());
+        verify(ocrJobOutbox, never()).enqueue(anyString(), anyString(), anyString(), anyString(), anyLong(), anyInt());
+    }
+
+    @Test
+    void uploadFile_saveFailsRemovesIndexedMetadata() throws Exception {
+        // Arrange
+        when(documentRepository.save(any(Document.class))).thenThrow(new DataAccessResourceFailureException("Database unavailable"));
+
+        // Act & Assert
+        assertThrows(DataAccessResourceFailureException.class,
+                () -> documentService.uploadFile("test.pdf", "application/pdf", new ByteArrayInputStream("Sample PDF content".getBytes())));
+        ArgumentCaptor<DocumentDTO> indexedCaptor = ArgumentCaptor.forClass(DocumentDTO.class);
+        verify(elasticsearchIndexer).indexMetadata(indexedCaptor.capture());
+        verify(elasticsearchIndexer).deleteDocument(indexedCaptor.getValue().getId());
+    }
+
+    @Test
+    void uploadFile_acquireFailsRemovesUploadedObject() throws Exception {
+        // Arrange
+        when(documentContentService.acquire(anyString(), anyString())).thenThrow(new DataAccessResourceFailureException("Database unavailable"));
+
+        // Act & Assert
+        assertThrows(DataAccessResourceFailureException.class,
+                () -> documentService.uploadFile("test.pdf", "application/pdf", new ByteArrayInputStream("Sample PDF content".getBytes())));
+        verify(minioClient).removeObject(any(RemoveObjectArgs.class));
+        verify(documentRepository, never()).save(any(Document.class));
+    }
+
+    @Test
+    void uploadFile_concurrentFirstUploadIsRetriedAsDuplicate() throws Exception {
+        // Arrange
+        when(documentContentService.acquire(anyString(), anyString()))
+                .thenThrow(new DataIntegrityViolationException("duplicate key"))
+                .thenAnswer(invocation -> new DocumentContent(invocation.getArgument(0), "original-id", 2));
+
+        // Act
+        DocumentDTO result = documentService.uploadFile("copy.pdf", "application/pdf", new ByteArrayInputStream("Sample PDF content".getBytes()));
+
+        // Assert
+        verify(transactionManager).rollback(any());
+        verify(transactionManager).commit(any());
+        ArgumentCaptor<Document> documentCaptor = ArgumentCaptor.forClass(Document.class);
+        verify(documentRepository).save(documentCaptor.capture());
+        assertEquals("original-id", documentCaptor.getValue().getObjectKey());
+        ArgumentCaptor<RemoveObjectArgs> removeCaptor = ArgumentCaptor.forClass(RemoveObjectArgs.class);
+        verify(minioClient).removeObject(removeCaptor.capture());
+        assertEquals(result.getId(), removeCaptor.getValue().object());
     }
 
     @Test
@@ -79,7 +297,7 @@ class DocumentServiceTest {
         assertEquals("Only PDF files are allowed.", exception.getMessage());
         verify(documentRepository, never()).save(any(Document.class));
         verify(minioClient, never()).putObject(any(PutObjectArgs.class));
-        verify(rabbitMQSender, never()).sendOCRJobMessage(anyString(), anyString());
+        verify(ocrJobOutbox, never()).enqueue(anyString(), anyString(), anyString(), anyString(), anyLong(), anyInt());
     }
 
     @Test
@@ -108,7 +326,7 @@ class DocumentServiceTest {
         // Arrange
         String documentId = UUID.randomUUID().toString();
 
-        when(documentRepository.existsById(documentId)).thenReturn(true);
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(new Document(documentId, "test.pdf")));
         doNothing().when(documentRepository).deleteById(documentId);
         doNothing().when(minioClient).removeObject(any(RemoveObjectArgs.class));
 
@@ -117,15 +335,117 @@ class DocumentServiceTest {
 
         // Assert
         verify(documentRepository).deleteById(documentId);
+        verify(elasticsearchIndexer).deleteDocument(documentId);
         verify(minioClient).removeObject(any(RemoveObjectArgs.class));
     }
 
+    @Test
+    void deleteDocument_contentStillReferenced() throws Exception {
+        // Arrange
+        String documentId = UUID.randomUUID().toString();
+        Document document = new Document(documentId, "copy.pdf");
+        document.setContentHash("hash");
+        document.setObjectKey("original-id");
+        document.setOcrJobDone(true);
+
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document));
+        when(documentContentService.release("hash")).thenReturn(false);
+
+        // Act
+        documentService.deleteDocument(documentId);
+
+        // Assert
+        verify(documentRepository).deleteById(documentId);
+        verify(minioClient, never()).removeObject(any(RemoveObjectArgs.class));
+    }
+
+    @Test
+    void deleteDocument_releaseFailureRollsBackDelete() throws Exception {
+        // Arrange
+        String documentId = UUID.randomUUID().toString();
+        Document document = new Document(documentId, "test.pdf");
+        document.setContentHash("hash");
+
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document));
+        when(documentContentService.release("hash")).thenThrow(new DataAccessResourceFailureException("down"));
+
+        // Act & Assert
+        assertThrows(DataAccessResourceFailureException.class, () -> documentService.deleteDocument(documentId));
+        verify(documentRepository).deleteById(documentId);
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+        verify(minioClient, never()).removeObject(any(RemoveObjectArgs.class));
+    }
+
+    @Test
+    void deleteDocument_handsQueuedOcrJobToPendingCopy() throws Exception {
+        // Arrange
+        String documentId = UUID.randomUUID().toString();
+        Document document = new Document(documentId, "scan.pdf");
+        document.setContentHash("hash");
+        document.setObjectKey(documentId);
+        Document pendingCopy = new Document("copy-id", "copy.pdf");
+        pendingCopy.setContentHash("hash");
+
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document));
+        when(documentContentService.release("hash")).thenReturn(false);
+        when(documentRepository.findByContentHashAndOcrJobDoneFalse("hash")).thenReturn(List.of(document, pendingCopy));
+
+        // Act
+        documentService.deleteDocument(documentId);
+
+        // Assert
+        verify(ocrJobOutbox).reassign(documentId, "copy-id", "copy.pdf");
+        verify(ocrJobOutbox, never()).enqueue(anyString(), anyString(), anyString(), anyString(), anyLong(), anyInt());
+        verify(transactionManager).commit(any());
+        verify(minioClient, never()).removeObject(any(RemoveObjectArgs.class));
+    }
+
+    @Test
+    void deleteDocument_finishedDocumentHandsNothingOver() throws Exception {
+        // Arrange
+        String documentId = UUID.randomUUID().toString();
+        Document document = new Document(documentId, "scan.pdf");
+        document.setContentHash("hash");
+        document.setOcrJobDone(true);
+
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document));
+        when(documentContentService.release("hash")).thenReturn(false);
+
+        // Act
+        documentService.deleteDocument(documentId);
+
+        // Assert
+        verify(documentRepository, never()).findByContentHashAndOcrJobDoneFalse(anyString());
+        verify(ocrJobOutbox, never()).reassign(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void deleteDocument_lastReferenceRemovesSharedObject() throws Exception {
+        // Arrange
+        String documentId = UUID.randomUUID().toString();
+        Document document = new Document(documentId, "copy.pdf");
+        document.setContentHash("hash");
+        document.setObjectKey("original-id");
+
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document));
+        when(documentContentService.release("hash")).thenReturn(true);
+
+        // Act
+        documentService.deleteDocument(documentId);
+
+        // Assert
+        ArgumentCaptor<RemoveObjectArgs> argsCaptor = ArgumentCaptor.forClass(RemoveObjectArgs.class);
+        verify(minioClient).removeObject(argsCaptor.capture());
+        assertEquals("original-id", argsCaptor.getValue().object());
+    }
+
     @Test
     void deleteDocument_notFound() throws ServerException, InsufficientDataException, ErrorResponseException, IOException, NoSuchAlgorithmException, InvalidKeyException, InvalidResponseException, XmlParserException, InternalException {
         // Arrange
         String documentId = UUID.randomUUID().toString();
 
-        when(documentRepository.existsById(documentId)).thenReturn(false);
+        when(documentRepository.findById(documentId)).thenReturn(Optional.empty());
 
         // Act & Assert
         IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> documentService.deleteDocument(documentId));
@@ -139,37 +459,52 @@ class DocumentServiceTest {
     void deleteDocument_minioDeletionFails() throws Exception {
         // Arrange
         String documentId = UUID.randomUUID().toString();
-        when(documentRepository.existsById(documentId)).thenReturn(true);
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(new Document(documentId, "test.pdf")));
         doThrow(new RuntimeException("Deletion failed"))
                 .when(minioClient).removeObject(any(RemoveObjectArgs.class));
 
         // Act & Assert
         RuntimeException exception = assertThrows(RuntimeException.class, () -> documentService.deleteDocument(documentId));
         assertEquals("Deletion failed", exception.getMessage());
-        verify(documentRepository).existsById(documentId);
+        verify(documentRepository).findById(documentId);
         verify(minioClient).removeObject(any(RemoveObjectArgs.class));
     }
 
     @Test
-    void getDocumentFileById_success() throws Exception {
+    void getDocumentFileStream_success() throws Exception {
         // Arrange
         String documentId = UUID.randomUUID().toString();
-        byte[] fileContent = "Sample PDF content".getBytes();
         GetObjectResponse getObjectResponse = mock(GetObjectResponse.class);
 
-        when(getObjectResponse.readAllBytes()).thenReturn(fileContent);
         when(minioClient.getObject(any(GetObjectArgs.class))).thenReturn(getObjectResponse);
 
         // Act
-        byte[] result = documentService.getDocumentFileById(documentId);
+        InputStream result = documentService.getDocumentFileStream(documentId);
 
         // Assert
-        assertArrayEquals(fileContent, result);
+        assertSame(getObjectResponse, result);
         verify(minioClient).getObject(any(GetObjectArgs.class));
+        verify(getObjectResponse, never()).readAllBytes();
     }
 
     @Test
-    void getDocumentFileById_notFound() throws Exception {
+    void getDocumentFileStream_range() throws Exception {
+        // Arrange
+        String documentId = UUID.randomUUID().toString();
+        when(minioClient.getObject(any(GetObjectArgs.class))).thenReturn(mock(GetObjectResponse.class));
+
+        // Act
+        documentService.getDocumentFileStream(documentId, 100, 50);
+
+        // Assert
+        ArgumentCaptor<GetObjectArgs> argsCaptor = ArgumentCaptor.forClass(GetObjectArgs.class);
+        verify(minioClient).getObject(argsCaptor.capture());
+        assertEquals(100L, argsCaptor.getValue().offset());
+        assertEquals(50L, argsCaptor.getValue().length());
+    }
+
+    @Test
+    void getDocumentFileStream_notFound() throws Exception {
         // Arrange
         String documentId = UUID.randomUUID().toString();
         ErrorResponse errorResponse = new ErrorResponse("NoSuchKey error", "Error message", null, null, null, null, null);
@@ -179,55 +514,92 @@ class DocumentServiceTest {
                 .thenThrow(new ErrorResponseException(errorResponse, response, "NoSuchKey error"));
 
         // Act & Assert
-        Exception exception = assertThrows(ErrorResponseException.class, () -> documentService.getDocumentFileById(documentId));
+        Exception exception = assertThrows(ErrorResponseException.class, () -> documentService.getDocumentFileStream(documentId));
 
         assertNotNull(exception.getMessage());
         verify(minioClient).getObject(any(GetObjectArgs.class));
     }
 
     @Test
-    void getDocumentFileById_minioFails() throws Exception {
+    void getDocumentFileStream_minioFails() throws Exception {
         // Arrange
         String documentId = UUID.randomUUID().toString();
         when(minioClient.getObject(any(GetObjectArgs.class))).thenThrow(new RuntimeException("MinIO error"));
 
         // Act & Assert
-        RuntimeException exception = assertThrows(RuntimeException.class, () -> documentService.getDocumentFileById(documentId));
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> documentService.getDocumentFileStream(documentId));
         assertEquals("MinIO error", exception.getMessage());
         verify(minioClient).getObject(any(GetObjectArgs.class));
     }
 
     @Test
-    void getAllDocuments_success() {
+    void getDocuments_success() {
         // Arrange
-        DocumentDTO document1 = DocumentDTO.builder().id("1").filename("doc1.pdf").build();
-        DocumentDTO document2 = DocumentDTO.builder().id("2").filename("doc2.pdf").build();
+        LocalDateTime now = LocalDateTime.now();
+        DocumentSummary document1 = new DocumentSummary("1", "doc1.pdf", 10, "application/pdf", now, true, null, null);
+        DocumentSummary document2 = new DocumentSummary("2", "doc2.pdf", 20, "application/pdf", now.minusDays(1), false, null, null);
 
-        when(documentRepository.findAll()).thenReturn(List.of(new Document(document1), new Document(document2)));
+        when(documentRepository.findPage(any(DocumentPageQuery.class))).thenReturn(List.of(document1, document2));
 
         // Act
-        List<DocumentDTO> result = documentService.getAllDocuments();
+        DocumentPageDTO result = documentService.getDocuments(DocumentPageRequestDTO.builder().limit(5).build());
 
         // Assert
-        assertEquals(2, result.size());
-        verify(documentRepository).findAll();
-        assertEquals(document1.getId(), result.get(0).getId());
-        assertEquals(document2.getId(), result.get(1).getId());
+        assertEquals(2, result.getDocuments().size());
+        assertEquals(document1.id(), result.getDocuments().get(0).getId());
+        assertEquals(document2.id(), result.getDocuments().get(1).getId());
+        assertNull(result.getNextCursor());
+        verify(documentRepository, never()).findAll();
     }
 
     @Test
-    void getAllDocuments_noDocumentsFound() throws Exception {
+    void getDocuments_nextCursorRoundTrip() {
         // Arrange
-        when(documentRepository.findAll()).thenReturn(Collections.emptyList());
+        LocalDateTime now = LocalDateTime.now();
+        DocumentSummary document1 = new DocumentSummary("1", "doc1.pdf", 10, "application/pdf", now, true, null, null);
+        DocumentSummary document2 = new DocumentSummary("2", "doc2.pdf", 20, "application/pdf", now.minusDays(1), false, null, null);
+
+        when(documentRepository.findPage(any(DocumentPageQuery.class))).thenReturn(List.of(document1, document2));
 
         // Act
-        List<DocumentDTO> result = documentService.getAllDocuments();
+        DocumentPageDTO firstPage = documentService.getDocuments(DocumentPageRequestDTO.builder().limit(1).build());
+        documentService.getDocuments(DocumentPageRequestDTO.builder().limit(1).cursor(firstPage.getNextCursor()).build());
 
         // Assert
-        assertNotNull(result);
-        assertTrue(result.isEmpty());
-        verify(documentRepository).findAll();
-        verify(minioClient, never()).getObject(any(GetObjectArgs.class));
+        assertEquals(1, firstPage.getDocuments().size());
+        assertNotNull(firstPage.getNextCursor());
+
+        ArgumentCaptor<DocumentPageQuery> queryCaptor = ArgumentCaptor.forClass(DocumentPageQuery.class);
+        verify(documentRepository, times(2)).findPage(queryCaptor.capture());
+        DocumentPageQuery secondQuery = queryCaptor.getAllValues().get(1);
+        assertEquals("1", secondQuery.getAfterId());
+        assertEquals(now, secondQuery.getAfterValue());
+        assertEquals(2, secondQuery.getLimit());
+    }
+
+    @Test
+    void getDocuments_cursorForOtherSortRejected() {
+        // Arrange
+        LocalDateTime now = LocalDateTime.now();
+        DocumentSummary document1 = new DocumentSummary("1", "doc1.pdf", 10, "application/pdf", now, true, null, null);
+        DocumentSummary document2 = new DocumentSummary("2", "doc2.pdf", 20, "application/pdf", now, true, null, null);
+        when(documentRepository.findPage(any(DocumentPageQuery.class))).thenReturn(List.of(document1, document2));
+        String cursor = documentService.getDocuments(DocumentPageRequestDTO.builder().limit(1).build()).getNextCursor();
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class,
+                () -> documentService.getDocuments(DocumentPageRequestDTO.builder().limit(1).sort("filesize").cursor(cursor).build()));
+        assertThrows(IllegalArgumentException.class,
+                () -> documentService.getDocuments(DocumentPageRequestDTO.builder().cursor("not-a-cursor").build()));
+    }
+
+    @Test
+    void getDocuments_invalidParameters() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> documentService.getDocuments(DocumentPageRequestDTO.builder().limit(0).build()));
+        assertThrows(IllegalArgumentException.class, () -> documentService.getDocuments(DocumentPageRequestDTO.builder().sort("file").build()));
+        assertThrows(IllegalArgumentException.class, () -> documentService.getDocuments(DocumentPageRequestDTO.builder().direction("sideways").build()));
+        verify(documentRepository, never()).findPage(any(DocumentPageQuery.class));
     }
 
     @Test
@@ -235,16 +607,118 @@ class DocumentServiceTest {
         // Arrange
         String query = "test";
 
-        DocumentSearchResultDTO elasticResult = new DocumentSearchResultDTO("1", "text", "filename", "filetype", 1, true, null, "timestamp");
-        when(elasticsearchSearcher.searchDocuments(query)).thenReturn(List.of(elasticResult));
+        LocalDateTime uploadDate = LocalDateTime.of(2024, 1, 15, 10, 30);
+        DocumentSearchResultDTO elasticResult = new DocumentSearchResultDTO("1", null, "filename", "application/pdf", 42, true, uploadDate, "timestamp",
+                List.of("<mark>test</mark> snippet"), null, null);
+        when(elasticsearchSearcher.searchDocuments(query, 50, null))
+                .thenReturn(new SearchPage(List.of(elasticResult), new SearchCursor("pit", 1.5, 7)));
+
+        // Act
+        SearchResultPageDTO page = documentService.searchDocuments(query, null, 50);
+
+        // Assert
+        assertEquals(1, page.getDocuments().size());
+        DocumentSearchHitDTO result = page.getDocuments().get(0);
+        assertEquals(elasticResult.getDocumentId(), result.getId());
+        assertEquals(List.of("<mark>test</mark> snippet"), result.getSnippets());
+        assertEquals("filename", result.getFilename());
+        assertEquals("application/pdf", result.getFiletype());
+        assertEquals(42, result.getFilesize());
+        assertEquals(uploadDate, result.getUploadDate());
+        assertTrue(result.isOcrJobDone());
+        assertNotNull(page.getNextCursor());
+        verify(elasticsearchSearcher).searchDocuments(query, 50, null);
+        verifyNoInteractions(documentRepository);
+    }
+
+    @Test
+    void searchDocuments_runningJobCarriesProgress() {
+        // Arrange
+        DocumentSearchResultDTO elasticResult = new DocumentSearchResultDTO("1", null, "scan.pdf", "application/pdf", 42, false, null, "timestamp",
+                List.of("<mark>test</mark>"), 12, 500);
+        when(elasticsearchSearcher.searchDocuments("test", 50, null)).thenReturn(new SearchPage(List.of(elasticResult), null));
+
+        // Act
+        DocumentSearchHitDTO result = documentService.searchDocuments("test", null, 50).getDocuments().get(0);
+
+        // Assert
+        assertFalse(result.isOcrJobDone());
+        assertEquals(12, result.getOcrPagesDone());
+        assertEquals(500, result.getOcrPageCount());
+    }
+
+    @Test
+    void searchDocuments_repeatedQueryServedFromCache() {
+        // Arrange
+        when(elasticsearchSearcher.searchDocuments("invoice 2024", 50, null)).thenReturn(new SearchPage(List.of(), null));
 
         // Act
-        List<DocumentDTO> results = documentService.searchDocuments(query);
+        documentService.searchDocuments("invoice 2024", null, 50);
+        documentService.searchDocuments("  Invoice   2024 ", null, 50);
 
         // Assert
-        assertEquals(1, results.size());
-        assertEquals(elasticResult.getDocumentId(), results.get(0).getId());
-        verify(elasticsearchSearcher).searchDocuments(query);
+        verify(elasticsearchSearcher, times(1)).searchDocuments("invoice 2024", 50, null);
+    }
+
+    @Test
+    void searchDocuments_cachedHitsSurviveUploadsNotYetSearchable() throws Exception {
+        // Arrange
+        MockMultipartFile file = new MockMultipartFile("file", "new.pdf", "application/pdf", "Sample PDF content".getBytes());
+        when(documentRepository.save(any(Document.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(elasticsearchSearcher.searchDocuments("invoice", 50, null)).thenReturn(new SearchPage(List.of(), null));
+
+        // Act
+        documentService.searchDocuments("invoice", null, 50);
+        documentService.uploadFile(file);
+        documentService.uploadFile(new MockMultipartFile("file", "other.pdf", "application/pdf", "Other PDF content".getBytes()));
+        documentService.searchDocuments("invoice", null, 50);
+
+        // Assert
+        verify(ocrJobOutbox, times(2)).enqueue(anyString(), anyString(), anyString(), anyString(), anyLong(), anyInt());
+        verify(elasticsearchSearcher, times(1)).searchDocuments("invoice", 50, null);
+    }
+
+    @Test
+    void searchDocuments_cacheInvalidatedByDelete() throws Exception {
+        // Arrange
+        String documentId = UUID.randomUUID().toString();
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(new Document(documentId, "test.pdf")));
+        when(elasticsearchSearcher.searchDocuments("test", 50, null)).thenReturn(new SearchPage(List.of(), null));
+
+        // Act
+        documentService.searchDocuments("test", null, 50);
+        documentService.deleteDocument(documentId);
+        documentService.searchDocuments("test", null, 50);
+
+        // Assert
+        verify(elasticsearchSearcher, times(2)).searchDocuments("test", 50, null);
+    }
+
+    @Test
+    void searchDocuments_cursorRoundTrip() {
+        // Arrange
+        String query = "test";
+        when(elasticsearchSearcher.searchDocuments(eq(query), eq(10), any()))
+                .thenReturn(new SearchPage(List.of(), new SearchCursor("pit", 1.5, 7)))
+                .thenReturn(new SearchPage(List.of(), null));
+        String cursor = documentService.searchDocuments(query, null, 10).getNextCursor();
+
+        // Act
+        SearchResultPageDTO page = documentService.searchDocuments(query, cursor, 10);
+
+        // Assert
+        assertNull(page.getNextCursor());
+        verify(elasticsearchSearcher).searchDocuments(query, 10, new SearchCursor("pit", 1.5, 7));
+    }
+
+    @Test
+    void searchDocuments_rejectsInvalidRequest() {
+        String cursor = Base64.getUrlEncoder().encodeToString("{\"query\":\"other\",\"pit\":\"p\",\"score\":1,\"doc\":1}".getBytes());
+
+        assertThrows(IllegalArgumentException.class, () -> documentService.searchDocuments("test", null, 0));
+        assertThrows(IllegalArgumentException.class, () -> documentService.searchDocuments("test", "not-a-cursor", 10));
+        assertThrows(IllegalArgumentException.class, () -> documentService.searchDocuments("test", cursor, 10));
+        verifyNoInteractions(elasticsearchSearcher);
     }
 
     @Test
@@ -252,15 +726,16 @@ class DocumentServiceTest {
         // Arrange
         String query = "unknown";
 
-        when(elasticsearchSearcher.searchDocuments(query)).thenReturn(Collections.emptyList());
+        when(elasticsearchSearcher.searchDocuments(query, 50, null)).thenReturn(new SearchPage(Collections.emptyList(), null));
 
         // Act
-        List<DocumentDTO> results = documentService.searchDocuments(query);
+        SearchResultPageDTO page = documentService.searchDocuments(query, null, 50);
 
         // Assert
-        assertNotNull(results);
-        assertTrue(results.isEmpty());
-        verify(elasticsearchSearcher).searchDocuments(query);
+        assertNotNull(page.getDocuments());
+        assertTrue(page.getDocuments().isEmpty());
+        assertNull(page.getNextCursor());
+        verify(elasticsearchSearcher).searchDocuments(query, 50, null);
     }
 
     @Test
@@ -268,11 +743,30 @@ class DocumentServiceTest {
         // Arrange
         String query = "error";
 
-        when(elasticsearchSearcher.searchDocuments(query)).thenThrow(new RuntimeException("Elasticsearch error"));
+        when(elasticsearchSearcher.searchDocuments(query, 50, null)).thenThrow(new RuntimeException("Elasticsearch error"));
 
         // Act & Assert
-        RuntimeException exception = assertThrows(RuntimeException.class, () -> documentService.searchDocuments(query));
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> documentService.searchDocuments(query, null, 50));
         assertEquals("Elasticsearch error", exception.getMessage());
-        verify(elasticsearchSearcher).searchDocuments(query);
+        verify(elasticsearchSearcher).searchDocuments(query, 50, null);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void exportSearchResultIds_writesOneJsonLinePerDocument() throws Exception {
+        // Arrange
+        doAnswer(invocation -> {
+            Consumer<String> consumer = invocation.getArgument(1);
+            consumer.accept("1");
+            consumer.accept("2");
+            return null;
+        }).when(elasticsearchSearcher).forEachMatchingId(eq("test"), any(Consumer.class));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        documentService.exportSearchResultIds("test", out);
+
+        // Assert
+        assertEquals("{\"documentId\":\"1\"}\n{\"documentId\":\"2\"}\n", out.toString(StandardCharsets.UTF_8));
     }
 }
@@ -0,0 +1,70 @@
+package at.technikum.paperlessrest.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PageCountingInputStreamTest {
+
+    private static int countPages(String pdf, int chunkSize) throws IOException {
+        PageCountingInputStream in = new PageCountingInputStream(new ByteArrayInputStream(pdf.getBytes(StandardCharsets.ISO_8859_1)));
+        byte[] buffer = new byte[chunkSize];
+        while (in.read(buffer, 0, chunkSize) != -1) {
+            // The count is taken while reading
+        }
+        return in.getPageCount();
+    }
+
+    @Test
+    void countsPageDictionariesButNotPageTree() throws IOException {
+        // Arrange
+        String pdf = "1 0 obj << /Type /Pages /Kids [2 0 R 3 0 R 4 0 R] /Count 3 >> endobj "
+                + "2 0 obj << /Type /Page >> endobj "
+                + "3 0 obj <</Type/Page/Parent 1 0 R>> endobj "
+                + "4 0 obj << /Type\n/Page\n/Parent 1 0 R >> endobj";
+
+        // Act & Assert
+        assertEquals(3, countPages(pdf, 8192));
+    }
+
+    @Test
+    void countsAcrossReadBoundaries() throws IOException {
+        // Arrange
+        String pdf = "<< /Type /Page >> << /Type /Pages >> << /Type /Page >>";
+
+        // Act & Assert
+        assertEquals(2, countPages(pdf, 1));
+        assertEquals(2, countPages(pdf, 3));
+    }
+
+    @Test
+    void pageNameAtEndOfStream() throws IOException {
+        // Act & Assert
+        assertEquals(1, countPages("/Type /Page", 4));
+    }
+
+    @Test
+    void singleByteReads() throws IOException {
+        // Arrange
+        InputStream in = new PageCountingInputStream(new ByteArrayInputStream("<</Type /Page>>".getBytes(StandardCharsets.US_ASCII)));
+
+        // Act
+        while (in.read() != -1) {
+            // The count is taken while reading
+        }
+
+        // Assert
+        assertEquals(1, ((PageCountingInputStream) in).getPageCount());
+    }
+
+    @Test
+    void compressedObjectStreamsAreUnknown() throws IOException {
+        // Act & Assert
+        assertEquals(0, countPages("<< /Type /ObjStm /N 3 /Filter /FlateDecode >> stream x\u009cí endstream", 16));
+    }
+}
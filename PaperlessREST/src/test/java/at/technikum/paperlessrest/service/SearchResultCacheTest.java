@@ -0,0 +1,68 @@
+package at.technikum.paperlessrest.service;
+
+import at.technikum.paperlessrest.dto.DocumentSearchHitDTO;
+import at.technikum.paperlessrest.dto.SearchResultPageDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchResultCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SearchResultCache searchResultCache = new SearchResultCache(meterRegistry, DataSize.ofMegabytes(1), Duration.ofMinutes(1));
+
+    @Test
+    void get_loadsOncePerKey() {
+        // Arrange
+        AtomicInteger loads = new AtomicInteger();
+        SearchResultPageDTO page = new SearchResultPageDTO(List.of(new DocumentSearchHitDTO()), null);
+
+        // Act
+        searchResultCache.get("invoice", null, 50, () -> { loads.incrementAndGet(); return page; });
+        SearchResultPageDTO cached = searchResultCache.get("invoice", null, 50, () -> { loads.incrementAndGet(); return page; });
+        searchResultCache.get("invoice", null, 10, () -> { loads.incrementAndGet(); return page; });
+
+        // Assert
+        assertSame(page, cached);
+        assertEquals(2, loads.get());
+        assertEquals(1.0 / 3, meterRegistry.get("cache.hit.ratio").tag("cache", SearchResultCache.CACHE_NAME).gauge().value(), 1e-9);
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void invalidate_dropsCachedPages() {
+        // Arrange
+        AtomicInteger loads = new AtomicInteger();
+        SearchResultPageDTO page = new SearchResultPageDTO(List.of(), null);
+        searchResultCache.get("invoice", null, 50, () -> { loads.incrementAndGet(); return page; });
+
+        // Act
+        searchResultCache.invalidate();
+        searchResultCache.get("invoice", null, 50, () -> { loads.incrementAndGet(); return page; });
+
+        // Assert
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_failedLoadIsNotCached() {
+        // Arrange
+        AtomicInteger loads = new AtomicInteger();
+
+        // Act
+        assertThrows(IllegalArgumentException.class, () -> searchResultCache.get("invoice", "bad", 50, () -> {
+            loads.incrementAndGet();
+            throw new IllegalArgumentException("Invalid cursor");
+        }));
+        searchResultCache.get("invoice", "bad", 50, () -> { loads.incrementAndGet(); return new SearchResultPageDTO(List.of(), null); });
+
+        // Assert
+        assertEquals(2, loads.get());
+    }
+}
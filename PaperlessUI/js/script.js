@@ -5,6 +5,9 @@ document.addEventListener("DOMContentLoaded", () => {
   const searchButton = document.getElementById("search-button");
   const searchInput = document.getElementById("search-input");
   const tableBody = document.getElementById("documents-table-body");
+  const loadMoreButton = document.getElementById("load-more-button");
+  const pageSize = 50;
+  let nextCursor = null;
 
   // Handle file upload
   uploadButton.addEventListener("click", () => fileInput.click());
@@ -13,23 +16,27 @@ document.addEventListener("DOMContentLoaded", () => {
     if (fileInput.files.length > 0) {
       const file = fileInput.files[0];
       if (file.type === "application/pdf") {
-        const formData = new FormData();
-        formData.append("file", file);
-
         loader.style.display = "flex";
-        uploadDocument(formData);
+        uploadDocument(file);
       } else {
         alert("Only PDF files are allowed.");
       }
     }
   });
 
-  const uploadDocument = async (formData) => {
+  // Stream the raw PDF body so the server never buffers the whole file
+  const uploadDocument = async (file) => {
     try {
-      const response = await fetch("http://localhost:8081/api/documents", {
-        method: "POST",
-        body: formData,
-      });
+      const response = await fetch(
+        `http://localhost:8081/api/documents?filename=${encodeURIComponent(
+          file.name
+        )}`,
+        {
+          method: "POST",
+          headers: { "Content-Type": "application/pdf" },
+          body: file,
+        }
+      );
 
       if (response.ok) {
         alert("Document uploaded successfully!");
@@ -44,34 +51,37 @@ document.addEventListener("DOMContentLoaded", () => {
     }
   };
 
-  // Load all documents
-  const loadDocuments = async () => {
+  // Load the first page of documents, or the next one when a cursor is given
+  const loadDocuments = (cursor = null) =>
+    loadPage(`http://localhost:8081/api/documents`, {}, cursor);
+
+  // Search documents, paging through the results like the document list
+  const searchDocuments = (query, cursor = null) =>
+    loadPage(`http://localhost:8081/api/documents/search`, { query }, cursor);
+
+  let loadNextPage = null;
+
+  const loadPage = async (url, filters, cursor) => {
     try {
-      const response = await fetch("http://localhost:8081/api/documents");
+      const params = new URLSearchParams({ ...filters, limit: pageSize });
+      if (cursor) params.set("cursor", cursor);
+      const response = await fetch(`${url}?${params}`);
       if (!response.ok) throw new Error("Failed to fetch documents.");
-      const documents = await response.json();
-      renderTable(documents);
+      const page = await response.json();
+      if (cursor) {
+        appendRows(page.documents);
+      } else {
+        renderTable(page.documents);
+      }
+      nextCursor = page.nextCursor;
+      loadNextPage = () => loadPage(url, filters, nextCursor);
+      loadMoreButton.style.display = nextCursor ? "inline-block" : "none";
     } catch (error) {
       console.error("Error loading documents:", error);
     }
   };
 
-  // Search function for documents
-  const searchDocuments = async (query) => {
-    try {
-      const response = await fetch(
-        `http://localhost:8081/api/documents/search?query=${encodeURIComponent(
-          query
-        )}`
-      );
-      if (!response.ok) throw new Error("Failed to search documents.");
-
-      const documents = await response.json();
-      renderTable(documents);
-    } catch (error) {
-      console.error("Error searching documents:", error);
-    }
-  };
+  loadMoreButton.addEventListener("click", () => loadNextPage && loadNextPage());
 
   // Event listener for search button
   searchButton.addEventListener("click", () => {
@@ -86,12 +96,25 @@ document.addEventListener("DOMContentLoaded", () => {
   // Function to render documents table
   const renderTable = (documents) => {
     tableBody.innerHTML = "";
-    documents.forEach((document) => {
-      tableBody.innerHTML += createTableRow(document);
-    });
+    appendRows(documents);
+  };
+
+  const appendRows = (documents) => {
+    tableBody.insertAdjacentHTML(
+      "beforeend",
+      documents.map(createTableRow).join("")
+    );
   };
   
 
+  // Search hits carry highlighted OCR text fragments, already HTML-escaped by the server
+  const renderSnippets = (snippets) =>
+    snippets && snippets.length
+      ? `<div class="small text-muted">${snippets
+          .map((snippet) => `&hellip;${snippet}&hellip;`)
+          .join("<br>")}</div>`
+      : "";
+
   // Create table row with OCR status
   const createTableRow = (document) => {
     const downloadUrl = `http://localhost:8081/api/documents/${document.id}/download`;
@@ -104,15 +127,20 @@ document.addEventListener("DOMContentLoaded", () => {
       : `<svg xmlns="http://www.w3.org/2000/svg" width="20" height="20" fill="orange" class="bi bi-hourglass-split" viewBox="0 0 16 16">
              <path d="M2.5 15a.5.5 0 1 1 0-1h1v-1a4.5 4.5 0 0 1 2.557-4.06c.29-.139.443-.377.443-.59v-.7c0-.213-.154-.451-.443-.59A4.5 4.5 0 0 1 3.5 3V2h-1a.5.5 0 0 1 0-1h11a.5.5 0 0 1 0 1h-1v1a4.5 4.5 0 0 1-2.557 4.06c-.29.139-.443.377-.443.59v.7c0 .213.154.451.443.59A4.5 4.5 0 0 1 12.5 13v1h1a.5.5 0 0 1 0 1zm2-13v1c0 .537.12 1.045.337 1.5h6.326c.216-.455.337-.963.337-1.5V2z"/>
            </svg>`;
+    // Running jobs report how many pages are recognized (and already searchable)
+    const ocrProgress =
+      !document.ocrJobDone && document.ocrPageCount
+        ? `<div class="small text-muted">${document.ocrPagesDone || 0} / ${document.ocrPageCount} pages</div>`
+        : "";
 
     return `
         <tr>
           <td>${document.id}</td>
-          <td>${document.filename}</td>
+          <td>${document.filename}${renderSnippets(document.snippets)}</td>
           <td>${(document.filesize / 1024).toFixed(2)} KB</td>
           <td>${document.filetype}</td>
           <td>${new Date(document.uploadDate).toLocaleString()}</td>
-          <td>${ocrStatus}</td>
+          <td>${ocrStatus}${ocrProgress}</td>
           <td>
             <div class="action-buttons">
               <a href="${downloadUrl}" class="btn btn-sm btn-outline-success" download="${
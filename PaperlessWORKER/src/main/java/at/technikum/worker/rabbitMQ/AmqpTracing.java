@@ -0,0 +1,73 @@
+package at.technikum.worker.rabbitMQ;
+
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Continues the trace an OCR job was published in by the REST service. The job and each of its stages
+ * are spans of that trace, and the result message carries it back in its headers.
+ */
+@Component
+public class AmqpTracing {
+
+    private final Tracer tracer;
+    private final Propagator propagator;
+
+    public AmqpTracing(Tracer tracer, Propagator propagator) {
+        this.tracer = tracer;
+        this.propagator = propagator;
+    }
+
+    /**
+     * Starts the span of a received job. If the message carries the time it was published, the time it
+     * spent in the queue is recorded as a span of its own before it.
+     */
+    public Span startJobSpan(String name, Message message) {
+        Date published = message.getMessageProperties().getTimestamp();
+        if (published != null) {
+            extract(message.getMessageProperties())
+                    .name("ocr-job queue")
+                    .startTimestamp(published.getTime(), TimeUnit.MILLISECONDS)
+                    .start()
+                    .end();
+        }
+        return extract(message.getMessageProperties())
+                .name(name)
+                .kind(Span.Kind.CONSUMER)
+                .start();
+    }
+
+    /**
+     * Starts a span for one step of a job. Pipeline stages run on threads of their own, so the job span
+     * is passed along instead of being taken from the current thread.
+     */
+    public Span startStageSpan(String name, Span job) {
+        return tracer.nextSpan(job).name(name).start();
+    }
+
+    Span startPublishSpan(String name, Span job) {
+        Span.Builder builder = tracer.spanBuilder().name(name).kind(Span.Kind.PRODUCER);
+        if (job != null) {
+            builder.setParent(job.context());
+        }
+        return builder.start();
+    }
+
+    void inject(Span span, MessageProperties properties) {
+        propagator.inject(span.context(), properties, MessageProperties::setHeader);
+    }
+
+    private Span.Builder extract(MessageProperties properties) {
+        return propagator.extract(properties, (carrier, key) -> {
+            Object value = carrier.getHeader(key);
+            return value != null ? value.toString() : null;
+        });
+    }
+}
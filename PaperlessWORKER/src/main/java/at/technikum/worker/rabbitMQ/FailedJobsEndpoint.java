@@ -0,0 +1,62 @@
+package at.technikum.worker.rabbitMQ;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.GetResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shows and replays the jobs parked in {@link RabbitMQConfig#FAILED_QUEUE}, under
+ * {@code /actuator/failedjobs}. A {@code POST} moves every job parked at that moment back to the queue
+ * it came from, with its attempts reset, e.g. once Elasticsearch or MinIO is back after a long outage.
+ */
+@Slf4j
+@Component
+@Endpoint(id = "failedjobs")
+public class FailedJobsEndpoint {
+
+    private final RabbitTemplate rabbitTemplate;
+
+    public FailedJobsEndpoint(RabbitTemplate rabbitTemplate) {
+        this.rabbitTemplate = rabbitTemplate;
+    }
+
+    @ReadOperation
+    public Map<String, Long> parked() {
+        Long count = rabbitTemplate.execute(channel -> channel.messageCount(RabbitMQConfig.FAILED_QUEUE));
+        return Map.of("parked", count);
+    }
+
+    // A job is only acknowledged in the failed queue once it was published to its lane again
+    @WriteOperation
+    public Map<String, Integer> replay() {
+        Integer replayed = rabbitTemplate.execute(channel -> {
+            long parked = channel.messageCount(RabbitMQConfig.FAILED_QUEUE);
+            int count = 0;
+            GetResponse job;
+            while (count < parked && (job = channel.basicGet(RabbitMQConfig.FAILED_QUEUE, false)) != null) {
+                AMQP.BasicProperties properties = job.getProps();
+                Map<String, Object> headers = properties.getHeaders() != null
+                        ? new HashMap<>(properties.getHeaders()) : new HashMap<>();
+                Object queue = headers.remove(RabbitMQSender.QUEUE_HEADER);
+                headers.remove(RabbitMQSender.ATTEMPT_HEADER);
+                headers.remove(RabbitMQSender.FAILED_STAGE_HEADER);
+                headers.remove(RabbitMQSender.ERROR_HEADER);
+                channel.basicPublish("", queue != null ? queue.toString() : RabbitMQConfig.PROCESSING_QUEUE,
+                        properties.builder().headers(headers).build(), job.getBody());
+                channel.basicAck(job.getEnvelope().getDeliveryTag(), false);
+                count++;
+            }
+            return count;
+        });
+        log.info("Replayed {} parked OCR jobs", replayed);
+        return Map.of("replayed", replayed);
+    }
+}
@@ -1,6 +1,13 @@
 package at.technikum.worker.rabbitMQ;
 
+import at.technikum.worker.service.TesseractPool;
+import org.springframework.amqp.core.AcknowledgeMode;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -8,15 +15,89 @@ import org.springframework.context.annotation.Configuration;
 public class RabbitMQConfig {
 
     public static final String PROCESSING_QUEUE = "document_processing_queue";
+    // Jobs of documents with many pages, routed here by the REST service
+    public static final String LARGE_PROCESSING_QUEUE = "document_processing_queue_large";
     public static final String RESULT_QUEUE = "document_result_queue";
+    // Failed jobs wait here until their per-message expiration, then RabbitMQ dead-letters them back to their lane
+    public static final String RETRY_QUEUE = "document_processing_queue_retry";
+    public static final String LARGE_RETRY_QUEUE = "document_processing_queue_large_retry";
+    // Jobs that failed ocr.retry.max-attempts times or cannot be parsed, parked until replayed
+    public static final String FAILED_QUEUE = "document_processing_queue_failed";
 
     @Bean
     public Queue processingQueue() {
         return new Queue(PROCESSING_QUEUE);
     }
 
+    @Bean
+    public Queue largeProcessingQueue() {
+        return new Queue(LARGE_PROCESSING_QUEUE);
+    }
+
     @Bean
     public Queue resultQueue() {
         return new Queue(RESULT_QUEUE);
     }
+
+    @Bean
+    public Queue retryQueue() {
+        return QueueBuilder.durable(RETRY_QUEUE)
+                .deadLetterExchange("")
+                .deadLetterRoutingKey(PROCESSING_QUEUE)
+                .build();
+    }
+
+    @Bean
+    public Queue largeRetryQueue() {
+        return QueueBuilder.durable(LARGE_RETRY_QUEUE)
+                .deadLetterExchange("")
+                .deadLetterRoutingKey(LARGE_PROCESSING_QUEUE)
+                .build();
+    }
+
+    @Bean
+    public Queue failedQueue() {
+        return new Queue(FAILED_QUEUE);
+    }
+
+    /**
+     * Runs one consumer per Tesseract engine unless {@code ocr.listener.concurrency} says otherwise.
+     * The listeners only hand jobs to the processing pipeline, which acknowledges them once the result
+     * is sent. The prefetch therefore bounds the jobs a consumer has in the worker: the default of two
+     * lets the next document download while the current one is recognized, and leaves the rest of the
+     * queue to other workers.
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                               ConnectionFactory connectionFactory,
+                                                                               TesseractPool tesseractPool,
+                                                                               @Value("${ocr.listener.concurrency:0}") int concurrency,
+                                                                               @Value("${ocr.listener.prefetch:2}") int prefetch) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        int consumers = concurrency > 0 ? concurrency : tesseractPool.size();
+        factory.setConcurrentConsumers(consumers);
+        factory.setMaxConcurrentConsumers(consumers);
+        factory.setPrefetchCount(prefetch);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        return factory;
+    }
+
+    /**
+     * Consumes the large-document lane with {@code ocr.lanes.large.consumers} consumers, one by default.
+     * Large documents then keep making progress, but never occupy more than that many job slots.
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory largeJobContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                         ConnectionFactory connectionFactory,
+                                                                         @Value("${ocr.lanes.large.consumers:1}") int consumers,
+                                                                         @Value("${ocr.listener.prefetch:2}") int prefetch) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setConcurrentConsumers(consumers);
+        factory.setMaxConcurrentConsumers(consumers);
+        factory.setPrefetchCount(prefetch);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        return factory;
+    }
 }
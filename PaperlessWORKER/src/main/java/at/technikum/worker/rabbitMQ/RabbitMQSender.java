@@ -1,15 +1,29 @@
 package at.technikum.worker.rabbitMQ;
 
+import io.micrometer.tracing.Span;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.Date;
+
 @Slf4j
 @Service
 public class RabbitMQSender {
 
+    // Failed attempts of a job so far
+    public static final String ATTEMPT_HEADER = "x-ocr-attempt";
+    // Set on parked jobs
+    public static final String FAILED_STAGE_HEADER = "x-ocr-failed-stage";
+    public static final String ERROR_HEADER = "x-ocr-error";
+    public static final String QUEUE_HEADER = "x-ocr-queue";
+
     private final RabbitTemplate rabbitTemplate;
+    private final AmqpTracing amqpTracing;
 
     @Value("${rabbitmq.processing.queue}")
     private String processingQueue;
@@ -17,8 +31,9 @@ public class RabbitMQSender {
     @Value("${rabbitmq.result.queue}")
     private String resultQueue;
 
-    public RabbitMQSender(RabbitTemplate rabbitTemplate) {
+    public RabbitMQSender(RabbitTemplate rabbitTemplate, AmqpTracing amqpTracing) {
         this.rabbitTemplate = rabbitTemplate;
+        this.amqpTracing = amqpTracing;
     }
 
     public void sendToProcessingQueue(String documentId) {
@@ -33,15 +48,74 @@ public class RabbitMQSender {
         }
     }
 
-    public void sendToResultQueue(String documentId, String ocrText) {
-        String message = "{\"documentId\":\"" + documentId + "\"}";
+    /**
+     * Reports how many pages of a running job are recognized and searchable, in the trace of {@code job}.
+     */
+    public void sendProgressToResultQueue(String documentId, int pagesDone, int pageCount, Span job) {
+        String message = "{\"documentId\":\"" + documentId + "\",\"type\":\"progress\",\"pagesDone\":" + pagesDone
+                + ",\"pageCount\":" + pageCount + "}";
         try {
-            rabbitTemplate.convertAndSend(resultQueue, message);
-            log.info("Message successfully sent to RabbitMQ for document ID: {}", documentId);
+            publish(message, job);
+            log.info("Progress {}/{} sent to RabbitMQ for document ID: {}", pagesDone, pageCount, documentId);
         } catch (Exception e) {
-            log.error("Failed to send message to RabbitMQ for document ID: {}", documentId, e);
+            log.error("Failed to send progress to RabbitMQ for document ID: {}", documentId, e);
         }
     }
 
+    /**
+     * Reports a finished job. The content digest lets the REST service hand the text to copies of the
+     * document if it was deleted while the job ran. Failures are thrown, the job must not be
+     * acknowledged without its result.
+     */
+    public void sendToResultQueue(String documentId, String contentHash, Span job) {
+        String message = "{\"documentId\":\"" + documentId + "\",\"contentHash\":\"" + contentHash + "\"}";
+        publish(message, job);
+        log.info("Message successfully sent to RabbitMQ for document ID: {}", documentId);
+    }
+
+    /**
+     * Sends a failed job back to its lane after {@code delay}, by way of the lane's retry queue. The
+     * attempt is counted in the {@value #ATTEMPT_HEADER} header. Failures are thrown like those of results.
+     */
+    public void sendToRetryQueue(Message job, boolean large, int attempt, Duration delay) {
+        MessageProperties properties = job.getMessageProperties();
+        properties.setHeader(ATTEMPT_HEADER, attempt);
+        properties.setExpiration(String.valueOf(delay.toMillis()));
+        String queue = large ? RabbitMQConfig.LARGE_RETRY_QUEUE : RabbitMQConfig.RETRY_QUEUE;
+        rabbitTemplate.send(queue, job);
+        log.info("OCR job sent to {} for attempt {} in {}", queue, attempt + 1, delay);
+    }
 
+    /**
+     * Parks a job message that could not be processed. It keeps its body and headers, the stage it
+     * failed in, the error and the queue it came from are added as headers. Failures are thrown like
+     * those of results.
+     */
+    public void sendToFailedQueue(Message job, String stage, Throwable failure) {
+        MessageProperties properties = job.getMessageProperties();
+        properties.setHeader(FAILED_STAGE_HEADER, stage);
+        properties.setHeader(ERROR_HEADER, String.valueOf(failure.getMessage()));
+        if (properties.getConsumerQueue() != null) {
+            properties.setHeader(QUEUE_HEADER, properties.getConsumerQueue());
+        }
+        rabbitTemplate.send(RabbitMQConfig.FAILED_QUEUE, job);
+        log.warn("OCR job moved to {} after failing in stage {}", RabbitMQConfig.FAILED_QUEUE, stage);
+    }
+
+    // The message carries the trace of the job and the time it was sent
+    private void publish(String message, Span job) {
+        Span span = amqpTracing.startPublishSpan("ocr-result publish", job);
+        try {
+            rabbitTemplate.convertAndSend(resultQueue, (Object) message, amqpMessage -> {
+                amqpTracing.inject(span, amqpMessage.getMessageProperties());
+                amqpMessage.getMessageProperties().setTimestamp(new Date());
+                return amqpMessage;
+            });
+        } catch (RuntimeException e) {
+            span.error(e);
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
 }
@@ -1,40 +1,212 @@
 package at.technikum.worker.service;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
-import co.elastic.clients.elasticsearch.core.IndexRequest;
-import co.elastic.clients.elasticsearch.core.IndexResponse;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkIngester;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkListener;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.json.JsonData;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Indexes OCR results through a {@link BulkIngester}. Updates are collected until a batch reaches
+ * {@code elasticsearch.bulk.max-operations} or {@code max-size}, or {@code flush-interval} has passed,
+ * and are sent asynchronously with at most {@code max-concurrent-requests} bulk requests in flight.
+ * Once that many are pending, adding waits for one to finish, which throttles OCR to what
+ * Elasticsearch can take.
+ */
+@Slf4j
 @Service
 public class ElasticsearchService {
 
+    private static final String INDEX = "documents";
+
+    // Adds the pages not indexed yet and never touches the final result. Pages are recorded by number, so
+    // the update can be applied in any order and more than once, bulk requests may complete out of order.
+    // Until the final result replaces it, the text holds the pages in the order they were recognized.
+    private static final String PROGRESS_SCRIPT = """
+            if (ctx._source.ocrJobDone == true) {
+              ctx.op = 'noop';
+            } else {
+              def indexed = ctx._source.ocrPagesIndexed;
+              if (indexed == null) {
+                indexed = [];
+                ctx._source.ocrText = '';
+              }
+              StringBuilder added = new StringBuilder();
+              for (def page : params.pages.entrySet()) {
+                int number = Integer.parseInt(page.getKey());
+                if (!indexed.contains(number)) {
+                  indexed.add(number);
+                  added.append(page.getValue());
+                }
+              }
+              if (added.length() == 0) {
+                ctx.op = 'noop';
+              } else {
+                ctx._source.ocrText = ctx._source.ocrText + added.toString();
+                ctx._source.ocrPagesIndexed = indexed;
+                ctx._source.ocrPagesDone = indexed.size();
+                ctx._source.ocrPageCount = params.ocrPageCount;
+              }
+            }
+            """;
+
     @Autowired
     private ElasticsearchClient elasticsearchClient;
 
-    public String indexDocument(String documentId, String filename, String ocrText) throws IOException {
+    @Value("${elasticsearch.bulk.max-operations:500}")
+    private int maxOperations;
+
+    @Value("${elasticsearch.bulk.max-size:5MB}")
+    private DataSize maxSize;
+
+    @Value("${elasticsearch.bulk.flush-interval:1s}")
+    private Duration flushInterval;
+
+    @Value("${elasticsearch.bulk.max-concurrent-requests:2}")
+    private int maxConcurrentRequests;
+
+    // Runs the flush timer and completes the futures, so callbacks never run on the HTTP client's I/O threads
+    private ScheduledExecutorService bulkExecutor;
+
+    private BulkIngester<CompletableFuture<String>> ingester;
+
+    @PostConstruct
+    void startIngester() {
+        bulkExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "elasticsearch-bulk");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ingester = BulkIngester.of(b -> b
+                .client(elasticsearchClient)
+                .maxOperations(maxOperations)
+                .maxSize(maxSize.toBytes())
+                .maxConcurrentRequests(maxConcurrentRequests)
+                .flushInterval(flushInterval.toMillis(), TimeUnit.MILLISECONDS, bulkExecutor)
+                .listener(new CompletingListener()));
+        log.info("Bulk indexing with up to {} operations or {} per request, flushed every {}, {} requests in flight",
+                maxOperations, maxSize, flushInterval, maxConcurrentRequests);
+    }
+
+    // Sends what is still buffered before the worker stops
+    @PreDestroy
+    void stopIngester() {
+        ingester.close();
+        bulkExecutor.shutdown();
+    }
+
+    /**
+     * Queues the OCR result of a document for the next bulk request. The returned future completes
+     * with the document ID once Elasticsearch has accepted the update, or exceptionally if the update
+     * or the whole request failed.
+     *
+     * @param pageCount number of pages, or 0 if unknown
+     */
+    public CompletableFuture<String> indexDocument(String documentId, String filename, String ocrText, int pageCount) {
         // Create the document content (JSON format)
         Map<String, Object> jsonMap = new HashMap<>();
         jsonMap.put("documentId", documentId);
         jsonMap.put("filename", filename);
         jsonMap.put("ocrText", ocrText);
+        jsonMap.put("ocrJobDone", true);
         jsonMap.put("@timestamp", Instant.now().toString()); // Add the @timestamp field
+        // Only needed while pages are added one report at a time
+        jsonMap.put("ocrPagesIndexed", null);
+        if (pageCount > 0) {
+            jsonMap.put("ocrPagesDone", pageCount);
+            jsonMap.put("ocrPageCount", pageCount);
+        }
+
+        CompletableFuture<String> indexed = new CompletableFuture<>();
+        // Merge into the document so the metadata indexed at upload time (filesize, filetype, uploadDate) is kept
+        ingester.add(op -> op.update(u -> u
+                .index(INDEX)
+                .id(documentId)
+                .action(a -> a.doc(jsonMap).docAsUpsert(true))), indexed);
+        return indexed;
+    }
 
-        // Create an index request
-        IndexRequest<Map<String, Object>> request = IndexRequest.of(i -> i
-                .index("documents")
+    /**
+     * Queues the text of newly recognized pages, keyed by page number, so a long document becomes searchable
+     * while OCR is still running. Pages the document already has are skipped, and so is the whole update
+     * once the document has its final result.
+     */
+    public CompletableFuture<String> indexProgress(String documentId, String filename, Map<Integer, String> pages, int pageCount) {
+        Map<String, String> texts = new LinkedHashMap<>();
+        pages.forEach((page, text) -> texts.put(page.toString(), text));
+        Map<String, JsonData> params = Map.of(
+                "pages", JsonData.of(texts),
+                "ocrPageCount", JsonData.of(pageCount));
+
+        // Used as is if the metadata indexed at upload time is missing
+        Map<String, Object> upsert = new HashMap<>();
+        upsert.put("documentId", documentId);
+        upsert.put("filename", filename);
+        upsert.put("ocrText", String.join("", pages.values()));
+        upsert.put("ocrPagesIndexed", List.copyOf(pages.keySet()));
+        upsert.put("ocrJobDone", false);
+        upsert.put("ocrPagesDone", pages.size());
+        upsert.put("ocrPageCount", pageCount);
+
+        CompletableFuture<String> indexed = new CompletableFuture<>();
+        ingester.add(op -> op.update(u -> u
+                .index(INDEX)
                 .id(documentId)
-                .document(jsonMap)
-        );
+                .action(a -> a
+                        .script(s -> s.inline(i -> i.source(PROGRESS_SCRIPT).params(params)))
+                        .upsert(upsert))), indexed);
+        return indexed;
+    }
+
+    private class CompletingListener implements BulkListener<CompletableFuture<String>> {
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request, List<CompletableFuture<String>> contexts) {
+            log.debug("Sending bulk request {} with {} operations", executionId, contexts.size());
+        }
 
-        // Send the index request to Elasticsearch
-        IndexResponse response = elasticsearchClient.index(request);
+        // Items come back in the order of the operations, and with them of the contexts
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, List<CompletableFuture<String>> contexts, BulkResponse response) {
+            List<BulkResponseItem> items = response.items();
+            bulkExecutor.execute(() -> {
+                for (int i = 0; i < items.size(); i++) {
+                    BulkResponseItem item = items.get(i);
+                    if (item.error() != null) {
+                        contexts.get(i).completeExceptionally(new IOException(
+                                "Indexing document " + item.id() + " failed: " + item.error().reason()));
+                    } else {
+                        contexts.get(i).complete(item.id());
+                    }
+                }
+            });
+        }
 
-        return response.id();
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, List<CompletableFuture<String>> contexts, Throwable failure) {
+            log.error("Bulk request {} with {} operations failed: {}", executionId, contexts.size(), failure.getMessage());
+            bulkExecutor.execute(() -> contexts.forEach(indexed -> indexed.completeExceptionally(failure)));
+        }
     }
 }
@@ -1,29 +1,176 @@
 package at.technikum.worker.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import net.sourceforge.tess4j.Tesseract;
 import net.sourceforge.tess4j.TesseractException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Service
 public class OCRService {
 
-    private final Tesseract tesseract;
+    @Autowired
+    private TesseractPool tesseractPool;
 
-    public OCRService() {
-        tesseract = new Tesseract();
-        tesseract.setDatapath("/usr/share/tesseract-ocr/4.00/tessdata"); // Path to Tesseract data
-        tesseract.setLanguage("eng");
-        System.out.println("Tesseract OCR initialized with data path: /usr/share/tesseract-ocr/4.00/tessdata");
+    @Autowired
+    private TextLayerExtractor textLayerExtractor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Takes the embedded text of born-digital pages and recognizes only the remaining pages
+    @Value("${ocr.text-layer.enabled:true}")
+    private boolean useTextLayer;
+
+    // Splits PDFs into pages and recognizes them in parallel instead of one after another
+    @Value("${ocr.page-parallel.enabled:true}")
+    private boolean pageParallel;
+
+    // Threads recognizing pages, 0 = one per Tesseract engine
+    @Value("${ocr.page-parallel.threads:0}")
+    private int pageThreads;
+
+    @Value("${ocr.render.dpi:300}")
+    private int renderDpi = 300;
+
+    // Engines the pages of large documents may use at once, 0 = all but one. The rest stay free for
+    // the small-document lane, so short jobs are never stuck behind a long scan.
+    @Value("${ocr.lanes.large.max-engines:0}")
+    private int largeMaxEngines;
+
+    private ForkJoinPool pagePool;
+    private ForkJoinPool largePagePool;
+
+    private Timer renderTimer;
+    private Counter textLayerPages;
+    private Counter recognizedPages;
+
+    @PostConstruct
+    void startPagePool() {
+        int parallelism = pageThreads > 0 ? pageThreads : tesseractPool.size();
+        pagePool = new ForkJoinPool(parallelism);
+        int largeParallelism = largeMaxEngines > 0 ? largeMaxEngines : Math.max(1, tesseractPool.size() - 1);
+        largePagePool = new ForkJoinPool(Math.min(largeParallelism, parallelism));
+        log.info("Page-parallel OCR {} with {} threads, {} for large documents", pageParallel ? "enabled" : "disabled",
+                parallelism, largePagePool.getParallelism());
+        log.info("Rendering PDF pages with PDFBox at {} DPI", renderDpi);
+
+        renderTimer = Timer.builder("ocr.page.render")
+                .description("Time PDFBox takes to render one page image")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        textLayerPages = pageCounter("text-layer");
+        recognizedPages = pageCounter("ocr");
+    }
+
+    private Counter pageCounter(String source) {
+        return Counter.builder("ocr.pages")
+                .description("Pages extracted, from the embedded text layer or by recognition")
+                .tag("source", source)
+                .register(meterRegistry);
     }
 
-    public String extractText(File file) throws TesseractException {
+    @PreDestroy
+    void stopPagePool() {
+        pagePool.shutdownNow();
+        largePagePool.shutdownNow();
+    }
+
+    /**
+     * @param large whether the document came through the large-document lane; its pages are then
+     *              recognized with at most {@code ocr.lanes.large.max-engines} engines at a time
+     * @param progress notified as pages of a PDF are done, including pages taken from the text layer
+     */
+    public String extractText(File file, boolean large, PageProgressListener progress) throws TesseractException {
         log.info("Starting OCR extraction for file: {}", file.getName());
-        String text = tesseract.doOCR(file);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String text = file.getName().toLowerCase().endsWith(".pdf")
+                ? extractPdfText(file, large ? largePagePool : pagePool, progress)
+                // Tesseract engines are not thread-safe, every job gets one from the pool
+                : tesseractPool.execute(engine -> engine.doOCR(file));
+        sample.stop(Timer.builder("ocr.document")
+                .description("Time to extract the text of one document, rendering and recognition included")
+                .tag("lane", large ? "large" : "small")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofHours(1))
+                .register(meterRegistry));
         log.info("OCR extraction completed for file: {}", file.getName());
         return text;
     }
+
+    private String extractPdfText(File pdf, ForkJoinPool pool, PageProgressListener progress) throws TesseractException {
+        String[] texts = useTextLayer ? textLayerExtractor.extractPageTexts(pdf) : null;
+        if (texts != null) {
+            long missing = Arrays.stream(texts).filter(Objects::isNull).count();
+            log.info("Text layer of {} covers {} of {} pages", pdf.getName(), texts.length - missing, texts.length);
+            textLayerPages.increment(texts.length - missing);
+            if (missing == 0) {
+                return String.join("", texts);
+            }
+        }
+
+        try (PageSource pages = openPages(pdf)) {
+            if (texts == null || texts.length != pages.pageCount()) {
+                texts = new String[pages.pageCount()];
+            }
+            // Only pages without usable embedded text are rendered and recognized
+            recognizePages(pdf, pages, texts, pool, progressOf(texts, progress));
+            return String.join("", texts);
+        } catch (IOException e) {
+            throw new TesseractException("Could not split " + pdf.getName() + " into pages", e);
+        }
+    }
+
+    PageSource openPages(File pdf) throws IOException {
+        return new PdfBoxPageSource(pdf, renderDpi, renderTimer);
+    }
+
+    // Counts finished pages without a lock, so a slow listener never holds up the other page tasks
+    private Runnable progressOf(String[] texts, PageProgressListener listener) {
+        AtomicInteger pagesDone = new AtomicInteger((int) Arrays.stream(texts).filter(Objects::nonNull).count());
+        if (pagesDone.get() > 0) {
+            listener.pagesRecognized(texts, pagesDone.get());
+        }
+        return () -> {
+            recognizedPages.increment();
+            listener.pagesRecognized(texts, pagesDone.incrementAndGet());
+        };
+    }
+
+    private void recognizePages(File pdf, PageSource pages, String[] texts, ForkJoinPool pool, Runnable pageDone) throws TesseractException {
+        if (texts.length == 0) {
+            return;
+        }
+        if (!pageParallel) {
+            for (int page = 0; page < texts.length; page++) {
+                if (texts[page] == null) {
+                    texts[page] = pages.recognize(page, tesseractPool);
+                    pageDone.run();
+                }
+            }
+            return;
+        }
+        log.info("Recognizing the pages of {} in parallel", pdf.getName());
+        try {
+            // Every page task renders its page and checks out its own engine, so pages of one document
+            // never share one
+            pool.invoke(new PageOcrTask(tesseractPool, pages, texts, 0, texts.length, pageDone));
+        } catch (PageOcrTask.PageOcrException e) {
+            throw (TesseractException) e.getCause();
+        }
+    }
 }
@@ -0,0 +1,103 @@
+package at.technikum.worker.service;
+
+import at.technikum.worker.rabbitMQ.RabbitMQSender;
+import io.micrometer.tracing.Span;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Publishes the pages of one job as they are recognized: the text of the pages recognized since the
+ * last report goes into the search index, then the REST service is told how many pages are done.
+ * Reports are at least {@code minInterval} apart, except the first one, so the first pages are
+ * searchable within seconds without updating the index for every page of a long scan.
+ * <p>
+ * Every page is sent once, so a report costs as much as its new pages rather than the whole text so far.
+ * Pages whose report failed are sent again with the next one.
+ */
+@Slf4j
+class OcrProgressReporter implements PageProgressListener {
+
+    private final ElasticsearchService elasticsearchService;
+    private final RabbitMQSender rabbitMQSender;
+    private final String documentId;
+    private final String filename;
+    private final long minIntervalNanos;
+    private final Span job;
+
+    // Guarded by this, only held while collecting the pages of a report
+    private boolean reported;
+    private long lastReport;
+    private boolean[] sent;
+    private int pagesSent;
+    private volatile int pageCount;
+
+    OcrProgressReporter(ElasticsearchService elasticsearchService, RabbitMQSender rabbitMQSender,
+                        String documentId, String filename, Duration minInterval, Span job) {
+        this.elasticsearchService = elasticsearchService;
+        this.rabbitMQSender = rabbitMQSender;
+        this.documentId = documentId;
+        this.filename = filename;
+        this.minIntervalNanos = minInterval.toNanos();
+        this.job = job;
+    }
+
+    @Override
+    public void pagesRecognized(String[] texts, int pagesDone) {
+        pageCount = texts.length;
+        // The complete text is indexed as the final result
+        if (pagesDone >= texts.length) {
+            return;
+        }
+        Map<Integer, String> pages = new LinkedHashMap<>();
+        int pagesIndexed;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (reported && now - lastReport < minIntervalNanos) {
+                return;
+            }
+            if (sent == null) {
+                sent = new boolean[texts.length];
+            }
+            for (int page = 0; page < texts.length; page++) {
+                if (texts[page] != null && !sent[page]) {
+                    sent[page] = true;
+                    pages.put(page, texts[page]);
+                }
+            }
+            if (pages.isEmpty()) {
+                return;
+            }
+            reported = true;
+            lastReport = now;
+            pagesSent += pages.size();
+            pagesIndexed = pagesSent;
+        }
+
+        // Indexing may wait for a free bulk request, so it happens outside the lock
+        elasticsearchService.indexProgress(documentId, filename, pages, texts.length).whenComplete((id, error) -> {
+            if (error != null) {
+                log.warn("Indexing partial OCR result failed for document ID: {}: {}", documentId, error.getMessage());
+                resend(pages.keySet());
+                return;
+            }
+            rabbitMQSender.sendProgressToResultQueue(documentId, pagesIndexed, texts.length, job);
+        });
+    }
+
+    private synchronized void resend(Iterable<Integer> pages) {
+        for (int page : pages) {
+            sent[page] = false;
+            pagesSent--;
+        }
+    }
+
+    /**
+     * Number of pages of the document, 0 if no page was reported.
+     */
+    int pageCount() {
+        return pageCount;
+    }
+}
@@ -0,0 +1,153 @@
+package at.technikum.worker.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.minio.BucketExistsArgs;
+import io.minio.GetObjectArgs;
+import io.minio.MakeBucketArgs;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.errors.ErrorResponseException;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps extracted texts in MinIO, gzip-compressed, so content that was recognized before is never
+ * sent through Tesseract again. Objects are keyed by the SHA-256 of the file plus everything that
+ * changes the result: OCR language, Tesseract version, rendering DPI and which embedded text layers
+ * are used instead. Changing any of them starts a fresh set of entries.
+ * <p>
+ * The cache is best effort: when MinIO fails, a lookup counts as a miss and a store is skipped.
+ */
+@Slf4j
+@Service
+public class OcrResultCache {
+
+    @Autowired
+    private MinioClient minioClient;
+
+    @Autowired
+    private TesseractPool tesseractPool;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${ocr.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ocr.cache.bucket:ocr-cache}")
+    private String bucket;
+
+    @Value("${ocr.render.dpi:300}")
+    private int renderDpi;
+
+    @Value("${ocr.text-layer.enabled:true}")
+    private boolean textLayerEnabled;
+
+    @Value("${ocr.text-layer.min-chars:32}")
+    private int textLayerMinChars;
+
+    @Value("${ocr.text-layer.max-unmapped-ratio:0.1}")
+    private double textLayerMaxUnmappedRatio;
+
+    // Object name suffix identifying the engine configuration, e.g. eng_4.1.1_300dpi_text-32-0.1.txt.gz
+    private String configurationKey;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private Counter hitCounter;
+    private Counter missCounter;
+
+    @PostConstruct
+    void init() {
+        hitCounter = lookupCounter("hit");
+        missCounter = lookupCounter("miss");
+        if (!enabled) {
+            log.info("OCR result cache disabled");
+            return;
+        }
+        configurationKey = tesseractPool.language() + "_" + tesseractPool.engineVersion() + "_" + renderDpi + "dpi_"
+                + (textLayerEnabled ? "text-" + textLayerMinChars + "-" + textLayerMaxUnmappedRatio : "notext") + ".txt.gz";
+        try {
+            if (!minioClient.bucketExists(BucketExistsArgs.builder().bucket(bucket).build())) {
+                minioClient.makeBucket(MakeBucketArgs.builder().bucket(bucket).build());
+            }
+            log.info("OCR result cache in bucket '{}' with configuration {}", bucket, configurationKey);
+        } catch (Exception e) {
+            log.warn("Could not prepare OCR result cache bucket '{}': {}", bucket, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the text stored for the content with the given SHA-256 digest under the current engine
+     * configuration, if there is one.
+     */
+    public Optional<String> get(String contentHash) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        String key = keyOf(contentHash);
+        try (InputStream in = new GZIPInputStream(minioClient.getObject(
+                GetObjectArgs.builder().bucket(bucket).object(key).build()))) {
+            String text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            hitCounter.increment();
+            log.info("OCR result cache hit for {} ({} hits, {} misses)", contentHash, hits.incrementAndGet(), misses.get());
+            return Optional.of(text);
+        } catch (ErrorResponseException e) {
+            if (!"NoSuchKey".equals(e.errorResponse().code())) {
+                log.warn("Could not read OCR result cache entry {}: {}", key, e.getMessage());
+            }
+        } catch (Exception e) {
+            log.warn("Could not read OCR result cache entry {}: {}", key, e.getMessage());
+        }
+        missCounter.increment();
+        log.info("OCR result cache miss for {} ({} hits, {} misses)", contentHash, hits.get(), misses.incrementAndGet());
+        return Optional.empty();
+    }
+
+    public void put(String contentHash, String text) {
+        if (!enabled) {
+            return;
+        }
+        String key = keyOf(contentHash);
+        try {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (OutputStream out = new GZIPOutputStream(compressed)) {
+                out.write(text.getBytes(StandardCharsets.UTF_8));
+            }
+            minioClient.putObject(PutObjectArgs.builder()
+                    .bucket(bucket)
+                    .object(key)
+                    .stream(new ByteArrayInputStream(compressed.toByteArray()), compressed.size(), -1)
+                    .contentType("application/gzip")
+                    .build());
+            log.info("Stored OCR result for {} in cache ({} bytes compressed)", contentHash, compressed.size());
+        } catch (Exception e) {
+            log.warn("Could not store OCR result cache entry {}: {}", key, e.getMessage());
+        }
+    }
+
+    private Counter lookupCounter(String result) {
+        return Counter.builder("ocr.cache.lookups")
+                .description("OCR result cache lookups")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private String keyOf(String contentHash) {
+        return contentHash + "/" + configurationKey;
+    }
+}
@@ -0,0 +1,53 @@
+package at.technikum.worker.service;
+
+import net.sourceforge.tess4j.TesseractException;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Recognizes a range of pages by splitting it in halves until single pages remain. Each text is stored
+ * at its page index, so the caller can join them in page order. Pages that already have a text are
+ * skipped. {@code pageDone} runs after each recognized page.
+ */
+class PageOcrTask extends RecursiveAction {
+
+    private final TesseractPool tesseractPool;
+    private final PageSource pages;
+    private final String[] texts;
+    private final int from;
+    private final int to;
+    private final Runnable pageDone;
+
+    PageOcrTask(TesseractPool tesseractPool, PageSource pages, String[] texts, int from, int to, Runnable pageDone) {
+        this.tesseractPool = tesseractPool;
+        this.pages = pages;
+        this.texts = texts;
+        this.from = from;
+        this.to = to;
+        this.pageDone = pageDone;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from == 1) {
+            if (texts[from] == null) {
+                try {
+                    texts[from] = pages.recognize(from, tesseractPool);
+                    pageDone.run();
+                } catch (TesseractException e) {
+                    throw new PageOcrException(e);
+                }
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        invokeAll(new PageOcrTask(tesseractPool, pages, texts, from, middle, pageDone),
+                new PageOcrTask(tesseractPool, pages, texts, middle, to, pageDone));
+    }
+
+    static class PageOcrException extends RuntimeException {
+        PageOcrException(TesseractException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+}
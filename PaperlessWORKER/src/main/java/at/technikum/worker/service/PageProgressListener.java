@@ -0,0 +1,21 @@
+package at.technikum.worker.service;
+
+/**
+ * Notified while the pages of a PDF are recognized, so partial results can be published before the
+ * whole document is done. Calls come from the page tasks and may overlap, so implementations synchronize
+ * themselves. The page that triggered a call has its text in {@code texts}, pages still null in a call are
+ * picked up by a later one.
+ */
+@FunctionalInterface
+public interface PageProgressListener {
+
+    PageProgressListener NONE = (texts, pagesDone) -> {
+    };
+
+    /**
+     * @param texts     the texts of all pages in page order, null for pages not recognized yet;
+     *                  must not be modified or kept after the call
+     * @param pagesDone number of pages recognized so far, calls may arrive out of this order
+     */
+    void pagesRecognized(String[] texts, int pagesDone);
+}
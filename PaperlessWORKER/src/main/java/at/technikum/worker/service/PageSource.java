@@ -0,0 +1,20 @@
+package at.technikum.worker.service;
+
+import net.sourceforge.tess4j.TesseractException;
+
+import java.io.Closeable;
+
+/**
+ * The pages of one PDF as input for Tesseract. Implementations are safe to use from several threads,
+ * so pages can be recognized in parallel.
+ */
+interface PageSource extends Closeable {
+
+    int pageCount();
+
+    /**
+     * Produces the image of page {@code pageIndex} (zero-based) and recognizes it with an engine from
+     * {@code tesseractPool}. The engine is only checked out once the image is ready.
+     */
+    String recognize(int pageIndex, TesseractPool tesseractPool) throws TesseractException;
+}
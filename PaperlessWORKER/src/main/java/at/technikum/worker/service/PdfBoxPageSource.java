@@ -0,0 +1,100 @@
+package at.technikum.worker.service;
+
+import io.micrometer.core.instrument.Timer;
+import net.sourceforge.tess4j.TesseractException;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders pages in the JVM with PDFBox and hands them to Tesseract as {@link BufferedImage}s, without
+ * spawning Ghostscript or writing page images to disk.
+ * <p>
+ * A {@link PDDocument} must not be rendered from two threads at once, so every thread rendering
+ * concurrently gets its own copy of the document. Copies are reused and all closed with the source.
+ */
+class PdfBoxPageSource implements PageSource {
+
+    private final File pdf;
+    private final float dpi;
+    private final int pageCount;
+    // Records rendering per page, null if not measured
+    private final Timer renderTimer;
+    private final Queue<PDDocument> idle = new ConcurrentLinkedQueue<>();
+    private final Queue<PDDocument> opened = new ConcurrentLinkedQueue<>();
+
+    PdfBoxPageSource(File pdf, float dpi) throws IOException {
+        this(pdf, dpi, null);
+    }
+
+    PdfBoxPageSource(File pdf, float dpi, Timer renderTimer) throws IOException {
+        this.pdf = pdf;
+        this.dpi = dpi;
+        this.renderTimer = renderTimer;
+        PDDocument document = open();
+        this.pageCount = document.getNumberOfPages();
+        idle.add(document);
+    }
+
+    @Override
+    public int pageCount() {
+        return pageCount;
+    }
+
+    @Override
+    public String recognize(int pageIndex, TesseractPool tesseractPool) throws TesseractException {
+        BufferedImage image;
+        try {
+            image = render(pageIndex);
+        } catch (IOException e) {
+            throw new TesseractException("Could not render page " + (pageIndex + 1) + " of " + pdf.getName(), e);
+        }
+        return tesseractPool.execute(engine -> engine.doOCR(image));
+    }
+
+    BufferedImage render(int pageIndex) throws IOException {
+        PDDocument document = idle.poll();
+        if (document == null) {
+            document = open();
+        }
+        long start = System.nanoTime();
+        try {
+            // Grayscale is all Tesseract looks at and needs a third of the memory of RGB
+            return new PDFRenderer(document).renderImageWithDPI(pageIndex, dpi, ImageType.GRAY);
+        } finally {
+            idle.add(document);
+            if (renderTimer != null) {
+                renderTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private PDDocument open() throws IOException {
+        PDDocument document = PDDocument.load(pdf, MemoryUsageSetting.setupTempFileOnly());
+        opened.add(document);
+        return document;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (PDDocument document : opened) {
+            try {
+                document.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
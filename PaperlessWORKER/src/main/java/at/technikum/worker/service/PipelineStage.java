@@ -0,0 +1,77 @@
+package at.technikum.worker.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One step of the OCR job pipeline: a fixed number of threads taking jobs from a bounded queue.
+ * {@link #submit} blocks while the queue is full, so a slow stage holds up the stage before it and
+ * finally the RabbitMQ consumers, instead of jobs piling up in memory.
+ */
+@Slf4j
+class PipelineStage {
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final Timer waitTimer;
+
+    PipelineStage(String name, int threads, int queueCapacity, MeterRegistry meterRegistry) {
+        this.name = name;
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> new Thread(r, "ocr-" + name + "-" + count.incrementAndGet()),
+                (task, pool) -> {
+                    if (pool.isShutdown()) {
+                        throw new RejectedExecutionException("Stage " + name + " is shut down");
+                    }
+                    try {
+                        pool.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for stage " + name, e);
+                    }
+                });
+        // All threads take from the queue from the start, so queued jobs never wait for a thread to be created
+        executor.prestartAllCoreThreads();
+
+        waitTimer = Timer.builder("ocr.pipeline.wait")
+                .description("Time a job waits for a thread of the stage, including waiting for room in its queue")
+                .tag("stage", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("ocr.pipeline.queued", executor, pool -> pool.getQueue().size())
+                .description("Jobs waiting in the queue of the stage")
+                .tag("stage", name)
+                .register(meterRegistry);
+        Gauge.builder("ocr.pipeline.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Threads of the stage working on a job")
+                .tag("stage", name)
+                .register(meterRegistry);
+        log.info("Pipeline stage {} started with {} threads and room for {} queued jobs", name, threads, queueCapacity);
+    }
+
+    /**
+     * Runs {@code job} on one of the stage's threads, waiting while the stage's queue is full.
+     */
+    void submit(Runnable job) {
+        long submitted = System.nanoTime();
+        executor.execute(() -> {
+            waitTimer.record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+            job.run();
+        });
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+        log.info("Pipeline stage {} stopped", name);
+    }
+}
@@ -0,0 +1,45 @@
+package at.technikum.worker.service;
+
+import net.sourceforge.tess4j.Tesseract;
+
+/**
+ * Tesseract engine that keeps its native handle, and with it the loaded language model, across
+ * {@code doOCR} calls. {@link Tesseract} creates and disposes the handle on every call. Like
+ * {@link Tesseract} it must only be used by one thread at a time, which {@link TesseractPool} ensures.
+ */
+class PooledTesseract extends Tesseract {
+
+    private boolean initialized;
+
+    PooledTesseract(String datapath, String language) {
+        setDatapath(datapath);
+        setLanguage(language);
+    }
+
+    /**
+     * Creates the native handle and loads the language model ahead of the first job.
+     */
+    void warmUp() {
+        init();
+    }
+
+    @Override
+    protected void init() {
+        if (!initialized) {
+            super.init();
+            initialized = true;
+        }
+    }
+
+    // Keeps the handle for the next job, it is released in shutdown()
+    @Override
+    protected void dispose() {
+    }
+
+    void shutdown() {
+        if (initialized) {
+            super.dispose();
+            initialized = false;
+        }
+    }
+}
@@ -1,19 +1,58 @@
 package at.technikum.worker.service;
 
+import at.technikum.worker.rabbitMQ.AmqpTracing;
 import at.technikum.worker.rabbitMQ.RabbitMQConfig;
 import at.technikum.worker.rabbitMQ.RabbitMQSender;
+import com.rabbitmq.client.Channel;
 import io.minio.GetObjectArgs;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.tracing.Span;
 import io.minio.MinioClient;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.json.JSONObject;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Runs OCR jobs through three stages with bounded queues in between, so downloading, recognizing and
+ * indexing of different documents overlap:
+ * <ol>
+ *     <li>fetch: looks the content up in the OCR result cache and downloads the PDF otherwise</li>
+ *     <li>ocr: recognizes the pages, large documents on their own threads</li>
+ *     <li>index: stores the result in the cache and queues it for Elasticsearch</li>
+ * </ol>
+ * A message is acknowledged once its result is sent, so RabbitMQ never hands this worker more than
+ * consumers x prefetch jobs. A job that fails, including sending its result, goes through a retry queue
+ * back to its lane after a growing delay; after {@code ocr.retry.max-attempts} attempts it is moved to
+ * {@link RabbitMQConfig#FAILED_QUEUE}, from where it can be replayed. When a stage is full, the stage
+ * before it waits and in the end the listener threads do, which keeps the broker from delivering more.
+ * <p>
+ * Every job is a span in the trace of its upload, with the time it spent queued in RabbitMQ before it
+ * and a span per stage below it, so the trace shows where a document spent its time end to end.
+ */
 @Slf4j
 @Service
 public class ProcessingService {
@@ -30,46 +69,414 @@ public class ProcessingService {
     @Autowired
     private ElasticsearchService elasticsearchService;
 
+    @Autowired
+    private OcrResultCache ocrResultCache;
+
+    @Autowired
+    private TesseractPool tesseractPool;
+
+    @Autowired
+    private ScratchSpace scratchSpace;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private AmqpTracing amqpTracing;
+
+    // Index the pages of long documents as they are recognized instead of only at the end
+    @Value("${ocr.progress.enabled:true}")
+    private boolean progressEnabled;
+
+    @Value("${ocr.progress.min-interval:5s}")
+    private Duration progressInterval;
+
+    @Value("${ocr.retry.max-attempts:6}")
+    private int maxAttempts;
+
+    @Value("${ocr.retry.delay:30s}")
+    private Duration retryDelay;
+
+    @Value("${ocr.retry.max-delay:5m}")
+    private Duration maxRetryDelay;
+
+    @Value("${ocr.pipeline.fetch.threads:2}")
+    private int fetchThreads;
+
+    @Value("${ocr.pipeline.fetch.queue:4}")
+    private int fetchQueue;
+
+    // Jobs recognized at the same time, 0 = one per Tesseract engine
+    @Value("${ocr.pipeline.ocr.threads:0}")
+    private int ocrThreads;
+
+    // Downloaded documents waiting for OCR
+    @Value("${ocr.pipeline.ocr.queue:2}")
+    private int ocrQueue;
+
+    @Value("${ocr.lanes.large.consumers:1}")
+    private int largeOcrThreads;
+
+    @Value("${ocr.pipeline.index.threads:1}")
+    private int indexThreads;
+
+    @Value("${ocr.pipeline.index.queue:8}")
+    private int indexQueue;
+
+    private PipelineStage fetchStage;
+    private PipelineStage ocrStage;
+    private PipelineStage largeOcrStage;
+    private PipelineStage indexStage;
+
+    // Jobs received and not yet acknowledged
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private Timer downloadTimer;
+    private Counter downloadedBytes;
+    private Timer publishTimer;
+    private Timer queueWaitTimer;
+
+    @PostConstruct
+    void startStages() {
+        fetchStage = new PipelineStage("fetch", fetchThreads, fetchQueue, meterRegistry);
+        ocrStage = new PipelineStage("ocr", ocrThreads > 0 ? ocrThreads : tesseractPool.size(), ocrQueue, meterRegistry);
+        largeOcrStage = new PipelineStage("ocr-large", largeOcrThreads, ocrQueue, meterRegistry);
+        indexStage = new PipelineStage("index", indexThreads, indexQueue, meterRegistry);
+
+        Gauge.builder("ocr.jobs.in-flight", inFlight, AtomicInteger::get)
+                .description("OCR jobs received and not yet acknowledged")
+                .register(meterRegistry);
+        downloadTimer = Timer.builder("ocr.download")
+                .description("Time to download a document from MinIO into scratch space")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        downloadedBytes = Counter.builder("ocr.download.bytes")
+                .description("Bytes downloaded from MinIO")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        publishTimer = Timer.builder("ocr.result.publish")
+                .description("Time to send a result message to the result queue")
+                .register(meterRegistry);
+        queueWaitTimer = Timer.builder("ocr.queue.wait")
+                .description("Time from publishing an OCR job until this worker received it, subject to clock skew between the hosts")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofHours(1))
+                .register(meterRegistry);
+    }
+
+    // Jobs still in a stage are not acknowledged, RabbitMQ delivers them again once the connection closes
+    @PreDestroy
+    void stopStages() {
+        fetchStage.shutdown();
+        ocrStage.shutdown();
+        largeOcrStage.shutdown();
+        indexStage.shutdown();
+    }
+
     @RabbitListener(queues = RabbitMQConfig.PROCESSING_QUEUE)
-    public void processOcrJob(String message) {
-        log.info("Received message from processing queue: {}", message);
+    public void processOcrJob(Message message, Channel channel, @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) {
+        log.info("Received message from processing queue: {}", bodyOf(message));
+        accept(message, false, channel, deliveryTag);
+    }
+
+    // Many-page documents, recognized with a bounded share of the Tesseract engines
+    @RabbitListener(queues = RabbitMQConfig.LARGE_PROCESSING_QUEUE, containerFactory = "largeJobContainerFactory")
+    public void processLargeOcrJob(Message message, Channel channel, @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) {
+        log.info("Received message from large document queue: {}", bodyOf(message));
+        accept(message, true, channel, deliveryTag);
+    }
 
+    private static String bodyOf(Message message) {
+        return new String(message.getBody(), StandardCharsets.UTF_8);
+    }
+
+    private void accept(Message message, boolean large, Channel channel, long deliveryTag) {
+        Date published = message.getMessageProperties().getTimestamp();
+        if (published != null) {
+            queueWaitTimer.record(Math.max(0, System.currentTimeMillis() - published.getTime()), TimeUnit.MILLISECONDS);
+        }
+        Span span = amqpTracing.startJobSpan("ocr-job process", message)
+                .tag("ocr.lane", large ? "large" : "small");
+        OcrJob job;
         try {
-            JSONObject jsonMessage = new JSONObject(message);
-            String documentId = jsonMessage.getString("documentId");
-            String filename = jsonMessage.getString("filename");
-            log.info("Processing OCR job for document ID: {}", documentId);
-
-            // Fetch the document from MinIO
-            log.info("Fetching document from MinIO for document ID: {}", documentId);
-            InputStream documentStream = minioClient.getObject(
-                    GetObjectArgs.builder().bucket("documents").object(documentId).build());
-
-            File tempFile = new File("/tmp/" + documentId + ".pdf");
-            try (FileOutputStream fos = new FileOutputStream(tempFile)) {
-                byte[] buffer = new byte[1024];
-                int bytesRead;
-                while ((bytesRead = documentStream.read(buffer)) != -1) {
-                    fos.write(buffer, 0, bytesRead);
-                }
-                log.info("File successfully downloaded to: {}", tempFile.getAbsolutePath());
+            job = new OcrJob(message, large, channel, deliveryTag, span);
+        } catch (Exception e) {
+            log.error("Error processing OCR job: {}", e.getMessage(), e);
+            span.error(e).end();
+            // A malformed message fails the same way every time
+            deadLetter(message, "parse", e, channel, deliveryTag);
+            return;
+        }
+        span.tag("document.id", job.documentId);
+        log.info("Processing OCR job for document ID: {} ({} bytes, {} pages)", job.documentId,
+                job.filesize, job.pageCount > 0 ? job.pageCount : "unknown");
+        inFlight.incrementAndGet();
+        try {
+            // Waits while the fetch stage is full
+            fetchStage.submit(() -> fetch(job));
+        } catch (RejectedExecutionException e) {
+            // The worker is shutting down, another consumer gets the job
+            inFlight.decrementAndGet();
+            job.span.error(e).end();
+            reject(channel, deliveryTag);
+        }
+    }
+
+    private void fetch(OcrJob job) {
+        Span stage = amqpTracing.startStageSpan("ocr-job fetch", job.span);
+        try {
+            // Content that was recognized before is answered from the cache without downloading it
+            Optional<String> cached = job.contentHash != null ? ocrResultCache.get(job.contentHash) : Optional.empty();
+            if (cached.isEmpty()) {
+                job.scratch = scratchSpace.open(job.documentId);
+                download(job);
+                // Jobs queued before the REST service sent digests are looked up once the file is here
+                cached = job.contentHash == null ? ocrResultCache.get(job.downloadedHash) : Optional.empty();
+            }
+            stage.tag("ocr.cache", cached.isPresent() ? "hit" : "miss");
+            if (cached.isPresent()) {
+                job.ocrText = cached.get();
+                job.releaseScratch();
+                indexStage.submit(() -> index(job));
+            } else {
+                (job.large ? largeOcrStage : ocrStage).submit(() -> recognize(job));
+            }
+        } catch (Exception e) {
+            stage.error(e);
+            fail(job, "fetch", e);
+        } finally {
+            stage.end();
+        }
+    }
+
+    private void recognize(OcrJob job) {
+        Span stage = amqpTracing.startStageSpan("ocr-job recognize", job.span);
+        try {
+            log.info("Starting OCR process for file: {}", job.file.getName());
+            job.progress = progressEnabled
+                    ? new OcrProgressReporter(elasticsearchService, rabbitMQSender, job.documentId, job.filename, progressInterval, job.span)
+                    : null;
+            job.ocrText = ocrService.extractText(job.file, job.large, job.progress != null ? job.progress : PageProgressListener.NONE);
+            job.recognized = true;
+            if (job.progress != null && job.progress.pageCount() > 0) {
+                stage.tag("ocr.pages", job.progress.pageCount());
             }
+            log.info("OCR process completed for document ID: {}", job.documentId);
+            job.releaseScratch();
+            indexStage.submit(() -> index(job));
+        } catch (Exception e) {
+            stage.error(e);
+            fail(job, "ocr", e);
+        } finally {
+            stage.end();
+        }
+    }
 
-            // Perform OCR
-            log.info("Starting OCR process for file: {}", tempFile.getName());
-            String ocrText = ocrService.extractText(tempFile);
-            log.info("OCR process completed for document ID: {}. Extracted text: {}"+ documentId+ ocrText);
+    // The span ends once the bulk request with the document completed
+    private void index(OcrJob job) {
+        Span stage = amqpTracing.startStageSpan("ocr-job index", job.span);
+        try {
+            if (job.recognized) {
+                ocrResultCache.put(job.downloadedHash, job.ocrText);
+            }
+            int pageCount = job.progress != null && job.progress.pageCount() > 0 ? job.progress.pageCount() : job.pageCount;
 
-            //Index Document for elastic
-            elasticsearchService.indexDocument(documentId, filename, ocrText);
+            // Index Document for elastic. The update goes out with the next bulk request, the result is
+            // only reported once it is indexed so the document is never marked done without its text.
+            Timer.Sample indexing = Timer.start(meterRegistry);
+            elasticsearchService.indexDocument(job.documentId, job.filename, job.ocrText, pageCount).whenComplete((id, error) -> {
+                indexing.stop(Timer.builder("ocr.index")
+                        .description("Time from queueing a result for Elasticsearch until its bulk request completed")
+                        .tag("outcome", error == null ? "success" : "failure")
+                        .publishPercentileHistogram()
+                        .register(meterRegistry));
+                if (error != null) {
+                    stage.error(error).end();
+                    fail(job, "index", error);
+                    return;
+                }
+                stage.end();
+                // Send result to result_queue
+                log.info("Sending OCR result to result queue for document ID: {}", job.documentId);
+                try {
+                    publishTimer.record(() -> rabbitMQSender.sendToResultQueue(job.documentId,
+                            job.contentHash != null ? job.contentHash : job.downloadedHash, job.span));
+                } catch (Exception e) {
+                    fail(job, "publish", e);
+                    return;
+                }
+                log.info("OCR result successfully sent to result queue.");
+                finish(job, null, null);
+            });
+        } catch (Exception e) {
+            stage.error(e).end();
+            fail(job, "index", e);
+        }
+    }
 
-            // Send result to result_queue
-            log.info("Sending OCR result to result queue for document ID: {}", documentId);
-            rabbitMQSender.sendToResultQueue(documentId, ocrText);
-            log.info("OCR result successfully sent to result queue.");
+    private void fail(OcrJob job, String stage, Throwable e) {
+        log.error("Error processing OCR job for document ID {}: {}", job.documentId, e.getMessage(), e);
+        countFailure(stage);
+        job.span.error(e);
+        job.releaseScratch();
+        finish(job, stage, e);
+    }
 
+    private void countFailure(String stage) {
+        Counter.builder("ocr.jobs.failed")
+                .description("OCR job attempts that failed in a stage")
+                .tag("stage", stage)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    // Acknowledges a successful job (failure null) and settles a failed one, see settleFailed
+    private void finish(OcrJob job, String failedStage, Throwable failure) {
+        boolean success = failure == null;
+        Timer.builder("ocr.job")
+                .description("Time from receiving an OCR job until it is acknowledged")
+                .tag("outcome", success ? "success" : "failure")
+                .tag("lane", job.large ? "large" : "small")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofHours(1))
+                .register(meterRegistry)
+                .record(System.nanoTime() - job.received, TimeUnit.NANOSECONDS);
+        job.span.tag("outcome", success ? "success" : "failure").end();
+        inFlight.decrementAndGet();
+        if (success) {
+            acknowledge(job.channel, job.deliveryTag);
+        } else {
+            settleFailed(job, failedStage, failure);
+        }
+    }
+
+    // A failure may be passing (MinIO, Elasticsearch or RabbitMQ unavailable), so the job is retried after a
+    // growing delay. A job that failed maxAttempts times is parked instead of looping through the workers.
+    private void settleFailed(OcrJob job, String stage, Throwable failure) {
+        int attempt = attemptOf(job.message) + 1;
+        if (attempt >= maxAttempts) {
+            deadLetter(job.message, stage, failure, job.channel, job.deliveryTag);
+            return;
+        }
+        try {
+            rabbitMQSender.sendToRetryQueue(job.message, job.large, attempt, retryDelay(attempt));
         } catch (Exception e) {
-            log.error("Error processing OCR job: {}", e.getMessage(), e);
+            log.error("Could not schedule a retry of OCR job for document ID {}, requeueing it: {}", job.documentId, e.getMessage());
+            reject(job.channel, job.deliveryTag);
+            return;
+        }
+        Counter.builder("ocr.jobs.retried")
+                .description("Failed OCR job attempts sent to a retry queue")
+                .tag("stage", stage)
+                .register(meterRegistry)
+                .increment();
+        acknowledge(job.channel, job.deliveryTag);
+    }
+
+    // Failed attempts so far; a redelivery after a crash or shutdown is not counted
+    private static int attemptOf(Message message) {
+        Object attempt = message.getMessageProperties().getHeader(RabbitMQSender.ATTEMPT_HEADER);
+        return attempt instanceof Number number ? number.intValue() : 0;
+    }
+
+    Duration retryDelay(int attempt) {
+        Duration delay = retryDelay.multipliedBy(1L << Math.min(attempt - 1, 20));
+        return delay.compareTo(maxRetryDelay) > 0 ? maxRetryDelay : delay;
+    }
+
+    private void deadLetter(Message message, String stage, Throwable failure, Channel channel, long deliveryTag) {
+        try {
+            rabbitMQSender.sendToFailedQueue(message, stage, failure);
+        } catch (Exception e) {
+            log.error("Could not park failed OCR job {}, requeueing it: {}", deliveryTag, e.getMessage());
+            reject(channel, deliveryTag);
+            return;
+        }
+        Counter.builder("ocr.jobs.dead-lettered")
+                .description("OCR jobs moved to the failed-job queue")
+                .tag("stage", stage)
+                .register(meterRegistry)
+                .increment();
+        acknowledge(channel, deliveryTag);
+    }
+
+    private static void acknowledge(Channel channel, long deliveryTag) {
+        try {
+            channel.basicAck(deliveryTag, false);
+        } catch (Exception e) {
+            log.warn("Could not acknowledge OCR job {}: {}", deliveryTag, e.getMessage());
+        }
+    }
+
+    // If even the reject fails the channel is gone, and RabbitMQ redelivers the job anyway
+    private static void reject(Channel channel, long deliveryTag) {
+        try {
+            channel.basicNack(deliveryTag, false, true);
+        } catch (Exception e) {
+            log.warn("Could not requeue OCR job {}: {}", deliveryTag, e.getMessage());
+        }
+    }
+
+    // Fetches the document from MinIO into the job's scratch directory and records the SHA-256 of its content
+    private void download(OcrJob job) throws Exception {
+        log.info("Fetching document from MinIO for document ID: {} (object {})", job.documentId, job.objectKey);
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        long start = System.nanoTime();
+        try (InputStream documentStream = new DigestInputStream(minioClient.getObject(
+                GetObjectArgs.builder().bucket("documents").object(job.objectKey).build()), digest)) {
+            job.file = job.scratch.write(job.documentId + ".pdf", documentStream);
+            log.info("File successfully downloaded to: {}", job.file.getAbsolutePath());
+        }
+        downloadTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        downloadedBytes.increment(job.file.length());
+        job.downloadedHash = HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * State of one job as it moves through the stages. Each stage hands the job to the next through an
+     * executor queue, which makes its writes visible there.
+     */
+    private static final class OcrJob {
+        final String documentId;
+        final String filename;
+        // Deduplicated documents share the object of the first upload with the same content
+        final String objectKey;
+        final String contentHash;
+        final long filesize;
+        final int pageCount;
+        final boolean large;
+        final Channel channel;
+        final long deliveryTag;
+        final long received = System.nanoTime();
+        final Message message;
+        final Span span;
+
+        ScratchSpace.Directory scratch;
+        File file;
+        String downloadedHash;
+        OcrProgressReporter progress;
+        String ocrText;
+        boolean recognized;
+
+        OcrJob(Message delivery, boolean large, Channel channel, long deliveryTag, Span span) {
+            JSONObject message = new JSONObject(bodyOf(delivery));
+            this.message = delivery;
+            this.documentId = message.getString("documentId");
+            this.filename = message.getString("filename");
+            this.objectKey = message.optString("objectKey", documentId);
+            this.contentHash = message.optString("contentHash", null);
+            this.filesize = message.optLong("filesize", -1);
+            this.pageCount = message.optInt("pageCount", 0);
+            this.large = large;
+            this.channel = channel;
+            this.deliveryTag = deliveryTag;
+            this.span = span;
+        }
+
+        // The file is only needed until the text is extracted
+        void releaseScratch() {
+            if (scratch != null) {
+                scratch.close();
+            }
         }
     }
 }
@@ -0,0 +1,162 @@
+package at.technikum.worker.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Disk space for the files of running jobs. Every job gets a directory of its own below
+ * {@code ocr.scratch.directory}, which is deleted with everything in it when the job closes it, and
+ * all jobs together may write at most {@code ocr.scratch.quota}. The directory belongs to this worker:
+ * whatever a previous run left behind is deleted at startup.
+ */
+@Slf4j
+@Component
+public class ScratchSpace {
+
+    private final Path root;
+    private final long quota;
+    private final int bufferSize;
+
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong peakBytes = new AtomicLong();
+    private final AtomicInteger openDirectories = new AtomicInteger();
+
+    public ScratchSpace(MeterRegistry meterRegistry,
+                        @Value("${ocr.scratch.directory:${java.io.tmpdir}/paperless-ocr}") String directory,
+                        @Value("${ocr.scratch.quota:2GB}") DataSize quota,
+                        @Value("${ocr.scratch.buffer-size:1MB}") DataSize bufferSize) {
+        this.root = Path.of(directory);
+        this.quota = quota.toBytes();
+        this.bufferSize = (int) bufferSize.toBytes();
+
+        Gauge.builder("ocr.scratch.used", usedBytes, AtomicLong::get)
+                .description("Bytes written to the scratch directories of running jobs")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("ocr.scratch.quota", this, ScratchSpace::quota)
+                .description("Bytes all jobs together may write to scratch directories")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("ocr.scratch.directories", openDirectories, AtomicInteger::get)
+                .description("Scratch directories of running jobs")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void sweep() throws IOException {
+        Files.createDirectories(root);
+        int removed = 0;
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(root)) {
+            for (Path leftover : leftovers) {
+                FileSystemUtils.deleteRecursively(leftover);
+                removed++;
+            }
+        }
+        log.info("Scratch space in {} with a quota of {} bytes, removed {} leftovers of earlier runs", root, quota, removed);
+    }
+
+    /**
+     * Creates an empty directory for one job. Closing it deletes the directory and its files.
+     */
+    public Directory open(String jobId) throws IOException {
+        Directory directory = new Directory(Files.createTempDirectory(root, jobId + "-"));
+        openDirectories.incrementAndGet();
+        return directory;
+    }
+
+    /**
+     * Bytes currently written by all jobs.
+     */
+    public long usedBytes() {
+        return usedBytes.get();
+    }
+
+    public long peakBytes() {
+        return peakBytes.get();
+    }
+
+    public long quota() {
+        return quota;
+    }
+
+    public int openDirectories() {
+        return openDirectories.get();
+    }
+
+    private void reserve(long bytes) throws IOException {
+        long used = usedBytes.addAndGet(bytes);
+        if (used > quota) {
+            usedBytes.addAndGet(-bytes);
+            throw new IOException("Scratch space quota of " + quota + " bytes exceeded");
+        }
+        peakBytes.accumulateAndGet(used, Math::max);
+    }
+
+    public class Directory implements Closeable {
+
+        private final Path path;
+        private long written;
+        private boolean closed;
+
+        private Directory(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * Copies {@code in} to a new file in this directory. The data goes through one large buffer
+         * straight into a file channel, and counts against the quota as it is written.
+         */
+        public File write(String filename, InputStream in) throws IOException {
+            Path file = path.resolve(filename);
+            byte[] buffer = new byte[bufferSize];
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                int read;
+                while ((read = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+                    reserve(read);
+                    written += read;
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                    while (chunk.hasRemaining()) {
+                        channel.write(chunk);
+                    }
+                }
+            }
+            return file.toFile();
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                FileSystemUtils.deleteRecursively(path);
+            } catch (IOException e) {
+                // Removed with the next startup sweep
+                log.warn("Could not delete scratch directory {}: {}", path, e.getMessage());
+            }
+            long used = usedBytes.addAndGet(-written);
+            log.debug("Released scratch directory {} ({} of {} bytes in use, {} directories open)",
+                    path.getFileName(), used, quota, openDirectories.decrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package at.technikum.worker.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.sourceforge.tess4j.ITesseract;
+import net.sourceforge.tess4j.TessAPI1;
+import net.sourceforge.tess4j.TesseractException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed set of pre-initialized Tesseract engines. A job checks an engine out for the duration of its
+ * OCR call, so as many documents are recognized in parallel as there are engines, by default one per core.
+ * <p>
+ * Tesseract's own OpenMP threads would multiply that load, so the worker image sets
+ * {@code OMP_THREAD_LIMIT=1}. The limit is read by the native library when it loads and cannot be
+ * changed from Java.
+ */
+@Slf4j
+@Component
+public class TesseractPool {
+
+    @FunctionalInterface
+    public interface OcrTask<T> {
+        T run(ITesseract engine) throws TesseractException;
+    }
+
+    private final List<PooledTesseract> engines = new ArrayList<>();
+    private final BlockingQueue<PooledTesseract> available;
+    private final String language;
+    private final Timer waitTimer;
+    private final Timer recognitionTimer;
+
+    public TesseractPool(MeterRegistry meterRegistry,
+                         @Value("${tesseract.datapath:/usr/share/tesseract-ocr/4.00/tessdata}") String datapath,
+                         @Value("${tesseract.language:eng}") String language,
+                         @Value("${tesseract.pool-size:0}") int poolSize,
+                         @Value("${ocr.render.dpi:300}") int renderDpi) {
+        this.language = language;
+        int size = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        available = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            PooledTesseract engine = new PooledTesseract(datapath, language);
+            // In-memory page images carry no resolution, without it Tesseract guesses and scales badly
+            engine.setTessVariable("user_defined_dpi", String.valueOf(renderDpi));
+            engines.add(engine);
+            available.add(engine);
+        }
+        log.info("Tesseract pool created with {} engines (data path: {}, language: {})", size, datapath, language);
+
+        String ompThreadLimit = System.getenv("OMP_THREAD_LIMIT");
+        if (size > 1 && !"1".equals(ompThreadLimit)) {
+            log.warn("OMP_THREAD_LIMIT is {}, {} parallel Tesseract engines may oversubscribe the CPU cores",
+                    ompThreadLimit == null ? "not set" : ompThreadLimit, size);
+        }
+        warmUp();
+
+        Gauge.builder("ocr.engines", engines, List::size)
+                .description("Tesseract engines in the pool")
+                .register(meterRegistry);
+        Gauge.builder("ocr.engines.busy", available, queue -> size - queue.size())
+                .description("Tesseract engines checked out by a job")
+                .register(meterRegistry);
+        waitTimer = Timer.builder("ocr.engine.wait")
+                .description("Time a page waits for a free Tesseract engine")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        recognitionTimer = Timer.builder("ocr.recognition")
+                .description("Time Tesseract spends on one page image")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public int size() {
+        return engines.size();
+    }
+
+    public String language() {
+        return language;
+    }
+
+    /**
+     * Version of the native Tesseract library, e.g. {@code 4.1.1}.
+     */
+    public String engineVersion() {
+        return TessAPI1.TessVersion();
+    }
+
+    /**
+     * Runs {@code task} with an engine of its own, waiting until one is free.
+     */
+    public <T> T execute(OcrTask<T> task) throws TesseractException {
+        PooledTesseract engine;
+        long waitStart = System.nanoTime();
+        try {
+            engine = available.take();
+            waitTimer.record(System.nanoTime() - waitStart, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TesseractException("Interrupted while waiting for a Tesseract engine", e);
+        }
+        long start = System.nanoTime();
+        try {
+            return task.run(engine);
+        } finally {
+            recognitionTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            available.add(engine);
+        }
+    }
+
+    // Loads the language model into every engine now instead of on the first jobs
+    private void warmUp() {
+        try {
+            engines.forEach(PooledTesseract::warmUp);
+        } catch (Throwable e) {
+            log.warn("Could not pre-initialize Tesseract engines, they are initialized on first use: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        engines.forEach(PooledTesseract::shutdown);
+    }
+}
@@ -0,0 +1,67 @@
+package at.technikum.worker.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reads the embedded text layer of a PDF page by page. Born-digital PDFs carry their text already,
+ * so only pages without a usable text layer, typically scans, need to go through Tesseract.
+ */
+@Slf4j
+@Component
+public class TextLayerExtractor {
+
+    // A page needs at least this many non-whitespace characters to skip OCR
+    @Value("${ocr.text-layer.min-chars:32}")
+    private int minChars;
+
+    // Share of unmappable glyphs (fonts without a Unicode mapping) above which the text is unusable
+    @Value("${ocr.text-layer.max-unmapped-ratio:0.1}")
+    private double maxUnmappedRatio;
+
+    /**
+     * Returns one entry per page: the embedded text, or null where the page has to be recognized.
+     * A PDF that cannot be read returns null, in which case the whole file is recognized.
+     */
+    public String[] extractPageTexts(File pdf) {
+        try (PDDocument document = PDDocument.load(pdf, MemoryUsageSetting.setupTempFileOnly())) {
+            int pageCount = document.getNumberOfPages();
+            String[] texts = new String[pageCount];
+            PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setSortByPosition(true);
+            for (int page = 1; page <= pageCount; page++) {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                String text = stripper.getText(document);
+                texts[page - 1] = isUsable(text) ? text : null;
+            }
+            return texts;
+        } catch (IOException e) {
+            log.warn("Could not read the text layer of {}, recognizing all pages: {}", pdf.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    boolean isUsable(String text) {
+        int visible = 0;
+        int unmapped = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            visible++;
+            if (c == '\uFFFD' || Character.isISOControl(c) || Character.getType(c) == Character.PRIVATE_USE) {
+                unmapped++;
+            }
+        }
+        return visible >= minChars && unmapped <= visible * maxUnmappedRatio;
+    }
+}
@@ -0,0 +1,26 @@
+package at.technikum.worker.tracing;
+
+import io.micrometer.observation.ObservationPredicate;
+import io.opentelemetry.exporter.logging.otlp.OtlpJsonLoggingSpanExporter;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.observation.ServerRequestObservationContext;
+
+@Configuration
+public class TracingConfig {
+
+    // Finished spans go to the log category io.opentelemetry.exporter.logging.otlp as OTLP JSON, one line per batch
+    @Bean
+    public SpanExporter otlpJsonLoggingSpanExporter() {
+        return OtlpJsonLoggingSpanExporter.create();
+    }
+
+    // Prometheus scrapes /actuator/prometheus every few seconds, which must not end up as traces next to the jobs
+    @Bean
+    public ObservationPredicate ignoreActuatorRequests(@Value("${management.endpoints.web.base-path:/actuator}") String actuatorPath) {
+        return (name, context) -> !(context instanceof ServerRequestObservationContext request
+                && request.getCarrier().getRequestURI().startsWith(actuatorPath));
+    }
+}
@@ -0,0 +1,90 @@
+package at.technikum.worker.rabbitMQ;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class FailedJobsEndpointTest {
+
+    private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+    private final Channel channel = mock(Channel.class);
+    private final FailedJobsEndpoint endpoint = new FailedJobsEndpoint(rabbitTemplate);
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        when(rabbitTemplate.execute(any(ChannelCallback.class)))
+                .thenAnswer(invocation -> invocation.<ChannelCallback<?>>getArgument(0).doInRabbit(channel));
+    }
+
+    private static GetResponse parked(long deliveryTag, Map<String, Object> headers) {
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder().headers(headers).build();
+        return new GetResponse(new Envelope(deliveryTag, false, "", RabbitMQConfig.FAILED_QUEUE), properties,
+                "{\"documentId\":\"doc-1\"}".getBytes(StandardCharsets.UTF_8), 0);
+    }
+
+    @Test
+    void replay_movesParkedJobsBackToTheirLaneWithAttemptsReset() throws Exception {
+        // Arrange
+        when(channel.messageCount(RabbitMQConfig.FAILED_QUEUE)).thenReturn(2L);
+        when(channel.basicGet(RabbitMQConfig.FAILED_QUEUE, false)).thenReturn(
+                parked(1, Map.of(RabbitMQSender.QUEUE_HEADER, RabbitMQConfig.LARGE_PROCESSING_QUEUE,
+                        RabbitMQSender.ATTEMPT_HEADER, 5,
+                        RabbitMQSender.FAILED_STAGE_HEADER, "index",
+                        RabbitMQSender.ERROR_HEADER, "Elasticsearch unavailable",
+                        "traceparent", "00-abc-def-01")),
+                parked(2, Map.of()));
+
+        // Act
+        Map<String, Integer> result = endpoint.replay();
+
+        // Assert
+        assertEquals(2, result.get("replayed"));
+        ArgumentCaptor<AMQP.BasicProperties> properties = ArgumentCaptor.forClass(AMQP.BasicProperties.class);
+        verify(channel).basicPublish(eq(""), eq(RabbitMQConfig.LARGE_PROCESSING_QUEUE), properties.capture(), any(byte[].class));
+        assertEquals(Map.of("traceparent", "00-abc-def-01"), properties.getValue().getHeaders());
+        // Jobs parked before the source queue was recorded go to the regular lane
+        verify(channel).basicPublish(eq(""), eq(RabbitMQConfig.PROCESSING_QUEUE), any(AMQP.BasicProperties.class), any(byte[].class));
+        verify(channel).basicAck(1, false);
+        verify(channel).basicAck(2, false);
+    }
+
+    @Test
+    void replay_stopsAtJobsParkedWhenItStarted() throws Exception {
+        // Arrange
+        when(channel.messageCount(RabbitMQConfig.FAILED_QUEUE)).thenReturn(1L);
+        when(channel.basicGet(RabbitMQConfig.FAILED_QUEUE, false)).thenReturn(parked(1, Map.of()), parked(2, Map.of()));
+
+        // Act
+        Map<String, Integer> result = endpoint.replay();
+
+        // Assert
+        assertEquals(1, result.get("replayed"));
+        verify(channel, times(1)).basicGet(RabbitMQConfig.FAILED_QUEUE, false);
+    }
+
+    @Test
+    void replay_publishFails_leavesJobUnacknowledged() throws Exception {
+        // Arrange
+        when(channel.messageCount(RabbitMQConfig.FAILED_QUEUE)).thenReturn(1L);
+        when(channel.basicGet(RabbitMQConfig.FAILED_QUEUE, false)).thenReturn(parked(1, Map.of()));
+        doThrow(new java.io.IOException("Channel closed")).when(channel)
+                .basicPublish(anyString(), anyString(), any(AMQP.BasicProperties.class), any(byte[].class));
+
+        // Act & Assert
+        assertThrows(Exception.class, endpoint::replay);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+}
@@ -0,0 +1,97 @@
+package at.technikum.worker.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.bulk.OperationType;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.ElasticsearchTransport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+// The transport is mocked below the client, so the bulk ingester runs as in production
+class ElasticsearchServiceTest {
+
+    private final ElasticsearchTransport transport = mock(ElasticsearchTransport.class);
+    private final ElasticsearchService elasticsearchService = new ElasticsearchService();
+
+    @BeforeEach
+    void setup() {
+        when(transport.jsonpMapper()).thenReturn(new JacksonJsonpMapper());
+        ReflectionTestUtils.setField(elasticsearchService, "elasticsearchClient", new ElasticsearchClient(transport));
+        // Every third operation sends a request, the flush timer never fires during a test
+        ReflectionTestUtils.setField(elasticsearchService, "maxOperations", 3);
+        ReflectionTestUtils.setField(elasticsearchService, "maxSize", DataSize.ofMegabytes(5));
+        ReflectionTestUtils.setField(elasticsearchService, "flushInterval", Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(elasticsearchService, "maxConcurrentRequests", 1);
+        elasticsearchService.startIngester();
+    }
+
+    @AfterEach
+    void tearDown() {
+        elasticsearchService.stopIngester();
+    }
+
+    @Test
+    void indexDocument_failedItemFailsOnlyItsOwnFuture() throws Exception {
+        // Arrange
+        BulkResponse response = BulkResponse.of(b -> b
+                .errors(true)
+                .took(5)
+                .items(item("doc-1", null), item("doc-2", "failed to parse field [ocrText]"), item("doc-3", null)));
+        doReturn(CompletableFuture.completedFuture(response)).when(transport).performRequestAsync(any(), any(), any());
+
+        // Act
+        CompletableFuture<String> first = elasticsearchService.indexDocument("doc-1", "a.pdf", "text a", 1);
+        CompletableFuture<String> second = elasticsearchService.indexDocument("doc-2", "b.pdf", "text b", 1);
+        CompletableFuture<String> third = elasticsearchService.indexDocument("doc-3", "c.pdf", "text c", 1);
+
+        // Assert
+        assertEquals("doc-1", first.get(5, TimeUnit.SECONDS));
+        assertEquals("doc-3", third.get(5, TimeUnit.SECONDS));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+        assertEquals("Indexing document doc-2 failed: failed to parse field [ocrText]", e.getCause().getMessage());
+    }
+
+    @Test
+    void indexDocument_failedRequestFailsEveryFuture() {
+        // Arrange
+        IOException failure = new IOException("Connection refused");
+        doReturn(CompletableFuture.failedFuture(failure)).when(transport).performRequestAsync(any(), any(), any());
+
+        // Act
+        CompletableFuture<String> first = elasticsearchService.indexDocument("doc-1", "a.pdf", "text a", 1);
+        CompletableFuture<String> second = elasticsearchService.indexDocument("doc-2", "b.pdf", "text b", 1);
+        CompletableFuture<String> third = elasticsearchService.indexDocument("doc-3", "c.pdf", "text c", 1);
+
+        // Assert
+        for (CompletableFuture<String> indexed : List.of(first, second, third)) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> indexed.get(5, TimeUnit.SECONDS));
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    private static BulkResponseItem item(String id, String error) {
+        return BulkResponseItem.of(i -> {
+            i.operationType(OperationType.Update).index("documents").id(id).status(error == null ? 200 : 400);
+            if (error != null) {
+                i.error(e -> e.type("document_parsing_exception").reason(error));
+            }
+            return i;
+        });
+    }
+}
@@ -0,0 +1,61 @@
+package at.technikum.worker.service;
+
+import lombok.extern.slf4j.Slf4j;
+import net.sourceforge.tess4j.TesseractException;
+import net.sourceforge.tess4j.util.PdfGsUtilities;
+import org.ghost4j.Ghostscript;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Converts all pages to PNG files with Tess4J's Ghostscript binding up front and lets Tesseract read
+ * them from disk. Only kept to compare the worker's {@link PdfBoxPageSource} against, see {@link RenderingBenchmark}.
+ */
+@Slf4j
+class GhostscriptPageSource implements PageSource {
+
+    private final File[] images;
+
+    GhostscriptPageSource(File pdf) throws IOException {
+        requireGhostscript();
+        // Not through PdfUtilities: if Ghostscript fails there, it switches the whole JVM to PDFBox
+        // (system property pdf.library) and the comparison would silently measure PDFBox twice
+        this.images = PdfGsUtilities.convertPdf2Png(pdf);
+    }
+
+    /**
+     * Fails unless the Ghostscript library can be loaded.
+     */
+    static void requireGhostscript() {
+        try {
+            log.info("Using Ghostscript {}", Ghostscript.getRevision().getNumber());
+        } catch (LinkageError e) {
+            throw new IllegalStateException("Ghostscript is not installed, libgs could not be loaded", e);
+        }
+    }
+
+    @Override
+    public int pageCount() {
+        return images.length;
+    }
+
+    @Override
+    public String recognize(int pageIndex, TesseractPool tesseractPool) throws TesseractException {
+        return tesseractPool.execute(engine -> engine.doOCR(images[pageIndex]));
+    }
+
+    @Override
+    public void close() {
+        File directory = null;
+        for (File image : images) {
+            directory = image.getParentFile();
+            if (!image.delete()) {
+                log.warn("Could not delete page image {}", image.getAbsolutePath());
+            }
+        }
+        if (directory != null && !directory.delete()) {
+            log.warn("Could not delete page image directory {}", directory.getAbsolutePath());
+        }
+    }
+}
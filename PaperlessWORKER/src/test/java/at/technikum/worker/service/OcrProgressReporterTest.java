@@ -0,0 +1,76 @@
+package at.technikum.worker.service;
+
+import at.technikum.worker.rabbitMQ.RabbitMQSender;
+import io.micrometer.tracing.Span;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+class OcrProgressReporterTest {
+
+    private final ElasticsearchService elasticsearchService = mock(ElasticsearchService.class);
+    private final RabbitMQSender rabbitMQSender = mock(RabbitMQSender.class);
+    private final Span span = mock(Span.class);
+    private final OcrProgressReporter reporter = new OcrProgressReporter(elasticsearchService, rabbitMQSender,
+            "doc-1", "scan.pdf", Duration.ZERO, span);
+
+    @Test
+    void pagesRecognized_sendsEveryPageOnce() {
+        // Arrange
+        when(elasticsearchService.indexProgress(anyString(), anyString(), anyMap(), anyInt()))
+                .thenReturn(CompletableFuture.completedFuture("doc-1"));
+        String[] texts = new String[4];
+
+        // Act
+        texts[2] = "c";
+        reporter.pagesRecognized(texts, 1);
+        texts[0] = "a";
+        reporter.pagesRecognized(texts, 2);
+
+        // Assert
+        verify(elasticsearchService).indexProgress("doc-1", "scan.pdf", Map.of(2, "c"), 4);
+        verify(elasticsearchService).indexProgress("doc-1", "scan.pdf", Map.of(0, "a"), 4);
+        verify(rabbitMQSender).sendProgressToResultQueue("doc-1", 1, 4, span);
+        verify(rabbitMQSender).sendProgressToResultQueue("doc-1", 2, 4, span);
+    }
+
+    @Test
+    void pagesRecognized_resendsPagesOfFailedReport() {
+        // Arrange
+        when(elasticsearchService.indexProgress(anyString(), anyString(), anyMap(), anyInt()))
+                .thenReturn(CompletableFuture.failedFuture(new IOException("Bulk request failed")))
+                .thenReturn(CompletableFuture.completedFuture("doc-1"));
+        String[] texts = new String[4];
+
+        // Act
+        texts[0] = "a";
+        reporter.pagesRecognized(texts, 1);
+        texts[1] = "b";
+        reporter.pagesRecognized(texts, 2);
+
+        // Assert
+        verify(elasticsearchService).indexProgress("doc-1", "scan.pdf", Map.of(0, "a"), 4);
+        verify(elasticsearchService).indexProgress("doc-1", "scan.pdf", Map.of(0, "a", 1, "b"), 4);
+        verify(rabbitMQSender).sendProgressToResultQueue("doc-1", 2, 4, span);
+        verifyNoMoreInteractions(rabbitMQSender);
+    }
+
+    @Test
+    void pagesRecognized_leavesLastPageToFinalResult() {
+        // Arrange
+        String[] texts = {"a", "b"};
+
+        // Act
+        reporter.pagesRecognized(texts, 2);
+
+        // Assert
+        verifyNoInteractions(elasticsearchService);
+        assertEquals(2, reporter.pageCount());
+    }
+}
@@ -0,0 +1,122 @@
+package at.technikum.worker.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.minio.GetObjectArgs;
+import io.minio.GetObjectResponse;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import okhttp3.Headers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class OcrResultCacheTest {
+
+    private final MinioClient minioClient = mock(MinioClient.class);
+    private final TesseractPool tesseractPool = mock(TesseractPool.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OcrResultCache cache = new OcrResultCache();
+
+    @BeforeEach
+    void setup() throws Exception {
+        when(tesseractPool.language()).thenReturn("deu+eng");
+        when(tesseractPool.engineVersion()).thenReturn("5.3.0");
+        when(minioClient.bucketExists(any())).thenReturn(true);
+        ReflectionTestUtils.setField(cache, "minioClient", minioClient);
+        ReflectionTestUtils.setField(cache, "tesseractPool", tesseractPool);
+        ReflectionTestUtils.setField(cache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "bucket", "ocr-cache");
+        ReflectionTestUtils.setField(cache, "renderDpi", 300);
+        ReflectionTestUtils.setField(cache, "textLayerEnabled", true);
+        ReflectionTestUtils.setField(cache, "textLayerMinChars", 32);
+        ReflectionTestUtils.setField(cache, "textLayerMaxUnmappedRatio", 0.1);
+    }
+
+    @Test
+    void put_keysEntryByContentAndEngineConfiguration() throws Exception {
+        // Arrange
+        cache.init();
+
+        // Act
+        cache.put("abc123", "Text");
+
+        // Assert
+        ArgumentCaptor<PutObjectArgs> captor = ArgumentCaptor.forClass(PutObjectArgs.class);
+        verify(minioClient).putObject(captor.capture());
+        assertEquals("ocr-cache", captor.getValue().bucket());
+        assertEquals("abc123/deu+eng_5.3.0_300dpi_text-32-0.1.txt.gz", captor.getValue().object());
+    }
+
+    @Test
+    void put_textLayerSettingsStartFreshEntries() throws Exception {
+        // Arrange
+        ReflectionTestUtils.setField(cache, "textLayerMinChars", 64);
+        cache.init();
+        OcrResultCache withoutTextLayer = new OcrResultCache();
+        ReflectionTestUtils.setField(withoutTextLayer, "minioClient", minioClient);
+        ReflectionTestUtils.setField(withoutTextLayer, "tesseractPool", tesseractPool);
+        ReflectionTestUtils.setField(withoutTextLayer, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(withoutTextLayer, "enabled", true);
+        ReflectionTestUtils.setField(withoutTextLayer, "bucket", "ocr-cache");
+        ReflectionTestUtils.setField(withoutTextLayer, "renderDpi", 300);
+        ReflectionTestUtils.setField(withoutTextLayer, "textLayerEnabled", false);
+        withoutTextLayer.init();
+
+        // Act
+        cache.put("abc123", "Text");
+        withoutTextLayer.put("abc123", "Text");
+
+        // Assert
+        ArgumentCaptor<PutObjectArgs> captor = ArgumentCaptor.forClass(PutObjectArgs.class);
+        verify(minioClient, times(2)).putObject(captor.capture());
+        assertEquals("abc123/deu+eng_5.3.0_300dpi_text-64-0.1.txt.gz", captor.getAllValues().get(0).object());
+        assertEquals("abc123/deu+eng_5.3.0_300dpi_notext.txt.gz", captor.getAllValues().get(1).object());
+    }
+
+    @Test
+    void get_returnsStoredTextAfterGzipRoundTrip() throws Exception {
+        // Arrange
+        cache.init();
+        String text = "Rechnung Nr. 42 – Gesamtbetrag 120,00 €\n".repeat(50);
+        ArgumentCaptor<PutObjectArgs> putCaptor = ArgumentCaptor.forClass(PutObjectArgs.class);
+        cache.put("abc123", text);
+        verify(minioClient).putObject(putCaptor.capture());
+        byte[] stored = putCaptor.getValue().stream().readAllBytes();
+        assertTrue(stored.length < text.length());
+        when(minioClient.getObject(any(GetObjectArgs.class))).thenReturn(
+                new GetObjectResponse(Headers.of(), "ocr-cache", null, putCaptor.getValue().object(), new ByteArrayInputStream(stored)));
+
+        // Act
+        Optional<String> cached = cache.get("abc123");
+
+        // Assert
+        assertEquals(Optional.of(text), cached);
+        ArgumentCaptor<GetObjectArgs> getCaptor = ArgumentCaptor.forClass(GetObjectArgs.class);
+        verify(minioClient).getObject(getCaptor.capture());
+        assertEquals(putCaptor.getValue().object(), getCaptor.getValue().object());
+        assertEquals(1.0, meterRegistry.get("ocr.cache.lookups").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void get_unreadableEntryCountsAsMiss() throws Exception {
+        // Arrange
+        cache.init();
+        when(minioClient.getObject(any(GetObjectArgs.class))).thenReturn(
+                new GetObjectResponse(Headers.of(), "ocr-cache", null, "abc123", new ByteArrayInputStream("not gzip".getBytes())));
+
+        // Act
+        Optional<String> cached = cache.get("abc123");
+
+        // Assert
+        assertTrue(cached.isEmpty());
+        assertEquals(1.0, meterRegistry.get("ocr.cache.lookups").tag("result", "miss").counter().count());
+    }
+}
@@ -0,0 +1,76 @@
+package at.technikum.worker.service;
+
+import net.sourceforge.tess4j.TesseractException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+// The page source stands in for rendering and Tesseract, so the pool is never asked for an engine
+class PageOcrTaskTest {
+
+    private final TesseractPool tesseractPool = mock(TesseractPool.class);
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void compute_storesTextsInPageOrderAndSkipsRecognizedPages() {
+        // Arrange
+        String[] texts = new String[9];
+        texts[4] = "embedded 4";
+        Set<Integer> recognized = ConcurrentHashMap.newKeySet();
+        AtomicInteger pagesDone = new AtomicInteger();
+        PageSource pages = new FakePageSource(texts.length, -1, recognized);
+
+        // Act
+        pool.invoke(new PageOcrTask(tesseractPool, pages, texts, 0, texts.length, pagesDone::incrementAndGet));
+
+        // Assert
+        assertArrayEquals(new String[]{"page 0", "page 1", "page 2", "page 3", "embedded 4", "page 5", "page 6", "page 7", "page 8"}, texts);
+        assertFalse(recognized.contains(4));
+        assertEquals(8, recognized.size());
+        assertEquals(8, pagesDone.get());
+    }
+
+    @Test
+    void compute_failedPageFailsTheTaskWithItsCause() {
+        // Arrange
+        String[] texts = new String[6];
+        AtomicInteger pagesDone = new AtomicInteger();
+        PageSource pages = new FakePageSource(texts.length, 3, ConcurrentHashMap.newKeySet());
+
+        // Act & Assert
+        PageOcrTask.PageOcrException e = assertThrows(PageOcrTask.PageOcrException.class,
+                () -> pool.invoke(new PageOcrTask(tesseractPool, pages, texts, 0, texts.length, pagesDone::incrementAndGet)));
+        assertInstanceOf(TesseractException.class, e.getCause());
+        assertEquals("Page 3 is unreadable", e.getCause().getMessage());
+        assertNull(texts[3]);
+        assertTrue(pagesDone.get() < texts.length);
+    }
+
+    private record FakePageSource(int pageCount, int failingPage, Set<Integer> recognized) implements PageSource {
+
+        @Override
+        public String recognize(int pageIndex, TesseractPool tesseractPool) throws TesseractException {
+            if (pageIndex == failingPage) {
+                throw new TesseractException("Page " + pageIndex + " is unreadable");
+            }
+            recognized.add(pageIndex);
+            return "page " + pageIndex;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
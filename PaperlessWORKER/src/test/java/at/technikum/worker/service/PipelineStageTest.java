@@ -0,0 +1,100 @@
+package at.technikum.worker.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineStageTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PipelineStage stage = new PipelineStage("test", 1, 1, meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        stage.shutdown();
+    }
+
+    @Test
+    void submit_fullQueue_blocksUntilThereIsRoom() throws Exception {
+        // Arrange
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        stage.submit(() -> {
+            running.countDown();
+            await(release);
+            done.countDown();
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        // Takes the only place in the queue
+        stage.submit(done::countDown);
+
+        // Act
+        CompletableFuture<Void> third = CompletableFuture.runAsync(() -> stage.submit(done::countDown));
+
+        // Assert
+        Thread.sleep(200);
+        assertFalse(third.isDone(), "submit must wait while the stage is busy and its queue is full");
+        assertEquals(1.0, meterRegistry.get("ocr.pipeline.queued").tag("stage", "test").gauge().value());
+
+        release.countDown();
+        third.get(5, TimeUnit.SECONDS);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(3, meterRegistry.get("ocr.pipeline.wait").tag("stage", "test").timer().count());
+    }
+
+    @Test
+    void submit_afterShutdown_isRejected() {
+        // Arrange
+        stage.shutdown();
+
+        // Act & Assert
+        assertThrows(RejectedExecutionException.class, () -> stage.submit(() -> { }));
+    }
+
+    @Test
+    void submit_interruptedWhileWaiting_isRejected() throws Exception {
+        // Arrange
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        stage.submit(() -> {
+            running.countDown();
+            await(release);
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        stage.submit(() -> { });
+
+        // Act
+        CompletableFuture<Throwable> failure = new CompletableFuture<>();
+        Thread submitter = new Thread(() -> {
+            try {
+                stage.submit(() -> { });
+                failure.complete(null);
+            } catch (RejectedExecutionException e) {
+                failure.complete(e);
+            }
+        });
+        submitter.start();
+        Thread.sleep(200);
+        submitter.interrupt();
+
+        // Assert
+        assertInstanceOf(RejectedExecutionException.class, failure.get(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package at.technikum.worker.service;
+
+import at.technikum.worker.rabbitMQ.AmqpTracing;
+import at.technikum.worker.rabbitMQ.RabbitMQSender;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Span;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+class ProcessingServiceTest {
+
+    private static final long TAG = 7;
+    private static final String JOB = "{\"documentId\":\"doc-1\",\"filename\":\"scan.pdf\",\"contentHash\":\"abc\"}";
+
+    private final RabbitMQSender rabbitMQSender = mock(RabbitMQSender.class);
+    private final ElasticsearchService elasticsearchService = mock(ElasticsearchService.class);
+    private final OcrResultCache ocrResultCache = mock(OcrResultCache.class);
+    private final ScratchSpace scratchSpace = mock(ScratchSpace.class);
+    private final AmqpTracing amqpTracing = mock(AmqpTracing.class);
+    private final Channel channel = mock(Channel.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ProcessingService processingService = new ProcessingService();
+
+    @BeforeEach
+    void setup() {
+        ReflectionTestUtils.setField(processingService, "rabbitMQSender", rabbitMQSender);
+        ReflectionTestUtils.setField(processingService, "elasticsearchService", elasticsearchService);
+        ReflectionTestUtils.setField(processingService, "ocrResultCache", ocrResultCache);
+        ReflectionTestUtils.setField(processingService, "scratchSpace", scratchSpace);
+        ReflectionTestUtils.setField(processingService, "amqpTracing", amqpTracing);
+        ReflectionTestUtils.setField(processingService, "meterRegistry", meterRegistry);
+        for (String stage : new String[]{"fetch", "ocr", "index"}) {
+            ReflectionTestUtils.setField(processingService, stage + "Threads", 1);
+            ReflectionTestUtils.setField(processingService, stage + "Queue", 1);
+        }
+        ReflectionTestUtils.setField(processingService, "largeOcrThreads", 1);
+        ReflectionTestUtils.setField(processingService, "maxAttempts", 3);
+        ReflectionTestUtils.setField(processingService, "retryDelay", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(processingService, "maxRetryDelay", Duration.ofMinutes(5));
+        processingService.startStages();
+
+        Span span = mock(Span.class, RETURNS_SELF);
+        when(amqpTracing.startJobSpan(anyString(), any(Message.class))).thenReturn(span);
+        when(amqpTracing.startStageSpan(anyString(), any(Span.class))).thenReturn(span);
+    }
+
+    @AfterEach
+    void tearDown() {
+        processingService.stopStages();
+    }
+
+    private static Message delivery(String body, boolean redelivered) {
+        MessageProperties properties = new MessageProperties();
+        properties.setRedelivered(redelivered);
+        return new Message(body.getBytes(StandardCharsets.UTF_8), properties);
+    }
+
+    @Test
+    void processOcrJob_indexedAndPublished_isAcknowledged() throws Exception {
+        // Arrange
+        when(ocrResultCache.get("abc")).thenReturn(Optional.of("cached text"));
+        when(elasticsearchService.indexDocument("doc-1", "scan.pdf", "cached text", 0))
+                .thenReturn(CompletableFuture.completedFuture("doc-1"));
+
+        // Act
+        processingService.processOcrJob(delivery(JOB, false), channel, TAG);
+
+        // Assert
+        verify(channel, timeout(5000)).basicAck(TAG, false);
+        verify(rabbitMQSender).sendToResultQueue(eq("doc-1"), eq("abc"), any(Span.class));
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    void processOcrJob_failure_isRetriedLaterAndAcknowledged() throws Exception {
+        // Arrange
+        when(ocrResultCache.get("abc")).thenReturn(Optional.empty());
+        when(scratchSpace.open("doc-1")).thenThrow(new IOException("Scratch space quota exceeded"));
+        Message message = delivery(JOB, false);
+
+        // Act
+        processingService.processOcrJob(message, channel, TAG);
+
+        // Assert
+        verify(channel, timeout(5000)).basicAck(TAG, false);
+        verify(rabbitMQSender).sendToRetryQueue(message, false, 1, Duration.ofSeconds(30));
+        verify(rabbitMQSender, never()).sendToFailedQueue(any(), anyString(), any());
+        assertEquals(1.0, meterRegistry.get("ocr.jobs.retried").tag("stage", "fetch").counter().count());
+    }
+
+    @Test
+    void processOcrJob_redeliveryAfterCrash_doesNotCountAsAttempt() throws Exception {
+        // Arrange
+        when(ocrResultCache.get("abc")).thenReturn(Optional.empty());
+        when(scratchSpace.open("doc-1")).thenThrow(new IOException("Scratch space quota exceeded"));
+        Message message = delivery(JOB, true);
+
+        // Act
+        processingService.processOcrJob(message, channel, TAG);
+
+        // Assert
+        verify(channel, timeout(5000)).basicAck(TAG, false);
+        verify(rabbitMQSender).sendToRetryQueue(message, false, 1, Duration.ofSeconds(30));
+    }
+
+    @Test
+    void processOcrJob_lastAttemptFails_isParkedAndAcknowledged() throws Exception {
+        // Arrange
+        when(ocrResultCache.get("abc")).thenReturn(Optional.of("cached text"));
+        when(elasticsearchService.indexDocument(anyString(), anyString(), anyString(), anyInt()))
+                .thenReturn(CompletableFuture.failedFuture(new IOException("Elasticsearch unavailable")));
+        Message message = delivery(JOB, false);
+        message.getMessageProperties().setHeader(RabbitMQSender.ATTEMPT_HEADER, 2);
+
+        // Act
+        processingService.processOcrJob(message, channel, TAG);
+
+        // Assert
+        verify(channel, timeout(5000)).basicAck(TAG, false);
+        verify(rabbitMQSender).sendToFailedQueue(eq(message), eq("index"), any(IOException.class));
+        verify(rabbitMQSender, never()).sendToRetryQueue(any(), anyBoolean(), anyInt(), any());
+        verify(rabbitMQSender, never()).sendToResultQueue(anyString(), anyString(), any());
+        assertEquals(1.0, meterRegistry.get("ocr.jobs.dead-lettered").tag("stage", "index").counter().count());
+    }
+
+    @Test
+    void processOcrJob_publishFails_isRetriedInsteadOfAcknowledgedAsDone() throws Exception {
+        // Arrange
+        when(ocrResultCache.get("abc")).thenReturn(Optional.of("cached text"));
+        when(elasticsearchService.indexDocument(anyString(), anyString(), anyString(), anyInt()))
+                .thenReturn(CompletableFuture.completedFuture("doc-1"));
+        doThrow(new AmqpException("Connection closed")).when(rabbitMQSender).sendToResultQueue(anyString(), anyString(), any());
+
+        // Act
+        processingService.processOcrJob(delivery(JOB, false), channel, TAG);
+
+        // Assert
+        verify(channel, timeout(5000)).basicAck(TAG, false);
+        verify(rabbitMQSender).sendToRetryQueue(any(), eq(false), eq(1), any());
+    }
+
+    @Test
+    void processOcrJob_retryCannotBeScheduled_isRequeued() throws Exception {
+        // Arrange
+        when(ocrResultCache.get("abc")).thenReturn(Optional.empty());
+        when(scratchSpace.open("doc-1")).thenThrow(new IOException("Scratch space quota exceeded"));
+        doThrow(new AmqpException("Connection closed")).when(rabbitMQSender).sendToRetryQueue(any(), anyBoolean(), anyInt(), any());
+
+        // Act
+        processingService.processOcrJob(delivery(JOB, false), channel, TAG);
+
+        // Assert
+        verify(channel, timeout(5000)).basicNack(TAG, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    void processOcrJob_duringShutdown_isRequeuedAndNotLeftInFlight() throws Exception {
+        // Arrange
+        processingService.stopStages();
+
+        // Act
+        processingService.processOcrJob(delivery(JOB, false), channel, TAG);
+
+        // Assert
+        verify(channel).basicNack(TAG, false, true);
+        assertEquals(0.0, meterRegistry.get("ocr.jobs.in-flight").gauge().value());
+    }
+
+    @Test
+    void retryDelay_doublesUpToMaximum() {
+        // Act & Assert
+        assertEquals(Duration.ofSeconds(30), processingService.retryDelay(1));
+        assertEquals(Duration.ofSeconds(60), processingService.retryDelay(2));
+        assertEquals(Duration.ofSeconds(240), processingService.retryDelay(4));
+        assertEquals(Duration.ofMinutes(5), processingService.retryDelay(5));
+        assertEquals(Duration.ofMinutes(5), processingService.retryDelay(40));
+    }
+
+    @Test
+    void processOcrJob_malformedMessage_isParkedWithoutRetry() throws Exception {
+        // Arrange
+        Message message = delivery("not json", false);
+
+        // Act
+        processingService.processOcrJob(message, channel, TAG);
+
+        // Assert
+        verify(rabbitMQSender).sendToFailedQueue(eq(message), eq("parse"), any());
+        verify(channel).basicAck(TAG, false);
+    }
+
+    @Test
+    void processOcrJob_parkingFails_isRequeued() throws Exception {
+        // Arrange
+        doThrow(new AmqpException("Connection closed")).when(rabbitMQSender).sendToFailedQueue(any(), anyString(), any());
+
+        // Act
+        processingService.processOcrJob(delivery("not json", false), channel, TAG);
+
+        // Assert
+        verify(channel).basicNack(TAG, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+}
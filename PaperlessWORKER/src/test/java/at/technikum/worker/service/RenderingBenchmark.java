@@ -0,0 +1,100 @@
+package at.technikum.worker.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares in-memory PDFBox rendering with the Ghostscript round trip on a real document, once for
+ * rendering alone and once including OCR. Not part of the regular build, it only runs when asked for
+ * with a file:
+ * <pre>
+ * mvn test -Dtest=RenderingBenchmark -Dbenchmark.file=/path/to/scan.pdf [-Dbenchmark.iterations=3]
+ * </pre>
+ * Ghostscript and Tesseract have to be installed locally, the worker image ships neither Ghostscript
+ * nor this class. Pages are recognized one after another with a single engine, so the numbers show
+ * the per-page cost of each path.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "benchmark.file", matches = ".+")
+class RenderingBenchmark {
+
+    private static final File file = new File(System.getProperty("benchmark.file", ""));
+    private static final int iterations = Integer.getInteger("benchmark.iterations", 3);
+    private static final int renderDpi = Integer.getInteger("ocr.render.dpi", 300);
+
+    private static TesseractPool tesseractPool;
+
+    @BeforeAll
+    static void setup() {
+        // Without Ghostscript there is nothing to compare
+        GhostscriptPageSource.requireGhostscript();
+        tesseractPool = new TesseractPool(new SimpleMeterRegistry(),
+                System.getProperty("tesseract.datapath", "/usr/share/tesseract-ocr/4.00/tessdata"),
+                System.getProperty("tesseract.language", "eng"), 1, renderDpi);
+    }
+
+    @AfterAll
+    static void shutdown() {
+        if (tesseractPool != null) {
+            tesseractPool.shutdown();
+        }
+    }
+
+    @Test
+    void comparePdfBoxWithGhostscript() throws Exception {
+        log.info("Benchmarking page rendering of {} with {} iterations", file.getName(), iterations);
+        // The first round loads classes, fonts and the language model and is not measured
+        measure(false);
+        measure(true);
+    }
+
+    private void measure(boolean report) throws Exception {
+        int runs = report ? iterations : 1;
+        long pdfBoxRender = 0, ghostscriptRender = 0, pdfBoxOcr = 0, ghostscriptOcr = 0;
+        int pages = 0;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            try (PdfBoxPageSource source = new PdfBoxPageSource(file, renderDpi)) {
+                pages = source.pageCount();
+                for (int page = 0; page < pages; page++) {
+                    source.render(page);
+                }
+            }
+            pdfBoxRender += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            new GhostscriptPageSource(file).close();
+            ghostscriptRender += System.nanoTime() - start;
+
+            pdfBoxOcr += recognizeAll(() -> new PdfBoxPageSource(file, renderDpi));
+            ghostscriptOcr += recognizeAll(() -> new GhostscriptPageSource(file));
+        }
+        if (report) {
+            log.info("{} pages, average of {} runs", pages, runs);
+            log.info("Rendering only  - PDFBox: {} ms, Ghostscript: {} ms", millis(pdfBoxRender, runs), millis(ghostscriptRender, runs));
+            log.info("Rendering + OCR - PDFBox: {} ms, Ghostscript: {} ms", millis(pdfBoxOcr, runs), millis(ghostscriptOcr, runs));
+        }
+    }
+
+    private long recognizeAll(Callable<PageSource> sources) throws Exception {
+        long start = System.nanoTime();
+        try (PageSource source = sources.call()) {
+            for (int page = 0; page < source.pageCount(); page++) {
+                source.recognize(page, tesseractPool);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long millis(long nanos, int runs) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos / runs);
+    }
+}
@@ -0,0 +1,109 @@
+package at.technikum.worker.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScratchSpaceTest {
+
+    @TempDir
+    Path root;
+
+    private ScratchSpace scratchSpace;
+
+    @BeforeEach
+    void setup() throws IOException {
+        scratchSpace = new ScratchSpace(new SimpleMeterRegistry(), root.toString(), DataSize.ofBytes(10), DataSize.ofBytes(4));
+        scratchSpace.sweep();
+    }
+
+    private static ByteArrayInputStream bytes(int count) {
+        return new ByteArrayInputStream(new byte[count]);
+    }
+
+    @Test
+    void write_countsBytesAgainstQuotaUntilClosed() throws IOException {
+        // Arrange
+        ScratchSpace.Directory directory = scratchSpace.open("job");
+
+        // Act
+        File file = directory.write("document.pdf", bytes(6));
+
+        // Assert
+        assertEquals(6, file.length());
+        assertEquals(6, scratchSpace.usedBytes());
+        assertEquals(1, scratchSpace.openDirectories());
+
+        directory.close();
+        assertEquals(0, scratchSpace.usedBytes());
+        assertEquals(0, scratchSpace.openDirectories());
+        assertEquals(6, scratchSpace.peakBytes());
+        assertFalse(Files.exists(file.toPath()));
+    }
+
+    @Test
+    void write_quotaExceeded_rollsBackReservation() throws IOException {
+        // Arrange
+        ScratchSpace.Directory first = scratchSpace.open("first");
+        first.write("document.pdf", bytes(8));
+        ScratchSpace.Directory second = scratchSpace.open("second");
+
+        // Act & Assert
+        IOException exception = assertThrows(IOException.class, () -> second.write("document.pdf", bytes(4)));
+        assertTrue(exception.getMessage().contains("quota"));
+        assertEquals(8, scratchSpace.usedBytes(), "the chunk that did not fit must not stay reserved");
+
+        // What still fits is accepted
+        second.write("small.pdf", bytes(2));
+        assertEquals(10, scratchSpace.usedBytes());
+
+        first.close();
+        second.close();
+        assertEquals(0, scratchSpace.usedBytes());
+    }
+
+    @Test
+    void close_calledTwice_releasesOnce() throws IOException {
+        // Arrange
+        ScratchSpace.Directory first = scratchSpace.open("first");
+        first.write("document.pdf", bytes(5));
+        ScratchSpace.Directory second = scratchSpace.open("second");
+        second.write("document.pdf", bytes(3));
+
+        // Act
+        first.close();
+        first.close();
+
+        // Assert
+        assertEquals(3, scratchSpace.usedBytes());
+        assertEquals(1, scratchSpace.openDirectories());
+        second.close();
+        assertEquals(0, scratchSpace.usedBytes());
+        assertEquals(0, scratchSpace.openDirectories());
+    }
+
+    @Test
+    void sweep_removesLeftoversOfEarlierRuns() throws IOException {
+        // Arrange
+        Path leftover = Files.createDirectories(root.resolve("job-123"));
+        Files.write(leftover.resolve("document.pdf"), new byte[3]);
+
+        // Act
+        scratchSpace.sweep();
+
+        // Assert
+        try (var entries = Files.list(root)) {
+            assertEquals(0, entries.count());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package at.technikum.worker.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.sourceforge.tess4j.ITesseract;
+import net.sourceforge.tess4j.TesseractException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The tasks never call into the engines, so no Tesseract installation is needed
+class TesseractPoolTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TesseractPool pool = new TesseractPool(meterRegistry, "/nonexistent/tessdata", "eng", 2, 300);
+
+    private double busyEngines() {
+        return meterRegistry.get("ocr.engines.busy").gauge().value();
+    }
+
+    @Test
+    void execute_concurrentJobsGetEnginesOfTheirOwn_andWaitWhenAllAreBusy() throws Exception {
+        // Arrange
+        Set<ITesseract> used = ConcurrentHashMap.newKeySet();
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        TesseractPool.OcrTask<String> holdEngine = engine -> {
+            used.add(engine);
+            bothRunning.countDown();
+            await(release);
+            return "text";
+        };
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> execute(holdEngine));
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> execute(holdEngine));
+        assertTrue(bothRunning.await(5, TimeUnit.SECONDS));
+
+        // Act
+        CompletableFuture<ITesseract> third = CompletableFuture.supplyAsync(() -> execute(engine -> engine));
+
+        // Assert
+        assertEquals(2, used.size());
+        assertEquals(2.0, busyEngines());
+        Thread.sleep(200);
+        assertFalse(third.isDone(), "a job must wait while every engine is checked out");
+
+        release.countDown();
+        assertEquals("text", first.get(5, TimeUnit.SECONDS));
+        assertEquals("text", second.get(5, TimeUnit.SECONDS));
+        assertTrue(used.contains(third.get(5, TimeUnit.SECONDS)));
+        assertEquals(0.0, busyEngines());
+    }
+
+    @Test
+    void execute_failingTask_returnsEngineToPool() {
+        // Act
+        assertThrows(TesseractException.class, () -> pool.execute(engine -> {
+            throw new TesseractException("Unreadable page");
+        }));
+
+        // Assert
+        assertEquals(0.0, busyEngines());
+        assertEquals(1, meterRegistry.get("ocr.recognition").timer().count());
+    }
+
+    private <T> T execute(TesseractPool.OcrTask<T> task) {
+        try {
+            return pool.execute(task);
+        } catch (TesseractException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package at.technikum.worker.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TextLayerExtractorTest {
+
+    private final TextLayerExtractor extractor = new TextLayerExtractor();
+
+    @BeforeEach
+    void setup() {
+        ReflectionTestUtils.setField(extractor, "minChars", 10);
+        ReflectionTestUtils.setField(extractor, "maxUnmappedRatio", 0.1);
+    }
+
+    @Test
+    void isUsable_acceptsPageWithEnoughText() {
+        assertTrue(extractor.isUsable("Invoice 2024-0042\nTotal: 120,00 EUR"));
+    }
+
+    @Test
+    void isUsable_doesNotCountWhitespace() {
+        // Eight visible characters, however much whitespace surrounds them
+        assertFalse(extractor.isUsable("  Page  1 of 2 \n\n\t   "));
+        assertTrue(extractor.isUsable("  Page  10 of 12 \n\n\t   "));
+    }
+
+    @Test
+    void isUsable_rejectsEmptyPage() {
+        assertFalse(extractor.isUsable(""));
+    }
+
+    @Test
+    void isUsable_rejectsTextOfFontsWithoutUnicodeMapping() {
+        // 20 visible characters, 2 of them replacement characters: exactly at the limit
+        assertTrue(extractor.isUsable("Scanned contracts\uFFFD\uFFFD nr"));
+        // Control characters and private use glyphs count as unmapped as well
+        assertFalse(extractor.isUsable("Scanned contract\u0001\uE000\uFFFD nr"));
+    }
+}